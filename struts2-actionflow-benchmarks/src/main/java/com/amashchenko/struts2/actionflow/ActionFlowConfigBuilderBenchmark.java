@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.PropertyDescriptor;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.struts2.dispatcher.ServletDispatcherResult;
+import org.apache.struts2.dispatcher.ServletRedirectResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowStepConfig;
+import com.amashchenko.struts2.actionflow.mock.BenchmarkFlowAction;
+import com.opensymphony.xwork2.Action;
+import com.opensymphony.xwork2.config.Configuration;
+import com.opensymphony.xwork2.config.entities.ActionConfig;
+import com.opensymphony.xwork2.config.entities.PackageConfig;
+import com.opensymphony.xwork2.config.entities.ResultConfig;
+
+/**
+ * Benchmarks of {@link ActionFlowConfigBuilder} on synthetic packages with
+ * given number of flow actions.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActionFlowConfigBuilderBenchmark {
+
+    /** Name of the synthetic package. */
+    private static final String PACKAGE_NAME = "synthetic";
+
+    /** Number of flow actions in the synthetic package. */
+    @Param({ "10", "100", "1000", "10000" })
+    private int actionCount;
+
+    private BenchmarkContext context;
+    private ActionFlowConfigBuilder flowConfigBuilder;
+    private PackageConfig packageConfig;
+
+    /**
+     * Restores synthetic package without generated actions before each
+     * invocation, since creating action flow map modifies configuration.
+     */
+    @State(Scope.Benchmark)
+    public static class PristinePackage {
+        /**
+         * @param benchmark
+         *            benchmark state.
+         */
+        @Setup(Level.Invocation)
+        public void reset(final ActionFlowConfigBuilderBenchmark benchmark) {
+            benchmark.addPackageConfig();
+        }
+    }
+
+    /**
+     * Initializes Struts and adds synthetic package.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new BenchmarkContext();
+        flowConfigBuilder = new ActionFlowConfigBuilder();
+        context.getContainer().inject(flowConfigBuilder);
+
+        packageConfig = createPackageConfig(context.getConfiguration());
+        addPackageConfig();
+    }
+
+    /**
+     * Cleans up Struts.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.destroy();
+    }
+
+    @Benchmark
+    public Map<String, ActionFlowStepConfig> createFlowMap(
+            final PristinePackage pristinePackage) {
+        return flowConfigBuilder.createFlowMap(PACKAGE_NAME, "next", "prev",
+                "View", "execute");
+    }
+
+    @Benchmark
+    public Map<String, List<PropertyDescriptor>> createFlowScopeFields() {
+        return flowConfigBuilder.createFlowScopeFields(PACKAGE_NAME);
+    }
+
+    private void addPackageConfig() {
+        Configuration configuration = context.getConfiguration();
+        configuration.removePackageConfig(PACKAGE_NAME);
+        configuration.addPackageConfig(PACKAGE_NAME, packageConfig);
+        configuration.rebuildRuntimeConfiguration();
+    }
+
+    private PackageConfig createPackageConfig(final Configuration configuration) {
+        PackageConfig.Builder builder = new PackageConfig.Builder(PACKAGE_NAME)
+                .namespace("/" + PACKAGE_NAME).addParent(
+                        configuration.getPackageConfig("actionflow-default"));
+
+        // zero padded steps keep natural order of step values
+        String format = "%0" + String.valueOf(actionCount).length() + "d";
+        for (int i = 1; i <= actionCount; i++) {
+            String actionName = "step" + i;
+            ActionConfig actionConfig = new ActionConfig.Builder(PACKAGE_NAME,
+                    actionName, BenchmarkFlowAction.class.getName())
+                    .addParam("actionFlowStep", String.format(format, i))
+                    .addResultConfig(
+                            new ResultConfig.Builder(Action.INPUT,
+                                    ServletDispatcherResult.class.getName())
+                                    .addParam(
+                                            ServletDispatcherResult.DEFAULT_PARAM,
+                                            actionName).build())
+                    .addResultConfig(
+                            new ResultConfig.Builder(Action.SUCCESS,
+                                    ServletRedirectResult.class.getName())
+                                    .addParam(
+                                            ServletRedirectResult.DEFAULT_PARAM,
+                                            "view").build()).build();
+            builder.addActionConfig(actionName, actionConfig);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amashchenko.struts2.actionflow.mock.BenchmarkActionInvocation;
+import com.amashchenko.struts2.actionflow.mock.BenchmarkFlowAction;
+import com.opensymphony.xwork2.Action;
+
+/**
+ * Benchmarks of {@link ActionFlowInterceptor#intercept} on flow, view, next,
+ * previous and plain actions. Run with <code>-prof gc</code> to see
+ * allocations per request.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActionFlowInterceptorBenchmark {
+
+    /** Key for previous flow action. */
+    private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
+
+    /** Key for flow scope. */
+    private static final String FLOW_SCOPE_KEY = "actionFlowScope";
+
+    private BenchmarkContext context;
+    private ActionFlowInterceptor interceptor;
+
+    /**
+     * Per thread invocations, each with its own session.
+     */
+    @State(Scope.Thread)
+    public static class Invocations {
+        private BenchmarkActionInvocation flowStep;
+        private BenchmarkActionInvocation flowView;
+        private BenchmarkActionInvocation next;
+        private BenchmarkActionInvocation prev;
+        private BenchmarkActionInvocation plain;
+
+        private BenchmarkFlowAction viewAction;
+
+        /**
+         * Creates invocations.
+         * 
+         * @param benchmark
+         *            benchmark state.
+         */
+        @Setup(Level.Trial)
+        public void setUp(final ActionFlowInterceptorBenchmark benchmark) {
+            BenchmarkContext context = benchmark.context;
+
+            BenchmarkFlowAction stepAction = new BenchmarkFlowAction();
+            stepAction.setName("name");
+            flowStep = createInvocation(context, "saveName", stepAction,
+                    null);
+
+            viewAction = new BenchmarkFlowAction();
+            flowView = createInvocation(context, "savePhoneView", viewAction,
+                    null);
+            Map<String, Object> scope = new HashMap<String, Object>();
+            scope.put(BenchmarkFlowAction.class.getName() + ".phone", "phone");
+            flowView.getInvocationContext().getSession()
+                    .put(FLOW_SCOPE_KEY, scope);
+
+            next = createInvocation(context, "next", new BenchmarkFlowAction(),
+                    "saveName");
+            next.getInvocationContext().getSession()
+                    .put(PREVIOUS_FLOW_ACTION, "saveName");
+
+            prev = createInvocation(context, "prev", new BenchmarkFlowAction(),
+                    "savePhone");
+
+            plain = createInvocation(context, "benchmark",
+                    new BenchmarkFlowAction(), null);
+        }
+
+        private static BenchmarkActionInvocation createInvocation(
+                final BenchmarkContext context, final String actionName,
+                final Object action, final String step) {
+            Map<String, Object> parameters = new HashMap<String, Object>();
+            if (step != null) {
+                parameters.put("step", new String[] { step });
+            }
+            return new BenchmarkActionInvocation(
+                    context.getActionConfig(actionName), action,
+                    context.createValueStack(), new HashMap<String, Object>(),
+                    parameters);
+        }
+    }
+
+    /**
+     * Initializes Struts and gets configured interceptor.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new BenchmarkContext();
+        interceptor = context.getInterceptor();
+    }
+
+    /**
+     * Cleans up Struts.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.destroy();
+    }
+
+    @Benchmark
+    public String flowStep(final Invocations invocations) throws Exception {
+        invocations.flowStep.getInvocationContext().getSession()
+                .put(PREVIOUS_FLOW_ACTION, null);
+        invocations.flowStep.reset(Action.SUCCESS);
+        return interceptor.intercept(invocations.flowStep);
+    }
+
+    @Benchmark
+    public String flowView(final Invocations invocations) throws Exception {
+        invocations.viewAction.setPhone(null);
+        invocations.flowView.reset(Action.SUCCESS);
+        return interceptor.intercept(invocations.flowView);
+    }
+
+    @Benchmark
+    public String next(final Invocations invocations) throws Exception {
+        invocations.next.reset(Action.SUCCESS);
+        return interceptor.intercept(invocations.next);
+    }
+
+    @Benchmark
+    public String prev(final Invocations invocations) throws Exception {
+        invocations.prev.getInvocationContext().getSession()
+                .put(PREVIOUS_FLOW_ACTION, "savePhone");
+        invocations.prev.reset(Action.SUCCESS);
+        return interceptor.intercept(invocations.prev);
+    }
+
+    @Benchmark
+    public String plain(final Invocations invocations) throws Exception {
+        invocations.plain.reset(Action.SUCCESS);
+        return interceptor.intercept(invocations.plain);
+    }
+}
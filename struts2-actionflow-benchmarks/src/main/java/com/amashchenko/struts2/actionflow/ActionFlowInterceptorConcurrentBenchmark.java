@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Multi-threaded variant of {@link ActionFlowInterceptorBenchmark}. All
+ * threads share one interceptor instance, each thread has its own session.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+@Threads(4)
+public class ActionFlowInterceptorConcurrentBenchmark extends
+        ActionFlowInterceptorBenchmark {
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.struts2.StrutsStatics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.opensymphony.xwork2.ActionContext;
+import com.opensymphony.xwork2.ActionProxyFactory;
+
+/**
+ * Benchmarks of whole 'next' and 'previous' requests, including the step
+ * action and its redirect result. The <code>/benchmark</code> namespace uses
+ * the chain result of the 'next' action, the <code>/benchmarkDirect</code>
+ * namespace uses direct dispatch and the <code>/benchmarkRedirect</code>
+ * namespace uses the flow redirect result.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActionFlowNavigationBenchmark {
+
+    /** Key for previous flow action. */
+    private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
+
+    @Param({ "/benchmark", "/benchmarkDirect", "/benchmarkRedirect" })
+    private String namespace;
+
+    private BenchmarkContext context;
+    private ActionProxyFactory actionProxyFactory;
+
+    /**
+     * Per thread session.
+     */
+    @State(Scope.Thread)
+    public static class Session {
+        private final Map<String, Object> attributes = new HashMap<String, Object>();
+    }
+
+    /**
+     * Initializes Struts.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = new BenchmarkContext();
+        actionProxyFactory = context.getContainer().getInstance(
+                ActionProxyFactory.class);
+    }
+
+    /**
+     * Cleans up Struts.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.destroy();
+    }
+
+    @Benchmark
+    public String next(final Session session) throws Exception {
+        session.attributes.put(PREVIOUS_FLOW_ACTION, "saveName");
+        return execute("next", session.attributes, "saveName");
+    }
+
+    @Benchmark
+    public String prev(final Session session) throws Exception {
+        session.attributes.put(PREVIOUS_FLOW_ACTION, "savePhone");
+        return execute("prev", session.attributes, "savePhone");
+    }
+
+    private String execute(final String actionName,
+            final Map<String, Object> session, final String step)
+            throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("step", new String[] { step });
+        parameters.put("phone", new String[] { "phone" });
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        Map<String, Object> extraContext = new HashMap<String, Object>();
+        extraContext.put(ActionContext.PARAMETERS, parameters);
+        extraContext.put(ActionContext.SESSION, session);
+        extraContext.put(ActionContext.APPLICATION,
+                new HashMap<String, Object>());
+        extraContext.put(StrutsStatics.HTTP_REQUEST, request);
+        extraContext.put(StrutsStatics.HTTP_RESPONSE, response);
+
+        actionProxyFactory.createActionProxy(namespace, actionName, null,
+                extraContext, true, true).execute();
+        return response.getRedirectedUrl();
+    }
+}
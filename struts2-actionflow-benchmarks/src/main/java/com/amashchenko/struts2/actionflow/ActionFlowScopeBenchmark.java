@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeField;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeLayout;
+import com.amashchenko.struts2.actionflow.mock.ScopedFieldsAction;
+
+/**
+ * Benchmarks of storing action flow scope fields into the session and
+ * retrieving them back.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ActionFlowScopeBenchmark {
+
+    /** Number of action flow scope fields. */
+    @Param({ "1", "10", "100" })
+    private int fieldCount;
+
+    /** Type of the accessor, <code>generated</code> or <code>reflection</code>. */
+    @Param({ "generated", "reflection" })
+    private String accessorType;
+
+    private final ActionFlowInterceptor interceptor = new ActionFlowInterceptor();
+
+    private ActionFlowScopeField[] scopeFields;
+    private ActionFlowScopeLayout scopeLayout;
+
+    private ScopedFieldsAction storeAction;
+    private ScopedFieldsAction retrieveAction;
+
+    private Map<String, Object> storeSession;
+    private Map<String, Object> retrieveSession;
+
+    /**
+     * Creates scope fields and fills the session.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Class<? extends ScopedFieldsAction> actionClass = ScopedFieldsAction
+                .createClass(fieldCount);
+
+        List<PropertyDescriptor> pds = new ArrayList<PropertyDescriptor>();
+        for (PropertyDescriptor pd : Introspector.getBeanInfo(actionClass)
+                .getPropertyDescriptors()) {
+            if (pd.getName().matches("f\\d{3}")) {
+                pds.add(pd);
+            }
+        }
+        Collections.sort(pds, new Comparator<PropertyDescriptor>() {
+            @Override
+            public int compare(PropertyDescriptor pd1, PropertyDescriptor pd2) {
+                return pd1.getName().compareTo(pd2.getName());
+            }
+        });
+
+        ActionFlowScopeAccessor accessor;
+        if ("reflection".equals(accessorType)) {
+            accessor = new ReflectionScopeAccessor(
+                    pds.toArray(new PropertyDescriptor[fieldCount]));
+        } else {
+            accessor = ActionFlowScopeAccessor.create(actionClass, pds);
+        }
+
+        scopeFields = new ActionFlowScopeField[fieldCount];
+        int[] valueCounts = new int[ActionFlowScopeField.Type.values().length];
+        for (int i = 0; i < fieldCount; i++) {
+            int type = ActionFlowScopeField.typeOf(
+                    pds.get(i).getPropertyType()).ordinal();
+            scopeFields[i] = new ActionFlowScopeField(
+                    actionClass.getName(), pds.get(i), accessor,
+                    i, i, valueCounts[type]++);
+        }
+        scopeLayout = new ActionFlowScopeLayout(scopeFields);
+
+        storeAction = actionClass.newInstance();
+        storeAction.fill("value");
+        storeSession = new HashMap<String, Object>();
+        interceptor.handleFlowScope(storeAction, storeSession, null,
+                scopeLayout, scopeFields, false);
+
+        retrieveAction = actionClass.newInstance();
+        retrieveSession = new HashMap<String, Object>(storeSession);
+    }
+
+    @Benchmark
+    public Map<String, Object> store() {
+        interceptor.handleFlowScope(storeAction, storeSession, null,
+                scopeLayout, scopeFields, false);
+        return storeSession;
+    }
+
+    @Benchmark
+    public ScopedFieldsAction retrieve() {
+        retrieveAction.clear();
+        interceptor.handleFlowScope(retrieveAction, retrieveSession, null,
+                scopeLayout, scopeFields, true);
+        return retrieveAction;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amashchenko.struts2.actionflow.mock.ScopedFieldsAction;
+
+/**
+ * Benchmarks of serializing action flow scope as done by session replication
+ * and passivation. Serialized size of each format is reported as the
+ * <code>serializedBytes</code> secondary result of {@link #serialize}.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ActionFlowScopeSerializationBenchmark {
+
+    /** Number of action flow scope fields. */
+    @Param({ "10", "100" })
+    private int fieldCount;
+
+    /** Flow scope format, <code>hashMap</code> or <code>compact</code>. */
+    @Param({ "hashMap", "compact" })
+    private String format;
+
+    private Map<String, Object> scope;
+
+    private byte[] serialized;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+            16 * 1024);
+
+    /**
+     * Fills flow scope with strings, numbers and dates.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < fieldCount; i++) {
+            String key = ScopedFieldsAction.class.getName()
+                    + String.format(".f%03d", i);
+            switch (i % 4) {
+            case 0:
+                values.put(key, "value" + i);
+                break;
+            case 1:
+                values.put(key, Integer.valueOf(i));
+                break;
+            case 2:
+                values.put(key, Long.valueOf(i * 1000L));
+                break;
+            default:
+                values.put(key, new Date(1400000000000L + i));
+                break;
+            }
+        }
+
+        if ("compact".equals(format)) {
+            scope = new ActionFlowScopeMap(values);
+        } else {
+            scope = new HashMap<String, Object>(values);
+        }
+
+        serialized = write();
+    }
+
+    @Benchmark
+    public byte[] serialize(final SerializedSize size) throws IOException {
+        byte[] bytes = write();
+        size.serializedBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                serialized));
+        return in.readObject();
+    }
+
+    private byte[] write() throws IOException {
+        buffer.reset();
+        ObjectOutputStream out = new ObjectOutputStream(buffer);
+        out.writeObject(scope);
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Serialized size of the flow scope, reported with the results.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SerializedSize {
+        public long serializedBytes;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.struts2.dispatcher.Dispatcher;
+import org.apache.struts2.util.StrutsTestCaseHelper;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.web.MockServletContext;
+
+import com.opensymphony.xwork2.config.Configuration;
+import com.opensymphony.xwork2.config.entities.ActionConfig;
+import com.opensymphony.xwork2.config.entities.InterceptorMapping;
+import com.opensymphony.xwork2.inject.Container;
+import com.opensymphony.xwork2.util.ValueStack;
+import com.opensymphony.xwork2.util.ValueStackFactory;
+
+/**
+ * Struts configuration used by benchmarks. Loads
+ * <code>struts-benchmark.xml</code> on top of the plug-in configuration.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class BenchmarkContext {
+
+    /** Configuration files. */
+    private static final String CONFIG = "struts-default.xml,struts-plugin.xml,struts-benchmark.xml";
+
+    /** Namespace of the benchmark package. */
+    public static final String NAMESPACE = "/benchmark";
+
+    private final Dispatcher dispatcher;
+    private final Configuration configuration;
+    private final Container container;
+
+    /**
+     * Initializes Struts dispatcher.
+     * 
+     * @throws Exception
+     *             when dispatcher cannot be initialized.
+     */
+    public BenchmarkContext() throws Exception {
+        StrutsTestCaseHelper.setUp();
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("config", CONFIG);
+        dispatcher = StrutsTestCaseHelper.initDispatcher(
+                new MockServletContext(new DefaultResourceLoader()), params);
+        configuration = dispatcher.getConfigurationManager()
+                .getConfiguration();
+        container = configuration.getContainer();
+    }
+
+    /**
+     * Cleans up Struts dispatcher.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    public void destroy() throws Exception {
+        StrutsTestCaseHelper.tearDown();
+    }
+
+    /**
+     * Gets runtime configuration of the benchmark package action.
+     * 
+     * @param actionName
+     *            name of the action.
+     * @return action configuration.
+     */
+    public ActionConfig getActionConfig(final String actionName) {
+        return configuration.getRuntimeConfiguration().getActionConfig(
+                NAMESPACE, actionName);
+    }
+
+    /**
+     * Gets configured action flow interceptor of the benchmark package.
+     * 
+     * @return action flow interceptor.
+     */
+    public ActionFlowInterceptor getInterceptor() {
+        for (InterceptorMapping mapping : getActionConfig("benchmark")
+                .getInterceptors()) {
+            if (mapping.getInterceptor() instanceof ActionFlowInterceptor) {
+                return (ActionFlowInterceptor) mapping.getInterceptor();
+            }
+        }
+        throw new IllegalStateException("No action flow interceptor found.");
+    }
+
+    /**
+     * @return new value stack.
+     */
+    public ValueStack createValueStack() {
+        return container.getInstance(ValueStackFactory.class)
+                .createValueStack();
+    }
+
+    /**
+     * @return the configuration
+     */
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return the container
+     */
+    public Container getContainer() {
+        return container;
+    }
+}
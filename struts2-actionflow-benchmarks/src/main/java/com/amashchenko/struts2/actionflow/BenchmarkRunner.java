@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with GC and allocation profiling. Accepts the same command
+ * line options as JMH.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * Private constructor.
+     */
+    private BenchmarkRunner() {
+    }
+
+    /**
+     * @param args
+     *            JMH command line options.
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.mock;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.opensymphony.xwork2.ActionContext;
+import com.opensymphony.xwork2.ActionEventListener;
+import com.opensymphony.xwork2.ActionInvocation;
+import com.opensymphony.xwork2.ActionProxy;
+import com.opensymphony.xwork2.Result;
+import com.opensymphony.xwork2.config.entities.ActionConfig;
+import com.opensymphony.xwork2.interceptor.PreResultListener;
+import com.opensymphony.xwork2.mock.MockActionProxy;
+import com.opensymphony.xwork2.util.ValueStack;
+
+/**
+ * Reusable mock action invocation which does not allocate on
+ * {@link #invoke()}. The action is not executed, pre-result listeners are
+ * called with the configured result code.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class BenchmarkActionInvocation implements ActionInvocation {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = 8019453742376806513L;
+
+    private final Object action;
+    private final MockActionProxy proxy;
+    private final ActionContext invocationContext;
+    private final PreResultListener[] listeners = new PreResultListener[4];
+
+    private int listenerCount;
+    private String actionResultCode;
+    private String resultCode;
+
+    /**
+     * @param actionConfig
+     *            configuration of the action.
+     * @param action
+     *            action object.
+     * @param stack
+     *            value stack of the invocation.
+     * @param session
+     *            session map.
+     * @param parameters
+     *            request parameters.
+     */
+    public BenchmarkActionInvocation(final ActionConfig actionConfig,
+            final Object action, final ValueStack stack,
+            final Map<String, Object> session,
+            final Map<String, Object> parameters) {
+        this.action = action;
+
+        proxy = new MockActionProxy();
+        proxy.setAction(action);
+        proxy.setActionName(actionConfig.getName());
+        proxy.setConfig(actionConfig);
+        proxy.setInvocation(this);
+
+        invocationContext = new ActionContext(new HashMap<String, Object>());
+        invocationContext.setName(actionConfig.getName());
+        invocationContext.setValueStack(stack);
+        invocationContext.setSession(session);
+        invocationContext.setParameters(parameters);
+
+        stack.push(action);
+    }
+
+    /**
+     * Prepares invocation for the next execution.
+     * 
+     * @param code
+     *            result code of the action.
+     */
+    public void reset(final String code) {
+        for (int i = 0; i < listenerCount; i++) {
+            listeners[i] = null;
+        }
+        listenerCount = 0;
+        actionResultCode = code;
+        resultCode = null;
+    }
+
+    /** {@inheritDoc} */
+    public String invoke() throws Exception {
+        resultCode = actionResultCode;
+        for (int i = 0; i < listenerCount; i++) {
+            listeners[i].beforeResult(this, resultCode);
+        }
+        return resultCode;
+    }
+
+    /** {@inheritDoc} */
+    public String invokeActionOnly() throws Exception {
+        return actionResultCode;
+    }
+
+    /** {@inheritDoc} */
+    public void addPreResultListener(PreResultListener listener) {
+        listeners[listenerCount++] = listener;
+    }
+
+    /** {@inheritDoc} */
+    public Object getAction() {
+        return action;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isExecuted() {
+        return resultCode != null;
+    }
+
+    /** {@inheritDoc} */
+    public ActionContext getInvocationContext() {
+        return invocationContext;
+    }
+
+    /** {@inheritDoc} */
+    public ActionProxy getProxy() {
+        return proxy;
+    }
+
+    /** {@inheritDoc} */
+    public Result getResult() throws Exception {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public String getResultCode() {
+        return resultCode;
+    }
+
+    /** {@inheritDoc} */
+    public void setResultCode(String resultCode) {
+        this.resultCode = resultCode;
+    }
+
+    /** {@inheritDoc} */
+    public ValueStack getStack() {
+        return invocationContext.getValueStack();
+    }
+
+    /** {@inheritDoc} */
+    public void setActionEventListener(ActionEventListener listener) {
+    }
+
+    /** {@inheritDoc} */
+    public void init(ActionProxy proxy) {
+    }
+
+    /** {@inheritDoc} */
+    public ActionInvocation serialize() {
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    public ActionInvocation deserialize(ActionContext actionContext) {
+        return this;
+    }
+}
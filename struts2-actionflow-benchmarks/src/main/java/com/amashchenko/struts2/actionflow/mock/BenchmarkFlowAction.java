@@ -0,0 +1,106 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.mock;
+
+import com.amashchenko.struts2.actionflow.ActionFlowScope;
+import com.amashchenko.struts2.actionflow.ActionFlowStepsAware;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowStepsData;
+import com.opensymphony.xwork2.ActionSupport;
+
+/**
+ * Action flow action used in benchmarks.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+@ActionFlowScope
+public class BenchmarkFlowAction extends ActionSupport implements
+        ActionFlowStepsAware {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = 4128330975372468154L;
+
+    private ActionFlowStepsData stepsData;
+
+    /** Name field. */
+    @ActionFlowScope
+    private String name;
+
+    /** Phone field. */
+    @ActionFlowScope
+    private String phone;
+
+    /** Email field. */
+    @ActionFlowScope
+    private String email;
+
+    @Override
+    public void setActionFlowSteps(ActionFlowStepsData stepsData) {
+        this.stepsData = stepsData;
+    }
+
+    /**
+     * @return the stepsData
+     */
+    public ActionFlowStepsData getStepsData() {
+        return stepsData;
+    }
+
+    /**
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name
+     *            the name to set
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the phone
+     */
+    public String getPhone() {
+        return phone;
+    }
+
+    /**
+     * @param phone
+     *            the phone to set
+     */
+    public void setPhone(String phone) {
+        this.phone = phone;
+    }
+
+    /**
+     * @return the email
+     */
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * @param email
+     *            the email to set
+     */
+    public void setEmail(String email) {
+        this.email = email;
+    }
+}
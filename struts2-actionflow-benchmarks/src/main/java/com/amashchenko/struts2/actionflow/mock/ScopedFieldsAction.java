@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import com.opensymphony.xwork2.ActionSupport;
+
+/**
+ * Base class of actions with many action flow scope fields used in flow scope
+ * benchmarks. Subclasses with <code>f000</code>, <code>f001</code>, ...
+ * string fields, their getters and setters are generated with Javassist by
+ * {@link #createClass(int)}.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public abstract class ScopedFieldsAction extends ActionSupport {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = -3150384016262541853L;
+
+    /**
+     * Sets all fields to the value.
+     * 
+     * @param value
+     *            value of the fields.
+     */
+    public abstract void fill(String value);
+
+    /**
+     * Sets all fields to <code>null</code>.
+     */
+    public abstract void clear();
+
+    /**
+     * Generates action class with given number of fields.
+     * 
+     * @param fieldCount
+     *            number of fields.
+     * @return generated action class.
+     * @throws Exception
+     *             when class cannot be generated.
+     */
+    public static Class<? extends ScopedFieldsAction> createClass(
+            final int fieldCount) throws Exception {
+        ClassPool pool = new ClassPool(false);
+        pool.appendClassPath(new ClassClassPath(ScopedFieldsAction.class));
+
+        String name = ScopedFieldsAction.class.getName() + fieldCount;
+        CtClass cc = pool.makeClass(name);
+        cc.setSuperclass(pool.get(ScopedFieldsAction.class.getName()));
+        cc.addConstructor(CtNewConstructor.defaultConstructor(cc));
+
+        StringBuilder fill = new StringBuilder(
+                "public void fill(String value) {");
+        StringBuilder clear = new StringBuilder("public void clear() {");
+        for (int i = 0; i < fieldCount; i++) {
+            String field = String.format("f%03d", i);
+            String property = "F" + field.substring(1);
+            CtField ctField = CtField.make("private String " + field + ";",
+                    cc);
+            cc.addField(ctField);
+            cc.addMethod(CtNewMethod.getter("get" + property, ctField));
+            cc.addMethod(CtNewMethod.setter("set" + property, ctField));
+            fill.append(' ').append(field).append(" = value;");
+            clear.append(' ').append(field).append(" = null;");
+        }
+        cc.addMethod(CtNewMethod.make(fill.append(" }").toString(), cc));
+        cc.addMethod(CtNewMethod.make(clear.append(" }").toString(), cc));
+
+        byte[] bytecode = cc.toBytecode();
+        cc.detach();
+
+        return new GeneratedClassLoader(name, bytecode).loadClass(name)
+                .asSubclass(ScopedFieldsAction.class);
+    }
+
+    /**
+     * Class loader defining generated action class. Bytecode of the class is
+     * also available as resource, so that flow scope accessor can be
+     * generated for it.
+     */
+    private static final class GeneratedClassLoader extends ClassLoader {
+        /** Resource name of the class. */
+        private final String resourceName;
+
+        /** Bytecode of the class. */
+        private final byte[] bytecode;
+
+        /**
+         * @param name
+         *            name of the class.
+         * @param bytecode
+         *            bytecode of the class.
+         */
+        GeneratedClassLoader(final String name, final byte[] bytecode) {
+            super(ScopedFieldsAction.class.getClassLoader());
+            this.resourceName = name.replace('.', '/') + ".class";
+            this.bytecode = bytecode;
+            defineClass(name, bytecode, 0, bytecode.length);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected URL findResource(final String name) {
+            if (!resourceName.equals(name)) {
+                return null;
+            }
+            try {
+                return new URL("bytecode", null, -1, name,
+                        new URLStreamHandler() {
+                            @Override
+                            protected URLConnection openConnection(
+                                    final URL url) {
+                                return new URLConnection(url) {
+                                    @Override
+                                    public void connect() {
+                                    }
+
+                                    @Override
+                                    public InputStream getInputStream() {
+                                        return new ByteArrayInputStream(
+                                                bytecode);
+                                    }
+                                };
+                            }
+                        });
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.Map;
+
+/**
+ * Listener notified about action flows expired because of inactivity. Register
+ * an implementation as a bean of this type and set its name to the
+ * {@value ActionFlowConstants#ABANDONMENT_LISTENER} constant. The listener is
+ * called from the expiry thread and must be thread-safe.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public interface ActionFlowAbandonmentListener {
+
+    /**
+     * Called after an abandoned flow was removed.
+     * 
+     * @param packageName
+     *            name of the package of the flow.
+     * @param stepAction
+     *            last completed step action or <code>firstFlowAction</code>.
+     * @param scope
+     *            flow scope values of the flow or <code>null</code>.
+     */
+    void flowAbandoned(String packageName, String stepAction,
+            Map<String, Object> scope);
+}
@@ -15,9 +15,8 @@
  */
 package com.amashchenko.struts2.actionflow;
 
-import java.beans.Introspector;
+import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -29,18 +28,35 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.struts2.dispatcher.ServletActionRedirectResult;
 
+import com.amashchenko.struts2.actionflow.entities.ActionFlowConfig;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowRoute;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeField;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeLayout;
 import com.amashchenko.struts2.actionflow.entities.ActionFlowStepConfig;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowStepsData;
 import com.opensymphony.xwork2.Action;
 import com.opensymphony.xwork2.ActionChainResult;
+import com.opensymphony.xwork2.ObjectFactory;
 import com.opensymphony.xwork2.config.Configuration;
 import com.opensymphony.xwork2.config.ConfigurationException;
 import com.opensymphony.xwork2.config.entities.ActionConfig;
+import com.opensymphony.xwork2.config.entities.InterceptorMapping;
 import com.opensymphony.xwork2.config.entities.PackageConfig;
 import com.opensymphony.xwork2.config.entities.ResultConfig;
+import com.opensymphony.xwork2.config.providers.InterceptorBuilder;
 import com.opensymphony.xwork2.inject.Inject;
+import com.opensymphony.xwork2.util.TextParseUtil;
 import com.opensymphony.xwork2.util.logging.Logger;
 import com.opensymphony.xwork2.util.logging.LoggerFactory;
 
@@ -59,10 +75,23 @@ public class ActionFlowConfigBuilder {
     /** Parameter indicating that this action belongs to action flow. */
     private static final String PARAM_ACTION_FLOW_STEP = "actionFlowStep";
 
+    /** Parameter listing action flow scope fields the step reads. */
+    private static final String PARAM_ACTION_FLOW_STEP_READS = "actionFlowStepReads";
+
+    /** Parameter listing action flow scope fields the step writes. */
+    private static final String PARAM_ACTION_FLOW_STEP_WRITES = "actionFlowStepWrites";
+
+    /** Parameter naming interceptor stack of the generated view action. */
+    private static final String PARAM_ACTION_FLOW_VIEW_STACK = "actionFlowViewStack";
+
     /** XWork configuration. */
     @Inject
     private Configuration configuration;
 
+    /** Object factory to build interceptors of view actions. */
+    @Inject
+    private ObjectFactory objectFactory;
+
     /**
      * Creates action flow map for given package name.
      * 
@@ -82,22 +111,117 @@ public class ActionFlowConfigBuilder {
             final String packageName, final String nextActionName,
             final String prevActionName, final String viewActionPostfix,
             final String viewActionMethod) {
-        // holds all actions with PARAM_ACTION_FLOW_STEP parameter
-        // using TreeMap for natural ordering of keys
-        Map<String, ActionConfig> actionsStepMap = new TreeMap<String, ActionConfig>();
-
-        Map<String, Map<String, ActionConfig>> runtimeActionConfigs = configuration
-                .getRuntimeConfiguration().getActionConfigs();
-
         PackageConfig packageConfig = configuration
                 .getPackageConfig(packageName);
 
         // Map<String, ActionConfig> actionConfigs = packageConfig
         // .getAllActionConfigs();
-        Map<String, ActionConfig> actionConfigs = runtimeActionConfigs
+        Map<String, ActionConfig> actionConfigs = configuration
+                .getRuntimeConfiguration().getActionConfigs()
                 .get(packageConfig.getNamespace());
-        for (Entry<String, ActionConfig> entrActConf : actionConfigs.entrySet()) {
-            ActionConfig actionConfig = entrActConf.getValue();
+
+        Map<String, PackageConfig> flowPackageConfigs = new HashMap<String, PackageConfig>();
+
+        Map<String, ActionFlowStepConfig> actionFlows = buildFlowMap(
+                packageConfig, actionConfigs,
+                indexFlowSteps(actionConfigs.values()), nextActionName,
+                prevActionName, viewActionPostfix, viewActionMethod,
+                flowPackageConfigs);
+
+        if (!flowPackageConfigs.isEmpty()) {
+            addPackageConfigs(flowPackageConfigs);
+            configuration.rebuildRuntimeConfiguration();
+        }
+        return actionFlows;
+    }
+
+    /**
+     * Creates action flow maps for given packages at once. Action flow steps
+     * of the whole configuration are indexed in one pass and runtime
+     * configuration is rebuilt only once. Packages with wrong action flow
+     * configuration are logged and skipped.
+     * 
+     * @param flowPackages
+     *            Map of package names and their action flow interceptors.
+     * @return Map of package names and their action flow maps.
+     */
+    protected Map<String, Map<String, ActionFlowStepConfig>> createFlowMaps(
+            final Map<String, ActionFlowInterceptor> flowPackages) {
+        Map<String, Map<String, ActionConfig>> runtimeActionConfigs = configuration
+                .getRuntimeConfiguration().getActionConfigs();
+
+        // single pass over all actions, steps are grouped by namespace
+        Map<String, Map<String, ActionConfig>> namespaceSteps = new HashMap<String, Map<String, ActionConfig>>();
+        Map<String, ConfigurationException> namespaceErrors = new HashMap<String, ConfigurationException>();
+        for (Entry<String, Map<String, ActionConfig>> entry : runtimeActionConfigs
+                .entrySet()) {
+            try {
+                namespaceSteps.put(entry.getKey(), indexFlowSteps(entry
+                        .getValue().values()));
+            } catch (ConfigurationException e) {
+                namespaceErrors.put(entry.getKey(), e);
+            }
+        }
+
+        Map<String, Map<String, ActionFlowStepConfig>> flowMaps = new HashMap<String, Map<String, ActionFlowStepConfig>>();
+        Map<String, PackageConfig> flowPackageConfigs = new HashMap<String, PackageConfig>();
+        for (Entry<String, ActionFlowInterceptor> entry : flowPackages
+                .entrySet()) {
+            String packageName = entry.getKey();
+            ActionFlowInterceptor interceptor = entry.getValue();
+            try {
+                PackageConfig packageConfig = configuration
+                        .getPackageConfig(packageName);
+                String namespace = packageConfig.getNamespace();
+                if (namespaceErrors.containsKey(namespace)) {
+                    throw namespaceErrors.get(namespace);
+                }
+
+                Map<String, ActionConfig> actionConfigs = runtimeActionConfigs
+                        .get(namespace);
+                if (actionConfigs == null) {
+                    continue;
+                }
+
+                flowMaps.put(packageName, buildFlowMap(packageConfig,
+                        actionConfigs, namespaceSteps.get(namespace),
+                        interceptor.getNextActionName(),
+                        interceptor.getPrevActionName(),
+                        interceptor.getViewActionPostfix(),
+                        interceptor.getViewActionMethod(), flowPackageConfigs));
+            } catch (ConfigurationException e) {
+                LOG.error("Cannot create action flow of '" + packageName
+                        + "' package.", e);
+            }
+        }
+
+        if (!flowPackageConfigs.isEmpty()) {
+            addPackageConfigs(flowPackageConfigs);
+            configuration.rebuildRuntimeConfiguration();
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("created action flow mappings of " + flowMaps.size()
+                    + " packages with " + flowPackageConfigs.size()
+                    + " modified packages");
+        }
+        return flowMaps;
+    }
+
+    /**
+     * Indexes actions with {@value #PARAM_ACTION_FLOW_STEP} parameter.
+     * 
+     * @param actionConfigs
+     *            Action configurations of one namespace.
+     * @return Naturally ordered map of steps and their actions.
+     */
+    private Map<String, ActionConfig> indexFlowSteps(
+            final Collection<ActionConfig> actionConfigs) {
+        // holds all actions with PARAM_ACTION_FLOW_STEP parameter
+        // using TreeMap for natural ordering of keys
+        Map<String, ActionConfig> actionsStepMap = new TreeMap<String, ActionConfig>();
+
+        for (ActionConfig actionConfig : actionConfigs) {
             if (actionConfig.getParams().containsKey(PARAM_ACTION_FLOW_STEP)) {
                 String key = actionConfig.getParams().get(
                         PARAM_ACTION_FLOW_STEP);
@@ -117,6 +241,52 @@ public class ActionFlowConfigBuilder {
                 actionsStepMap.put(key, actionConfig);
             }
         }
+        return actionsStepMap;
+    }
+
+    /**
+     * Replaces package configurations and keeps them in XWork configuration.
+     * 
+     * @param packageConfigs
+     *            Package configurations to add.
+     */
+    private void addPackageConfigs(final Map<String, PackageConfig> packageConfigs) {
+        for (Entry<String, PackageConfig> entry : packageConfigs.entrySet()) {
+            configuration.removePackageConfig(entry.getKey());
+            configuration.addPackageConfig(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Builds action flow map for given package and collects package
+     * configuration with generated actions.
+     * 
+     * @param packageConfig
+     *            Package configuration.
+     * @param actionConfigs
+     *            Runtime action configurations of the package namespace.
+     * @param actionsStepMap
+     *            Naturally ordered steps of the package namespace.
+     * @param nextActionName
+     *            Name of the next action.
+     * @param prevActionName
+     *            Name of the previous action.
+     * @param viewActionPostfix
+     *            View action postfix.
+     * @param viewActionMethod
+     *            View action method.
+     * @param flowPackageConfigs
+     *            Map to put package configuration with generated actions to.
+     * @return Map of the action flow.
+     */
+    private Map<String, ActionFlowStepConfig> buildFlowMap(
+            final PackageConfig packageConfig,
+            final Map<String, ActionConfig> actionConfigs,
+            final Map<String, ActionConfig> actionsStepMap,
+            final String nextActionName, final String prevActionName,
+            final String viewActionPostfix, final String viewActionMethod,
+            final Map<String, PackageConfig> flowPackageConfigs) {
+        final String packageName = packageConfig.getName();
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("found action flows: " + actionsStepMap);
@@ -134,12 +304,14 @@ public class ActionFlowConfigBuilder {
             } else {
                 ResultConfig rs = packageConfig.getAllGlobalResults().get(
                         ActionFlowInterceptor.GLOBAL_VIEW_RESULT);
-                if (!ServletActionRedirectResult.class.getName().equals(
+                if (isFlowRedirect(rs)) {
+                    // target is set by the interceptor
+                } else if (!ServletActionRedirectResult.class.getName().equals(
                         rs.getClassName())) {
                     throw new ConfigurationException(
                             "The '"
                                     + ActionFlowInterceptor.GLOBAL_VIEW_RESULT
-                                    + "' global result type must be 'redirectAction' in package '"
+                                    + "' global result type must be 'redirectAction' or 'actionFlowRedirect' in package '"
                                     + packageName + "'.", rs);
                 } else if (!("${" + ActionFlowInterceptor.VIEW_ACTION_PARAM + "}")
                         .equals(rs.getParams().get(
@@ -153,6 +325,24 @@ public class ActionFlowConfigBuilder {
                             + "}' in package '" + packageName + "'.", rs);
                 }
             }
+
+            // optional forward global result
+            ResultConfig forward = packageConfig.getAllGlobalResults().get(
+                    ActionFlowInterceptor.GLOBAL_FORWARD_RESULT);
+            if (forward != null
+                    && (!ActionChainResult.class.getName().equals(
+                            forward.getClassName()) || !("${"
+                            + ActionFlowInterceptor.VIEW_ACTION_PARAM + "}")
+                            .equals(forward.getParams().get(
+                                    ActionChainResult.DEFAULT_PARAM)))) {
+                throw new ConfigurationException("The '"
+                        + ActionFlowInterceptor.GLOBAL_FORWARD_RESULT
+                        + "' global result must be of 'chain' type with '"
+                        + ActionChainResult.DEFAULT_PARAM
+                        + "' parameter '${"
+                        + ActionFlowInterceptor.VIEW_ACTION_PARAM
+                        + "}' in package '" + packageName + "'.", forward);
+            }
         }
 
         // holds action flows: {1:{nextAction:2,prevAction:0,index:1}}
@@ -197,7 +387,7 @@ public class ActionFlowConfigBuilder {
                         actionConfig.getName() + viewActionPostfix,
                         actionConfig.getClassName())
                         .methodName(viewActionMethod)
-                        .addInterceptors(actionConfig.getInterceptors())
+                        .addInterceptors(viewInterceptors(actionConfig))
                         .addResultConfig(resultConfig).build();
                 viewActionConfigs.add(act);
             }
@@ -234,6 +424,10 @@ public class ActionFlowConfigBuilder {
 
             ActionFlowStepConfig.Builder stepConfigBuilder = new ActionFlowStepConfig.Builder(
                     index, nextActionVal, prevActionVal);
+            stepConfigBuilder.reads(paramSet(actionConfig,
+                    PARAM_ACTION_FLOW_STEP_READS));
+            stepConfigBuilder.writes(paramSet(actionConfig,
+                    PARAM_ACTION_FLOW_STEP_WRITES));
             ActionFlowStepConfig stepConfig = stepConfigBuilder.build();
             actionFlows.put(actionConfig.getName(), stepConfig);
 
@@ -276,14 +470,16 @@ public class ActionFlowConfigBuilder {
                 if (rs == null
                         || rs.isEmpty()
                         || !rs.containsKey(Action.SUCCESS)
-                        || !ServletActionRedirectResult.class.getName().equals(
-                                rs.get(Action.SUCCESS).getClassName())) {
+                        || (!ServletActionRedirectResult.class.getName()
+                                .equals(rs.get(Action.SUCCESS).getClassName()) && !isFlowRedirect(rs
+                                .get(Action.SUCCESS)))) {
                     throw new ConfigurationException("The '" + prevActionName
                             + "' action must define '" + Action.SUCCESS
-                            + "' result of 'redirectAction' type in package '"
+                            + "' result of 'redirectAction' or 'actionFlowRedirect' type in package '"
                             + packageName + "'.",
                             actionConfigs.get(prevActionName));
-                } else if (!("${" + ActionFlowInterceptor.PREV_ACTION_PARAM + "}")
+                } else if (!isFlowRedirect(rs.get(Action.SUCCESS))
+                        && !("${" + ActionFlowInterceptor.PREV_ACTION_PARAM + "}")
                         .equals(rs.get(Action.SUCCESS).getParams()
                                 .get(ServletActionRedirectResult.DEFAULT_PARAM))) {
                     throw new ConfigurationException("The '" + prevActionName
@@ -301,13 +497,31 @@ public class ActionFlowConfigBuilder {
                             + "' package. Creating one.");
                 }
 
-                // add previous action
-                ResultConfig prevResultConfig = new ResultConfig.Builder(
-                        Action.SUCCESS,
-                        ServletActionRedirectResult.class.getName()).addParam(
-                        ServletActionRedirectResult.DEFAULT_PARAM,
-                        "${" + ActionFlowInterceptor.PREV_ACTION_PARAM + "}")
-                        .build();
+                // add previous action, redirecting the same way as the view
+                // global result
+                ResultConfig prevResultConfig;
+                if (isFlowRedirect(packageConfig.getAllGlobalResults().get(
+                        ActionFlowInterceptor.GLOBAL_VIEW_RESULT))) {
+                    prevResultConfig = new ResultConfig.Builder(
+                            Action.SUCCESS,
+                            ActionFlowRedirectResult.class.getName()).build();
+                } else {
+                    prevResultConfig = new ResultConfig.Builder(
+                            Action.SUCCESS,
+                            ServletActionRedirectResult.class.getName())
+                            .addParam(
+                                    ServletActionRedirectResult.DEFAULT_PARAM,
+                                    "${"
+                                            + ActionFlowInterceptor.PREV_ACTION_PARAM
+                                            + "}")
+                            .addParam(
+                                    ActionFlowInterceptor.FLOW_EXECUTION_KEY_PARAM,
+                                    "${#"
+                                            + ActionFlowInterceptor.FLOW_EXECUTION_KEY
+                                            + "}")
+                            .addParam("supressEmptyParameters", "true")
+                            .build();
+                }
                 // build previous action configuration
                 ActionConfig prevAct = new ActionConfig.Builder(packageName,
                         prevActionName, "").addResultConfig(prevResultConfig)
@@ -368,15 +582,406 @@ public class ActionFlowConfigBuilder {
             }
 
             // build flow package
-            PackageConfig pconf = pcb.build();
-
-            configuration.removePackageConfig(packageName);
-            configuration.addPackageConfig(packageName, pconf);
-            configuration.rebuildRuntimeConfiguration();
+            flowPackageConfigs.put(packageName, pcb.build());
         }
         return Collections.unmodifiableMap(actionFlows);
     }
 
+    /**
+     * Compiles action flow configuration from action flow map and action flow
+     * scope fields map.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @param flowMap
+     *            Map of the action flow.
+     * @param flowScopeFields
+     *            Map of the action flow scope fields.
+     * @param nextActionName
+     *            Name of the next action.
+     * @param prevActionName
+     *            Name of the previous action.
+     * @param viewActionPostfix
+     *            View action postfix.
+     * @return Compiled action flow configuration.
+     */
+    protected ActionFlowConfig createFlowConfig(final String packageName,
+            final Map<String, ActionFlowStepConfig> flowMap,
+            final Map<String, List<PropertyDescriptor>> flowScopeFields,
+            final String nextActionName, final String prevActionName,
+            final String viewActionPostfix) {
+        final int stepCount = flowMap.size();
+
+        String[] stepActions = new String[stepCount];
+        String[] viewActions = new String[stepCount];
+        int[] nextSteps = new int[stepCount];
+        int[] prevSteps = new int[stepCount];
+
+        for (Entry<String, ActionFlowStepConfig> entry : flowMap.entrySet()) {
+            ActionFlowStepConfig cfg = entry.getValue();
+            if (ActionFlowInterceptor.FIRST_FLOW_ACTION_NAME.equals(entry
+                    .getKey())) {
+                stepActions[0] = ActionFlowInterceptor.FIRST_FLOW_ACTION_NAME;
+            } else {
+                stepActions[cfg.getIndex()] = entry.getKey();
+                viewActions[cfg.getIndex()] = entry.getKey()
+                        + viewActionPostfix;
+            }
+        }
+
+        Map<String, ActionFlowRoute> routes = new HashMap<String, ActionFlowRoute>();
+        if (stepCount > 0) {
+            routes.put(nextActionName, new ActionFlowRoute(
+                    ActionFlowRoute.Role.NEXT, -1));
+            routes.put(prevActionName, new ActionFlowRoute(
+                    ActionFlowRoute.Role.PREV, -1));
+        }
+        for (int i = 0; i < stepCount; i++) {
+            nextSteps[i] = i < stepCount - 1 ? i + 1 : -1;
+            prevSteps[i] = i > 0 ? i - 1 : 0;
+
+            if (i > 0) {
+                routes.put(viewActions[i], new ActionFlowRoute(
+                        ActionFlowRoute.Role.FLOW_VIEW, i));
+                routes.put(stepActions[i], new ActionFlowRoute(
+                        ActionFlowRoute.Role.FLOW_STEP, i));
+            }
+        }
+
+        // create action flow steps data
+        TreeMap<Integer, String> m = new TreeMap<Integer, String>();
+        for (int i = 1; i < stepCount; i++) {
+            m.put(i, stepActions[i]);
+        }
+
+        // steps data for every active step index, index of not flow actions
+        // is 1
+        ActionFlowStepsData stepsData = ActionFlowStepsData.createShared(m,
+                null);
+        ActionFlowStepsData[] stepsDataByStep = new ActionFlowStepsData[Math
+                .max(stepCount, 2)];
+        stepsDataByStep[0] = stepsData;
+        for (int i = 1; i < stepsDataByStep.length; i++) {
+            stepsDataByStep[i] = stepsData.shareWithStepIndex(i);
+        }
+
+        // scope fields with precomputed keys and slots, slots are assigned in
+        // class name order so they do not depend on the hash map order
+        Map<String, ActionFlowScopeField[]> scopeFields = new HashMap<String, ActionFlowScopeField[]>();
+        List<ActionFlowScopeField> slots = new ArrayList<ActionFlowScopeField>();
+        int[] valueCounts = new int[ActionFlowScopeField.Type.values().length];
+        if (flowScopeFields != null) {
+            for (Entry<String, List<PropertyDescriptor>> entry : new TreeMap<String, List<PropertyDescriptor>>(
+                    flowScopeFields).entrySet()) {
+                if (entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    ActionFlowScopeAccessor accessor = getScopeAccessor(
+                            entry.getKey(), entry.getValue());
+                    ActionFlowScopeField[] fields = new ActionFlowScopeField[entry
+                            .getValue().size()];
+                    for (int i = 0; i < fields.length; i++) {
+                        PropertyDescriptor pd = entry.getValue().get(i);
+                        int type = ActionFlowScopeField.typeOf(
+                                pd.getPropertyType()).ordinal();
+                        fields[i] = new ActionFlowScopeField(entry.getKey(),
+                                pd, accessor, i, slots.size(),
+                                valueCounts[type]++);
+                        slots.add(fields[i]);
+                    }
+                    scopeFields.put(entry.getKey(), fields);
+                }
+            }
+        }
+        ActionFlowScopeLayout scopeLayout = new ActionFlowScopeLayout(
+                slots.toArray(new ActionFlowScopeField[slots.size()]),
+                createScopeDependents(packageName, flowMap, slots),
+                createStepWrites(packageName, flowMap, slots, stepCount));
+
+        ActionFlowConfig flowConfig = new ActionFlowConfig(packageName,
+                flowMap, flowScopeFields, stepsData, stepsDataByStep,
+                Collections.unmodifiableMap(scopeFields), scopeLayout,
+                stepActions, viewActions, nextSteps, prevSteps,
+                Collections.unmodifiableMap(routes));
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("created action flow routes: " + routes);
+        }
+
+        return flowConfig;
+    }
+
+    /**
+     * Creates dependencies between action flow scope fields declared by
+     * {@value #PARAM_ACTION_FLOW_STEP_READS} and
+     * {@value #PARAM_ACTION_FLOW_STEP_WRITES} parameters of the steps. Fields
+     * written by a step are derived from the fields it reads. Fields are named
+     * by property name, which matches the field in every action class, or by
+     * <code>className.property</code>.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @param flowMap
+     *            Action flow map of the package.
+     * @param slots
+     *            Action flow scope fields by slot.
+     * @return Slots of the fields derived directly or indirectly from the
+     *         field by slot or <code>null</code> if no step declares them.
+     */
+    private int[][] createScopeDependents(final String packageName,
+            final Map<String, ActionFlowStepConfig> flowMap,
+            final List<ActionFlowScopeField> slots) {
+        List<Set<Integer>> direct = null;
+        for (Entry<String, ActionFlowStepConfig> entry : flowMap.entrySet()) {
+            ActionFlowStepConfig cfg = entry.getValue();
+            if (cfg.getReads().isEmpty() || cfg.getWrites().isEmpty()) {
+                continue;
+            }
+            if (direct == null) {
+                direct = new ArrayList<Set<Integer>>();
+                for (int i = 0; i < slots.size(); i++) {
+                    direct.add(new TreeSet<Integer>());
+                }
+            }
+            Set<Integer> reads = resolveScopeFields(packageName,
+                    entry.getKey(), PARAM_ACTION_FLOW_STEP_READS,
+                    cfg.getReads(), slots);
+            Set<Integer> writes = resolveScopeFields(packageName,
+                    entry.getKey(), PARAM_ACTION_FLOW_STEP_WRITES,
+                    cfg.getWrites(), slots);
+            for (Integer read : reads) {
+                direct.get(read).addAll(writes);
+                direct.get(read).remove(read);
+            }
+        }
+        if (direct == null) {
+            return null;
+        }
+
+        // transitive closure, derived values of derived values are invalid too
+        int[][] dependents = new int[slots.size()][];
+        for (int i = 0; i < dependents.length; i++) {
+            Set<Integer> all = new TreeSet<Integer>();
+            List<Integer> queue = new ArrayList<Integer>(direct.get(i));
+            while (!queue.isEmpty()) {
+                Integer slot = queue.remove(queue.size() - 1);
+                if (slot.intValue() != i && all.add(slot)) {
+                    queue.addAll(direct.get(slot));
+                }
+            }
+            dependents[i] = new int[all.size()];
+            int j = 0;
+            for (Integer slot : all) {
+                dependents[i][j++] = slot.intValue();
+            }
+        }
+        return dependents;
+    }
+
+    /**
+     * Creates slots of the action flow scope fields declared as written by
+     * the steps.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @param flowMap
+     *            Action flow map of the package.
+     * @param slots
+     *            Action flow scope fields by slot.
+     * @param stepCount
+     *            Number of steps including <code>firstFlowAction</code>.
+     * @return Slots of the written fields by step index or <code>null</code>
+     *         if no step declares them.
+     */
+    private int[][] createStepWrites(final String packageName,
+            final Map<String, ActionFlowStepConfig> flowMap,
+            final List<ActionFlowScopeField> slots, final int stepCount) {
+        int[][] stepWrites = null;
+        for (Entry<String, ActionFlowStepConfig> entry : flowMap.entrySet()) {
+            ActionFlowStepConfig cfg = entry.getValue();
+            if (cfg.getWrites().isEmpty()) {
+                continue;
+            }
+            if (stepWrites == null) {
+                stepWrites = new int[stepCount][];
+            }
+            Set<Integer> writes = resolveScopeFields(packageName,
+                    entry.getKey(), PARAM_ACTION_FLOW_STEP_WRITES,
+                    cfg.getWrites(), slots);
+            stepWrites[cfg.getIndex()] = new int[writes.size()];
+            int i = 0;
+            for (Integer slot : writes) {
+                stepWrites[cfg.getIndex()][i++] = slot.intValue();
+            }
+        }
+        return stepWrites;
+    }
+
+    /**
+     * Resolves names of action flow scope fields to their slots.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @param actionName
+     *            Name of the step action.
+     * @param paramName
+     *            Name of the parameter.
+     * @param names
+     *            Names of the fields.
+     * @param slots
+     *            Action flow scope fields by slot.
+     * @return Slots of the fields.
+     */
+    private Set<Integer> resolveScopeFields(final String packageName,
+            final String actionName, final String paramName,
+            final Set<String> names, final List<ActionFlowScopeField> slots) {
+        Set<Integer> result = new TreeSet<Integer>();
+        for (String name : names) {
+            boolean found = false;
+            for (int i = 0; i < slots.size(); i++) {
+                ActionFlowScopeField field = slots.get(i);
+                if (field.getScopeKey().equals(name)
+                        || field.getScopeKey().endsWith("." + name)) {
+                    result.add(Integer.valueOf(i));
+                    found = true;
+                }
+            }
+            if (!found) {
+                throw new ConfigurationException("There is no '" + name
+                        + "' action flow scope field for '" + paramName
+                        + "' parameter of '" + actionName + "' action in '"
+                        + packageName + "' package.");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the result is {@link ActionFlowRedirectResult}.
+     * 
+     * @param resultConfig
+     *            Result configuration or <code>null</code>.
+     * @return <code>true</code> if the result redirects to the action set by
+     *         the interceptor.
+     */
+    private boolean isFlowRedirect(final ResultConfig resultConfig) {
+        return resultConfig != null
+                && ActionFlowRedirectResult.class.getName().equals(
+                        resultConfig.getClassName());
+    }
+
+    /**
+     * Gets interceptors of the generated view action of the step. The view
+     * action uses the interceptors of the step action unless the step names
+     * other interceptor or stack in {@value #PARAM_ACTION_FLOW_VIEW_STACK}
+     * parameter. The action flow interceptor of the step is kept in place of
+     * the one of the named stack, so the view action runs with the
+     * interceptor parameters of the step package.
+     * 
+     * @param actionConfig
+     *            Step action configuration.
+     * @return Interceptors of the view action.
+     */
+    private List<InterceptorMapping> viewInterceptors(
+            final ActionConfig actionConfig) {
+        String stackName = actionConfig.getParams().get(
+                PARAM_ACTION_FLOW_VIEW_STACK);
+        if (stackName == null || stackName.trim().isEmpty()) {
+            return actionConfig.getInterceptors();
+        }
+
+        List<InterceptorMapping> flowInterceptors = new ArrayList<InterceptorMapping>();
+        for (InterceptorMapping mapping : actionConfig.getInterceptors()) {
+            if (mapping.getInterceptor() instanceof ActionFlowInterceptor) {
+                flowInterceptors.add(mapping);
+            }
+        }
+
+        List<InterceptorMapping> stack = InterceptorBuilder
+                .constructInterceptorReference(configuration
+                        .getPackageConfig(actionConfig.getPackageName()),
+                        stackName.trim(), Collections
+                                .<String, String> emptyMap(), actionConfig
+                                .getLocation(), objectFactory);
+
+        List<InterceptorMapping> interceptors = new ArrayList<InterceptorMapping>();
+        for (InterceptorMapping mapping : stack) {
+            if (!(mapping.getInterceptor() instanceof ActionFlowInterceptor)) {
+                interceptors.add(mapping);
+            } else if (!flowInterceptors.isEmpty()) {
+                interceptors.addAll(flowInterceptors);
+                flowInterceptors.clear();
+            }
+        }
+        // stack without action flow interceptor
+        interceptors.addAll(0, flowInterceptors);
+        return interceptors;
+    }
+
+    /**
+     * Gets comma separated values of the action parameter.
+     * 
+     * @param actionConfig
+     *            Action configuration.
+     * @param paramName
+     *            Name of the parameter.
+     * @return Values of the parameter, empty if there is no such parameter.
+     */
+    private Set<String> paramSet(final ActionConfig actionConfig,
+            final String paramName) {
+        String value = actionConfig.getParams().get(paramName);
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        return TextParseUtil.commaDelimitedStringToSet(value);
+    }
+
+    /**
+     * Gets accessor of the action flow scope fields of the action class.
+     * Accessors of the fields found by {@link #createFlowScopeFields(String)}
+     * are cached with the {@link ActionFlowScopeMetadata} of the class, so
+     * they do not keep classes of undeployed applications.
+     * 
+     * @param className
+     *            Name of the action class.
+     * @param propertyDescriptors
+     *            Action flow scope fields of the class.
+     * @return Accessor of the action flow scope fields.
+     */
+    protected ActionFlowScopeAccessor getScopeAccessor(final String className,
+            final List<PropertyDescriptor> propertyDescriptors) {
+        long start = System.currentTimeMillis();
+
+        Class<?> actionClass;
+        try {
+            actionClass = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new ConfigurationException("Cannot load action class '"
+                    + className + "'.", e);
+        }
+        ActionFlowScopeMetadata metadata = null;
+        try {
+            metadata = ActionFlowScopeMetadata.forClass(actionClass);
+        } catch (IntrospectionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("In getScopeAccessor", e);
+            }
+        }
+        ActionFlowScopeAccessor accessor;
+        if (metadata != null
+                && metadata.getPropertyDescriptors() == propertyDescriptors) {
+            accessor = metadata.getAccessor(actionClass);
+        } else {
+            accessor = ActionFlowScopeAccessor.create(actionClass,
+                    propertyDescriptors);
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("got action flow scope accessor "
+                    + accessor.getClass().getName() + " of '" + className
+                    + "' in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        return accessor;
+    }
+
     /**
      * Creates action flow scope fields map for given package name.
      * 
@@ -388,56 +993,21 @@ public class ActionFlowConfigBuilder {
             final String packageName) {
         Map<String, List<PropertyDescriptor>> flowScopeFields = new HashMap<String, List<PropertyDescriptor>>();
 
-        Map<String, Map<String, ActionConfig>> runtimeActionConfigs = configuration
-                .getRuntimeConfiguration().getActionConfigs();
-
-        PackageConfig packageConfig = configuration
-                .getPackageConfig(packageName);
-
-        // Map<String, ActionConfig> actionConfigs = packageConfig
-        // .getAllActionConfigs();
-        Collection<ActionConfig> actionConfigs = runtimeActionConfigs.get(
-                packageConfig.getNamespace()).values();
-
-        // get all unique action class names
-        Set<String> classNames = new HashSet<String>();
-        for (ActionConfig ac : actionConfigs) {
-            classNames.add(ac.getClassName());
-        }
+        Set<String> classNames = getActionClassNames(packageName);
 
         if (classNames != null && !classNames.isEmpty()) {
             for (String className : classNames) {
                 try {
-                    Class<?> clazz = Class.forName(className);
-                    String classKey = clazz.getName();
-
-                    if (clazz.isAnnotationPresent(ActionFlowScope.class)) {
-                        List<PropertyDescriptor> pds = new ArrayList<PropertyDescriptor>();
-                        for (PropertyDescriptor pd : Introspector.getBeanInfo(
-                                clazz).getPropertyDescriptors()) {
-                            Field field = null;
-                            try {
-                                field = clazz.getDeclaredField(pd.getName());
-                            } catch (NoSuchFieldException nsfe) {
-                                if (LOG.isTraceEnabled()) {
-                                    LOG.trace("In createFlowScope", nsfe);
-                                }
-                            }
-
-                            if (field != null
-                                    && field.isAnnotationPresent(ActionFlowScope.class)
-                                    && pd.getReadMethod() != null
-                                    && pd.getWriteMethod() != null) {
-                                pds.add(pd);
-                            }
-                        }
-                        if (pds != null && !pds.isEmpty()) {
-                            flowScopeFields.put(classKey,
-                                    Collections.unmodifiableList(pds));
-                        }
+                    List<PropertyDescriptor> pds = ActionFlowScopeMetadata
+                            .forClass(Class.forName(className))
+                            .getPropertyDescriptors();
+                    if (!pds.isEmpty()) {
+                        flowScopeFields.put(className, pds);
                     }
                 } catch (Exception e) {
                     LOG.warn("In createFlowScope", e);
+                } catch (LinkageError e) {
+                    LOG.warn("In createFlowScope", e);
                 }
             }
         }
@@ -449,4 +1019,97 @@ public class ActionFlowConfigBuilder {
 
         return Collections.unmodifiableMap(flowScopeFields);
     }
+
+    /**
+     * Introspects action classes of given packages on several threads, so
+     * {@link #createFlowScopeFields(String)} finds them introspected. Classes
+     * are submitted in name order. Classes which cannot be introspected are
+     * skipped here and reported by {@link #createFlowScopeFields(String)}.
+     * 
+     * @param packageNames
+     *            Names of the packages.
+     * @param threads
+     *            Number of threads.
+     * @return Number of introspected classes.
+     */
+    public int introspectActionClasses(final Collection<String> packageNames,
+            final int threads) {
+        Set<String> classNames = new TreeSet<String>();
+        for (String packageName : packageNames) {
+            classNames.addAll(getActionClassNames(packageName));
+        }
+
+        final ClassLoader contextLoader = Thread.currentThread()
+                .getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r,
+                                "actionflow-introspector-"
+                                        + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setContextClassLoader(contextLoader);
+                        return thread;
+                    }
+                });
+        try {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for (final String className : classNames) {
+                tasks.add(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return ActionFlowScopeMetadata.forClass(Class
+                                .forName(className));
+                    }
+                });
+            }
+
+            int introspected = 0;
+            List<Future<Object>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                    introspected++;
+                } catch (ExecutionException e) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("In introspectActionClasses", e.getCause());
+                    }
+                }
+            }
+            return introspected;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets names of the action classes in the namespace of the package.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @return Unique action class names.
+     */
+    private Set<String> getActionClassNames(final String packageName) {
+        Map<String, Map<String, ActionConfig>> runtimeActionConfigs = configuration
+                .getRuntimeConfiguration().getActionConfigs();
+
+        PackageConfig packageConfig = configuration
+                .getPackageConfig(packageName);
+
+        // Map<String, ActionConfig> actionConfigs = packageConfig
+        // .getAllActionConfigs();
+        Collection<ActionConfig> actionConfigs = runtimeActionConfigs.get(
+                packageConfig.getNamespace()).values();
+
+        // get all unique action class names
+        Set<String> classNames = new HashSet<String>();
+        for (ActionConfig ac : actionConfigs) {
+            classNames.add(ac.getClassName());
+        }
+        return classNames;
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+/**
+ * Struts constants used by the action flow plug-in.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public final class ActionFlowConstants {
+
+    /** Whether to compile action flows at startup instead of first request. */
+    public static final String EAGER_COMPILATION = "struts.actionflow.eagerCompilation";
+
+    /** Name of the {@link FlowScopeStore} bean to use. */
+    public static final String SCOPE_STORE = "struts.actionflow.scopeStore";
+
+    /** Maximum number of flows kept by {@link HeapFlowScopeStore}. */
+    public static final String HEAP_STORE_MAX_ENTRIES = "struts.actionflow.heapStore.maxEntries";
+
+    /** Time to live in seconds of not accessed flows in {@link HeapFlowScopeStore}. */
+    public static final String HEAP_STORE_TIME_TO_LIVE = "struts.actionflow.heapStore.timeToLive";
+
+    /** Maximum number of flow executions per session. */
+    public static final String MAX_EXECUTIONS = "struts.actionflow.maxExecutions";
+
+    /** Idle timeout of action flows in seconds, <code>0</code> disables it. */
+    public static final String FLOW_TIMEOUT = "struts.actionflow.flowTimeout";
+
+    /** Name of the {@link ActionFlowAbandonmentListener} bean to notify. */
+    public static final String ABANDONMENT_LISTENER = "struts.actionflow.abandonmentListener";
+
+    /**
+     * Number of threads introspecting action classes on startup,
+     * <code>0</code> for one per processor and <code>1</code> to introspect
+     * them while compiling each package.
+     */
+    public static final String INTROSPECTION_THREADS = "struts.actionflow.introspectionThreads";
+
+    /** Constants holder. */
+    private ActionFlowConstants() {
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Independent action flow executions of one session identified by execution
+ * keys. Holds at most given number of executions, the least recently used
+ * execution is evicted first. Methods synchronize on the instance, so callers
+ * can combine several calls in one <code>synchronized</code> block.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowExecutions implements Serializable {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = -3290147427614406118L;
+
+    /** Random for execution keys. */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /** State of executions by execution key, guarded by this. */
+    private final ExecutionMap executions;
+
+    /**
+     * @param maxExecutions
+     *            maximum number of executions.
+     */
+    public ActionFlowExecutions(final int maxExecutions) {
+        this.executions = new ExecutionMap(maxExecutions);
+    }
+
+    /**
+     * Creates new random execution key.
+     * 
+     * @return execution key.
+     */
+    public static String createKey() {
+        return Long.toString(RANDOM.nextLong() & Long.MAX_VALUE,
+                Character.MAX_RADIX);
+    }
+
+    /**
+     * Checks whether execution exists, marking it as used.
+     * 
+     * @param executionKey
+     *            execution key.
+     * @return <code>true</code> if execution exists.
+     */
+    public synchronized boolean contains(final String executionKey) {
+        return access(executionKey) != null;
+    }
+
+    /**
+     * Gets value of the execution state.
+     * 
+     * @param executionKey
+     *            execution key.
+     * @param name
+     *            name of the value.
+     * @return value or <code>null</code> if there is none.
+     */
+    public synchronized Object get(final String executionKey,
+            final String name) {
+        Execution execution = access(executionKey);
+        return execution == null ? null : execution.values.get(name);
+    }
+
+    /**
+     * Puts value of the execution state, creating execution if needed.
+     * 
+     * @param executionKey
+     *            execution key.
+     * @param name
+     *            name of the value.
+     * @param value
+     *            value to put, <code>null</code> removes the value.
+     */
+    public synchronized void put(final String executionKey, final String name,
+            final Object value) {
+        Execution execution = access(executionKey);
+        if (value == null) {
+            if (execution != null) {
+                execution.values.remove(name);
+                if (execution.values.isEmpty()) {
+                    executions.remove(executionKey);
+                }
+            }
+        } else {
+            if (execution == null) {
+                execution = new Execution();
+                execution.lastAccess = System.currentTimeMillis();
+                executions.put(executionKey, execution);
+            }
+            execution.values.put(name, value);
+        }
+    }
+
+    /**
+     * Removes execution.
+     * 
+     * @param executionKey
+     *            execution key.
+     * @return state of the removed execution or <code>null</code> if there
+     *         is none.
+     */
+    public synchronized Map<String, Object> remove(final String executionKey) {
+        Execution execution = executions.remove(executionKey);
+        return execution == null ? null : execution.values;
+    }
+
+    /**
+     * Gets time of the last access to the execution without updating it.
+     * 
+     * @param executionKey
+     *            execution key.
+     * @return time in milliseconds or <code>0</code> if there is no such
+     *         execution.
+     */
+    public synchronized long getLastAccess(final String executionKey) {
+        Execution execution = executions.get(executionKey);
+        return execution == null ? 0 : execution.lastAccess;
+    }
+
+    /**
+     * Gets pending expiry task of the execution.
+     * 
+     * @param executionKey
+     *            execution key.
+     * @return task or <code>null</code>.
+     */
+    public synchronized Object getExpiryTask(final String executionKey) {
+        Execution execution = executions.get(executionKey);
+        return execution == null ? null : execution.expiryTask;
+    }
+
+    /**
+     * Sets pending expiry task of the execution.
+     * 
+     * @param executionKey
+     *            execution key.
+     * @param task
+     *            expiry task.
+     * @return <code>false</code> if there is no such execution.
+     */
+    public synchronized boolean setExpiryTask(final String executionKey,
+            final Object task) {
+        Execution execution = executions.get(executionKey);
+        if (execution == null) {
+            return false;
+        }
+        execution.expiryTask = task;
+        return true;
+    }
+
+    /**
+     * Gets execution updating its last access time.
+     * 
+     * @param executionKey
+     *            execution key.
+     * @return execution or <code>null</code>.
+     */
+    private Execution access(final String executionKey) {
+        Execution execution = executions.get(executionKey);
+        if (execution != null) {
+            execution.lastAccess = System.currentTimeMillis();
+        }
+        return execution;
+    }
+
+    /**
+     * @return number of executions.
+     */
+    public synchronized int size() {
+        return executions.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ActionFlowExecutions ");
+        sb.append("executions:").append(executions);
+        sb.append("}");
+        return sb.toString();
+    }
+
+    /**
+     * State of one execution.
+     */
+    private static final class Execution implements Serializable {
+
+        /** Serial version uid. */
+        private static final long serialVersionUID = -1447419567914209113L;
+
+        /** Values of the execution state. */
+        private final Map<String, Object> values = new HashMap<String, Object>();
+
+        /** Time of the last access. */
+        private long lastAccess;
+
+        /** Pending expiry task, not restored with the session. */
+        private transient Object expiryTask;
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return values.toString();
+        }
+    }
+
+    /**
+     * Executions in access order bounded by maximum number of executions.
+     */
+    private static final class ExecutionMap extends
+            LinkedHashMap<String, Execution> {
+
+        /** Serial version uid. */
+        private static final long serialVersionUID = 8406716203624925301L;
+
+        /** Maximum number of executions. */
+        private final int maxExecutions;
+
+        /**
+         * @param maxExecutions
+         *            maximum number of executions.
+         */
+        private ExecutionMap(final int maxExecutions) {
+            super(16, 0.75f, true);
+            this.maxExecutions = maxExecutions;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Execution> eldest) {
+            return size() > maxExecutions;
+        }
+    }
+}
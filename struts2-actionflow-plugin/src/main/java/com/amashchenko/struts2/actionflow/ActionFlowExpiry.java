@@ -0,0 +1,370 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpSession;
+
+import org.apache.struts2.dispatcher.Dispatcher;
+import org.apache.struts2.dispatcher.DispatcherListener;
+
+import com.opensymphony.xwork2.config.ConfigurationException;
+import com.opensymphony.xwork2.inject.Container;
+import com.opensymphony.xwork2.inject.Inject;
+import com.opensymphony.xwork2.util.logging.Logger;
+import com.opensymphony.xwork2.util.logging.LoggerFactory;
+
+/**
+ * Container scoped expiry of idle action flow executions. Each execution has
+ * at most one pending task in a {@link HashedTimerWheel}, when it is due the
+ * execution is removed if it has not been accessed for the flow timeout,
+ * otherwise the task is scheduled again for the remaining time. Disabled
+ * unless {@value ActionFlowConstants#FLOW_TIMEOUT} is set.
+ * <p/>
+ * All instances share one timer wheel, so instances of a reloaded
+ * configuration do not start more threads and tasks of the existing
+ * executions are not lost. The expiry thread is stopped when the dispatcher
+ * is destroyed.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowExpiry {
+
+    /** Logger. */
+    public static final Logger LOG = LoggerFactory
+            .getLogger(ActionFlowExpiry.class);
+
+    /** Default tick of the timer wheel in milliseconds. */
+    private static final long DEFAULT_TICK = 1000;
+
+    /** Number of buckets of the timer wheel. */
+    private static final int WHEEL_SIZE = 512;
+
+    /** Timer wheel shared by all instances. */
+    private static final HashedTimerWheel SHARED_WHEEL = new HashedTimerWheel(
+            DEFAULT_TICK, WHEEL_SIZE, "actionflow-expiry");
+
+    /** Stops the shared timer wheel, registered once. */
+    private static final DispatcherListener SHUTDOWN_LISTENER = new ShutdownListener();
+
+    /** Whether {@link #SHUTDOWN_LISTENER} is registered, guarded by it. */
+    private static boolean shutdownListenerRegistered;
+
+    /** Timer wheel. */
+    private final HashedTimerWheel wheel;
+
+    /** Flow timeout in milliseconds, <code>0</code> disables expiry. */
+    private volatile long timeout;
+
+    /** Name of the abandonment listener bean. */
+    private String listenerName;
+
+    /** Abandonment listener. */
+    private volatile ActionFlowAbandonmentListener listener;
+
+    private Container container;
+
+    private ActionFlowStatistics statistics = new ActionFlowStatistics();
+
+    /** Creates expiry using the shared timer wheel. */
+    public ActionFlowExpiry() {
+        this.wheel = SHARED_WHEEL;
+    }
+
+    /**
+     * Creates expiry with its own timer wheel.
+     * 
+     * @param tickMillis
+     *            tick of the timer wheel in milliseconds.
+     */
+    ActionFlowExpiry(final long tickMillis) {
+        this.wheel = new HashedTimerWheel(tickMillis, WHEEL_SIZE,
+                "actionflow-expiry");
+    }
+
+    /**
+     * @return whether flow expiry is enabled.
+     */
+    public boolean isEnabled() {
+        return timeout > 0;
+    }
+
+    /**
+     * Makes sure expiry of the execution is scheduled. Called after the
+     * execution was accessed.
+     * 
+     * @param executions
+     *            flow executions container.
+     * @param executionKey
+     *            execution key.
+     * @param packageName
+     *            name of the package of the flow.
+     * @param httpSession
+     *            session holding the executions container, it is put again
+     *            into the session after expiry so replicated sessions see the
+     *            change, or <code>null</code>.
+     */
+    public void touch(final ActionFlowExecutions executions,
+            final String executionKey, final String packageName,
+            final HttpSession httpSession) {
+        final long now = System.currentTimeMillis();
+        synchronized (executions) {
+            Object task = executions.getExpiryTask(executionKey);
+            // tasks of a stopped wheel or of a restored session are lost
+            if (task instanceof ExpiryTask
+                    && now - ((ExpiryTask) task).due <= timeout) {
+                return;
+            }
+            ExpiryTask newTask = new ExpiryTask(executions, executionKey,
+                    packageName, httpSession);
+            if (executions.setExpiryTask(executionKey, newTask)) {
+                newTask.schedule(now, timeout);
+            }
+        }
+    }
+
+    /**
+     * Stops the expiry thread. Not yet run tasks are kept and the thread is
+     * started again on next schedule.
+     */
+    public void stop() {
+        wheel.stop();
+    }
+
+    /**
+     * Registers listener stopping the shared timer wheel if it is not
+     * registered yet.
+     */
+    private static void registerShutdownListener() {
+        synchronized (SHUTDOWN_LISTENER) {
+            if (!shutdownListenerRegistered) {
+                Dispatcher.addDispatcherListener(SHUTDOWN_LISTENER);
+                shutdownListenerRegistered = true;
+            }
+        }
+    }
+
+    /**
+     * Notifies about abandoned flow.
+     * 
+     * @param packageName
+     *            name of the package of the flow.
+     * @param state
+     *            state of the removed execution.
+     */
+    @SuppressWarnings("unchecked")
+    private void abandoned(final String packageName,
+            final Map<String, Object> state) {
+        String stepAction = (String) state
+                .get(ActionFlowInterceptor.PREVIOUS_FLOW_ACTION);
+        if (stepAction == null) {
+            stepAction = ActionFlowInterceptor.FIRST_FLOW_ACTION_NAME;
+        }
+        Object scope = state.get(ActionFlowInterceptor.FLOW_SCOPE_KEY);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Action flow of '" + packageName
+                    + "' package abandoned after '" + stepAction + "'.");
+        }
+
+        statistics.flowAbandoned(packageName, stepAction);
+
+        ActionFlowAbandonmentListener abandonmentListener = listener;
+        if (abandonmentListener != null) {
+            abandonmentListener.flowAbandoned(packageName, stepAction,
+                    scope instanceof Map ? (Map<String, Object>) scope : null);
+        }
+    }
+
+    /**
+     * Resolves abandonment listener as soon as its name and the container are
+     * injected, so that a wrong name fails on startup rather than on the
+     * expiry thread.
+     */
+    private void resolveListener() {
+        if (listenerName != null && container != null) {
+            ActionFlowAbandonmentListener bean = container.getInstance(
+                    ActionFlowAbandonmentListener.class, listenerName);
+            if (bean == null) {
+                throw new ConfigurationException("There is no '"
+                        + listenerName + "' action flow abandonment listener.");
+            }
+            listener = bean;
+        }
+    }
+
+    /**
+     * @param value
+     *            flow timeout in seconds, <code>0</code> disables expiry.
+     */
+    @Inject(value = ActionFlowConstants.FLOW_TIMEOUT, required = false)
+    public void setTimeout(String value) {
+        setTimeoutMillis(TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+    }
+
+    /**
+     * @param timeoutMillis
+     *            flow timeout in milliseconds.
+     */
+    void setTimeoutMillis(final long timeoutMillis) {
+        this.timeout = timeoutMillis;
+    }
+
+    /**
+     * @param listenerName
+     *            name of the abandonment listener bean.
+     */
+    @Inject(value = ActionFlowConstants.ABANDONMENT_LISTENER, required = false)
+    public void setListenerName(String listenerName) {
+        this.listenerName = listenerName;
+        resolveListener();
+    }
+
+    /**
+     * @param listener
+     *            the listener to set
+     */
+    void setListener(ActionFlowAbandonmentListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param container
+     *            the container to set
+     */
+    @Inject
+    public void setContainer(Container container) {
+        this.container = container;
+        resolveListener();
+        registerShutdownListener();
+    }
+
+    /**
+     * @param statistics
+     *            the statistics to set
+     */
+    @Inject
+    public void setStatistics(ActionFlowStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Stops the shared timer wheel when the dispatcher is destroyed.
+     */
+    private static final class ShutdownListener implements DispatcherListener {
+        /** {@inheritDoc} */
+        public void dispatcherInitialized(Dispatcher du) {
+        }
+
+        /** {@inheritDoc} */
+        public void dispatcherDestroyed(Dispatcher du) {
+            synchronized (this) {
+                Dispatcher.removeDispatcherListener(this);
+                shutdownListenerRegistered = false;
+            }
+            SHARED_WHEEL.stop();
+        }
+    }
+
+    /**
+     * Pending expiry of one execution.
+     */
+    private final class ExpiryTask implements Runnable {
+        private final ActionFlowExecutions executions;
+        private final String executionKey;
+        private final String packageName;
+        private final HttpSession httpSession;
+
+        /** Time the task is due, guarded by executions. */
+        private long due;
+
+        private ExpiryTask(final ActionFlowExecutions executions,
+                final String executionKey, final String packageName,
+                final HttpSession httpSession) {
+            this.executions = executions;
+            this.executionKey = executionKey;
+            this.packageName = packageName;
+            this.httpSession = httpSession;
+        }
+
+        /**
+         * Schedules this task.
+         * 
+         * @param now
+         *            current time.
+         * @param delay
+         *            delay in milliseconds.
+         */
+        private void schedule(final long now, final long delay) {
+            due = now + delay;
+            wheel.schedule(this, delay);
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            final long now = System.currentTimeMillis();
+            final long flowTimeout = timeout;
+            Map<String, Object> state;
+            synchronized (executions) {
+                // execution is gone or has a newer task
+                if (executions.getExpiryTask(executionKey) != this) {
+                    return;
+                }
+                long idle = now - executions.getLastAccess(executionKey);
+                if (flowTimeout <= 0) {
+                    executions.setExpiryTask(executionKey, null);
+                    return;
+                }
+                if (idle < flowTimeout) {
+                    schedule(now, flowTimeout - idle);
+                    return;
+                }
+                state = executions.remove(executionKey);
+            }
+            if (state != null) {
+                putExecutions();
+                abandoned(packageName, state);
+            }
+        }
+
+        /**
+         * Puts the executions container again into the session so replicated
+         * sessions see the change.
+         */
+        private void putExecutions() {
+            if (httpSession == null) {
+                return;
+            }
+            try {
+                if (httpSession
+                        .getAttribute(ActionFlowInterceptor.FLOW_EXECUTIONS_KEY) == executions) {
+                    httpSession.setAttribute(
+                            ActionFlowInterceptor.FLOW_EXECUTIONS_KEY,
+                            executions);
+                }
+            } catch (IllegalStateException e) {
+                // session is invalidated
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Session of expired action flow of '"
+                            + packageName + "' package is invalidated.");
+                }
+            }
+        }
+    }
+}
@@ -15,17 +15,38 @@
  */
 package com.amashchenko.struts2.actionflow;
 
-import java.beans.PropertyDescriptor;
-import java.lang.reflect.Method;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.amashchenko.struts2.actionflow.entities.ActionFlowStepConfig;
-import com.amashchenko.struts2.actionflow.entities.ActionFlowStepsData;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.apache.struts2.ServletActionContext;
+import org.apache.struts2.StrutsStatics;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowConfig;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowRoute;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeField;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeLayout;
 import com.opensymphony.xwork2.Action;
+import com.opensymphony.xwork2.ActionContext;
 import com.opensymphony.xwork2.ActionInvocation;
+import com.opensymphony.xwork2.ActionProxy;
+import com.opensymphony.xwork2.ActionProxyFactory;
+import com.opensymphony.xwork2.DefaultActionInvocation;
+import com.opensymphony.xwork2.Result;
+import com.opensymphony.xwork2.config.ConfigurationException;
+import com.opensymphony.xwork2.config.entities.ResultConfig;
+import com.opensymphony.xwork2.inject.Container;
 import com.opensymphony.xwork2.inject.Inject;
 import com.opensymphony.xwork2.interceptor.AbstractInterceptor;
 import com.opensymphony.xwork2.interceptor.PreResultListener;
@@ -64,6 +85,39 @@ import com.opensymphony.xwork2.util.logging.LoggerFactory;
  * <li>stepParameterName (optional) - Name of the form parameter holding
  * previous action value. The default is <code>step</code>.</li>
  * <p/>
+ * <li>flowExecutionKeys (optional) - Whether to keep independent flow
+ * executions identified by the <code>flowExecutionKey</code> request
+ * parameter, e.g. one per browser tab. The default is <code>false</code>.</li>
+ * <p/>
+ * <li>scopeSnapshots (optional) - Whether to keep a snapshot of the flow scope
+ * for each completed step and restore it when going back to the step, so the
+ * step sees the flow scope as it was when the step was completed. The default
+ * is <code>false</code>.</li>
+ * <p/>
+ * <li>viewResultMode (optional) - How the view of the next step is shown after
+ * successful flow action, <code>redirect</code> or <code>forward</code>. With
+ * <code>forward</code> the view action is executed in the same request by the
+ * <code>actionFlowForwardResult</code> global result and a repeated submission
+ * of the completed step shows the view again without executing the step. With
+ * <code>json</code> the successful and input results of the flow actions and
+ * the previous action are replaced by the <code>actionFlowJsonResult</code>
+ * global result writing JSON step navigation document, see
+ * {@link ActionFlowJsonResult}. The default is <code>redirect</code>.</li>
+ * <p/>
+ * <li>batchSubmission (optional) - Whether the 'next' action can submit several
+ * consecutive steps at once. Parameters of the steps are prefixed with the step
+ * action name and a colon, e.g. <code>savePhone:phone</code>. The steps are
+ * executed in order until the first one which does not complete, the session
+ * is written once after the last step and the result of the last executed step
+ * is the result of the request. The default is <code>false</code>.</li>
+ * <p/>
+ * <li>directDispatch (optional) - Whether the 'next' action executes the next
+ * step action directly, without the rest of its interceptor stack, the
+ * <code>chain</code> result and copying of its properties, and the 'previous'
+ * action returns its redirect result without the rest of its interceptor
+ * stack. Overridden 'next' and 'previous' actions are not executed then. The
+ * default is <code>false</code>.</li>
+ * <p/>
  * </ul>
  * <p/>
  * <p/>
@@ -108,6 +162,18 @@ import com.opensymphony.xwork2.util.logging.LoggerFactory;
  * <!-- END SNIPPET: example-form -->
  * </pre>
  * <p/>
+ * If the flow state is not kept in the session attributes (another
+ * {@link ActionFlowConstants#SCOPE_STORE}, <code>flowExecutionKeys</code> or
+ * {@link ActionFlowConstants#FLOW_TIMEOUT}) use
+ * <code>%{#actionFlowPreviousAction}</code> for the step value instead.
+ * <p/>
+ * With <code>flowExecutionKeys</code> enabled the form must also pass the
+ * execution key:
+ * 
+ * <pre>
+ * &lt;s:hidden name="flowExecutionKey" value="%{#actionFlowExecutionKey}" /&gt;
+ * </pre>
+ * <p/>
  * 
  * @author Aleksandr Mashchenko
  * 
@@ -121,13 +187,34 @@ public class ActionFlowInterceptor extends AbstractInterceptor {
     public static final Logger LOG = LoggerFactory
             .getLogger(ActionFlowInterceptor.class);
 
-    private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
+    /** SHA-1 digest of the submitted parameters, reused by each thread. */
+    private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>();
+
+    static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
 
     private static final String DEFAULT_NEXT_ACTION_NAME = "next";
     private static final String DEFAULT_PREV_ACTION_NAME = "prev";
 
     protected static final String FIRST_FLOW_ACTION_NAME = "firstFlowAction";
     protected static final String GLOBAL_VIEW_RESULT = "actionFlowViewResult";
+    protected static final String GLOBAL_FORWARD_RESULT = "actionFlowForwardResult";
+    protected static final String GLOBAL_JSON_RESULT = "actionFlowJsonResult";
+
+    /** Context key of the outcome written by the JSON result. */
+    static final String FLOW_JSON_OUTCOME = "actionFlowJsonOutcome";
+    /** Context key of the step fragment written by the JSON result. */
+    static final String FLOW_JSON_FRAGMENT = "actionFlowJsonFragment";
+    /** Context key of the action the flow redirect result redirects to. */
+    static final String FLOW_REDIRECT_ACTION = "actionFlowRedirectAction";
+    /** Outcome of the flow action executed in the wrong order. */
+    private static final String WRONG_ORDER_OUTCOME = "wrongOrder";
+
+    /** View result mode executing the view action in the same request. */
+    private static final String VIEW_RESULT_MODE_FORWARD = "forward";
+    /** View result mode redirecting to the view action. */
+    private static final String VIEW_RESULT_MODE_REDIRECT = "redirect";
+    /** View result mode writing JSON step navigation document. */
+    private static final String VIEW_RESULT_MODE_JSON = "json";
 
     private static final String DEFAULT_VIEW_ACTION_POSTFIX = "View";
     private static final String DEFAULT_VIEW_ACTION_METHOD = "execute";
@@ -137,13 +224,40 @@ public class ActionFlowInterceptor extends AbstractInterceptor {
     protected static final String PREV_ACTION_PARAM = "prevAction";
     protected static final String VIEW_ACTION_PARAM = "viewAction";
 
-    private static final String FLOW_SCOPE_KEY = "actionFlowScope";
-    private Map<String, List<PropertyDescriptor>> flowScopeFields;
+    static final String FLOW_SCOPE_KEY = "actionFlowScope";
+
+    /** Key of the last completed step submission. */
+    static final String LAST_SUBMISSION_KEY = "actionFlowLastSubmission";
+
+    /** Key of the flow scope snapshots by step index. */
+    static final String FLOW_SCOPE_SNAPSHOTS_KEY = "actionFlowScopeSnapshots";
+
+    /** Key of the flow executions container. */
+    static final String FLOW_EXECUTIONS_KEY = "actionFlowExecutions";
+    /** Context key of the current flow execution key. */
+    protected static final String FLOW_EXECUTION_KEY = "actionFlowExecutionKey";
+    /** Request parameter holding the flow execution key. */
+    protected static final String FLOW_EXECUTION_KEY_PARAM = "flowExecutionKey";
+
+    /** Execution key of the only flow execution when keys are disabled. */
+    private static final String DEFAULT_EXECUTION_KEY = "default";
+
+    private static final int DEFAULT_MAX_EXECUTIONS = 5;
+
+    /** Context entries of the request passed to directly executed steps. */
+    private static final String[] DISPATCH_CONTEXT_KEYS = {
+            ActionContext.APPLICATION, ActionContext.LOCALE,
+            StrutsStatics.HTTP_REQUEST, StrutsStatics.HTTP_RESPONSE,
+            StrutsStatics.SERVLET_CONTEXT, ServletActionContext.ACTION_MAPPING,
+            "request", "application", "attr", FLOW_EXECUTION_KEY };
 
-    /** Previous not special nor flow action. */
-    private String prevSimpleAction;
-    /** Action before first next. */
-    private String startAction;
+    /**
+     * Previous not special nor flow action. Only written until the start action
+     * is known.
+     */
+    private volatile String prevSimpleAction;
+    /** Action before first next, set once. */
+    private final AtomicReference<String> startAction = new AtomicReference<String>();
 
     // interceptor parameters
     private String nextActionName = DEFAULT_NEXT_ACTION_NAME;
@@ -152,110 +266,201 @@ public class ActionFlowInterceptor extends AbstractInterceptor {
     private String viewActionPostfix = DEFAULT_VIEW_ACTION_POSTFIX;
     private String viewActionMethod = DEFAULT_VIEW_ACTION_METHOD;
     private String stepParameterName = DEFAULT_STEP_PARAM_NAME;
+    private boolean flowExecutionKeys = false;
+    private boolean scopeSnapshots = false;
+    private boolean forwardViewResult = false;
+    private boolean jsonViewResult = false;
+    private boolean batchSubmission = false;
+    private boolean directDispatch = false;
+
+    /** Maximum number of flow executions per session. */
+    private int maxExecutions = DEFAULT_MAX_EXECUTIONS;
+
+    /** Name of the view action of the missing step. */
+    private String missingViewAction = null + DEFAULT_VIEW_ACTION_POSTFIX;
+
+    /** Listener executing global view result, shared by all requests. */
+    private final PreResultListener viewResultListener = new ViewResultListener();
+
+    /** Listener executing global JSON result, shared by all requests. */
+    private final PreResultListener jsonResultListener = new JsonResultListener();
+
+    /** Action flow registry. */
+    @Inject
+    private ActionFlowRegistry flowRegistry;
+
+    /** Action flow statistics. */
+    @Inject
+    private ActionFlowStatistics statistics = new ActionFlowStatistics();
 
-    /** Holds action flow. */
-    private Map<String, ActionFlowStepConfig> flowMap;
+    /** Store of the action flow state. */
+    private FlowScopeStore flowScopeStore = new SessionFlowScopeStore();
 
-    /** Holds action flow steps data. */
-    private ActionFlowStepsData flowStepsData;
+    /** Whether flow scope store keeps the state in the session. */
+    private boolean sessionStore = true;
 
-    /** Action flow configuration builder. */
+    /** Expiry of idle flows. */
     @Inject
-    private ActionFlowConfigBuilder flowConfigBuilder;
+    private ActionFlowExpiry flowExpiry = new ActionFlowExpiry();
+
+    /** Name of the flow scope store bean. */
+    private String flowScopeStoreName;
+
+    /** Container to look up flow scope store. */
+    private Container container;
+
+    /** Factory of the proxies of batch submitted steps. */
+    private ActionProxyFactory actionProxyFactory;
+
+    /** {@inheritDoc} */
+    @Override
+    public void init() {
+        if (container != null && flowScopeStoreName != null) {
+            FlowScopeStore store = container.getInstance(FlowScopeStore.class,
+                    flowScopeStoreName);
+            if (store == null) {
+                throw new ConfigurationException("There is no '"
+                        + flowScopeStoreName + "' flow scope store.");
+            }
+            flowScopeStore = store;
+        }
+        sessionStore = flowScopeStore instanceof SessionFlowScopeStore;
+    }
 
     /** {@inheritDoc} */
     @Override
     public String intercept(ActionInvocation invocation) throws Exception {
         String actionName = invocation.getInvocationContext().getName();
+        String packageName = invocation.getProxy().getConfig()
+                .getPackageName();
 
-        if (flowMap == null) {
-            String packageName = invocation.getProxy().getConfig()
-                    .getPackageName();
-            flowMap = flowConfigBuilder.createFlowMap(packageName,
-                    nextActionName, prevActionName, viewActionPostfix,
-                    viewActionMethod);
-
-            flowScopeFields = flowConfigBuilder
-                    .createFlowScopeFields(packageName);
-
-            // create action flow steps data
-            if (flowMap != null) {
-                TreeMap<Integer, String> m = new TreeMap<Integer, String>();
-                for (ActionFlowStepConfig cfg : flowMap.values()) {
-                    if (cfg.getIndex() < flowMap.size() - 1) {
-                        m.put(cfg.getIndex() + 1, cfg.getNextAction());
-                    }
-                }
-                flowStepsData = new ActionFlowStepsData(m);
-            }
-        }
+        // compiled once per package and shared, must not be modified
+        ActionFlowConfig flowConfig = getFlowConfig(packageName);
 
-        Integer stepCount = 1;
+        // single lookup for the role of the action
+        ActionFlowRoute route = flowConfig.getRoute(actionName);
+        ActionFlowRoute.Role role = route == null ? null : route.getRole();
+
+        int stepCount = 1;
 
         boolean flowAction = false;
         boolean lastFlowAction = false;
-        if (flowMap.containsKey(actionName)) {
+        if (role == ActionFlowRoute.Role.FLOW_STEP) {
             flowAction = true;
 
             // this is needed when input result is returned
-            stepCount = flowMap.get(actionName).getIndex();
+            stepCount = route.getStep();
 
-            if (flowMap.get(actionName).getNextAction() == null) {
+            if (flowConfig.getNextStep(route.getStep()) == -1) {
                 lastFlowAction = true;
             }
         }
 
         boolean flowViewAction = false;
-        if (actionName.endsWith(viewActionPostfix)) {
-            String plainAction = actionName.substring(0,
-                    actionName.indexOf(viewActionPostfix));
-            if (flowMap.containsKey(plainAction)) {
-                flowViewAction = true;
+        if (role == ActionFlowRoute.Role.FLOW_VIEW) {
+            flowViewAction = true;
 
-                stepCount = flowMap.get(plainAction).getIndex();
-            }
+            stepCount = route.getStep();
         }
 
         Map<String, Object> session = invocation.getInvocationContext()
                 .getSession();
 
+        String executionKey = null;
+        if (flowExecutionKeys) {
+            executionKey = executionKey(invocation, session, role != null);
+        } else if (flowExpiry.isEnabled()) {
+            // expiry needs the state in the executions container
+            executionKey = DEFAULT_EXECUTION_KEY;
+        }
+
         // start
-        if (startAction != null && startAction.equals(actionName)) {
-            session.put(PREVIOUS_FLOW_ACTION, null);
-            session.put(FLOW_SCOPE_KEY, null);
+        if (actionName.equals(startAction.get())) {
+            putState(session, executionKey, PREVIOUS_FLOW_ACTION, null);
+            putState(session, executionKey, FLOW_SCOPE_KEY, null);
+            if (forwardViewResult) {
+                putState(session, executionKey, LAST_SUBMISSION_KEY, null);
+            }
+            if (scopeSnapshots) {
+                putState(session, executionKey, FLOW_SCOPE_SNAPSHOTS_KEY, null);
+            }
+        }
+
+        // views can read the session directly only without executions
+        if ((executionKey != null || !sessionStore)
+                && (flowAction || flowViewAction)) {
+            invocation.getInvocationContext().put(PREVIOUS_FLOW_ACTION,
+                    getState(session, executionKey, PREVIOUS_FLOW_ACTION));
         }
 
         // action flow steps configuration aware
         if (invocation.getAction() instanceof ActionFlowStepsAware) {
-            flowStepsData.setStepIndex(stepCount);
-
             ((ActionFlowStepsAware) invocation.getAction())
-                    .setActionFlowSteps(flowStepsData);
+                    .setActionFlowSteps(flowConfig.getStepsData(stepCount));
         }
 
         // scope
-        if (flowViewAction) {
-            handleFlowScope(invocation.getAction(), session, true);
+        if (flowViewAction && invocation.getAction() != null) {
+            handleFlowScope(invocation.getAction(), session, executionKey,
+                    flowConfig.getScopeLayout(),
+                    flowConfig.getScopeFields(invocation.getAction()
+                            .getClass().getName()), true);
         }
 
         // not a flow nor next nor previous action, just invoke
-        if (!flowAction && !prevActionName.equals(actionName)
-                && !nextActionName.equals(actionName)) {
-            prevSimpleAction = actionName;
+        if (!flowAction && role != ActionFlowRoute.Role.PREV
+                && role != ActionFlowRoute.Role.NEXT) {
+            if (startAction.get() == null) {
+                prevSimpleAction = actionName;
+            }
             return invocation.invoke();
         }
 
-        String previousFlowAction = (String) session.get(PREVIOUS_FLOW_ACTION);
+        String previousFlowAction = (String) getState(session, executionKey,
+                PREVIOUS_FLOW_ACTION);
+
+        // request parameters before static parameters are merged into them,
+        // digested only to detect and record submissions of steps
+        Map<String, Object> submittedParameters = null;
+        if (forwardViewResult) {
+            submittedParameters = invocation.getInvocationContext()
+                    .getParameters();
+        }
+
+        // repeated submission of the completed step, e.g. page refresh
+        if (forwardViewResult
+                && previousFlowAction != null
+                && (role == ActionFlowRoute.Role.NEXT || actionName
+                        .equals(previousFlowAction))
+                && isRepeatedSubmission(previousFlowAction,
+                        submittedParameters, getState(session, executionKey,
+                                LAST_SUBMISSION_KEY))) {
+            int completedStep = flowConfig.getStepIndex(previousFlowAction);
+            if (completedStep != -1) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("The '" + previousFlowAction
+                            + "' step is submitted again, showing view of the next step.");
+                }
+                invocation
+                        .getInvocationContext()
+                        .getValueStack()
+                        .set(VIEW_ACTION_PARAM,
+                                viewAction(flowConfig,
+                                        flowConfig.getNextStep(completedStep)));
+                return GLOBAL_FORWARD_RESULT;
+            }
+        }
 
         if (previousFlowAction == null) {
             previousFlowAction = FIRST_FLOW_ACTION_NAME;
         }
+        int previousStep = flowConfig.getStepIndex(previousFlowAction);
 
         // handling of back/forward buttons
         Object[] stepParam = (Object[]) invocation.getInvocationContext()
                 .getParameters().get(stepParameterName);
         if (stepParam != null && stepParam.length > 0) {
-            String step = "" + stepParam[0];
+            String step = String.valueOf(stepParam[0]);
 
             if (step.isEmpty()) {
                 step = FIRST_FLOW_ACTION_NAME;
@@ -264,11 +469,9 @@ public class ActionFlowInterceptor extends AbstractInterceptor {
             if (step != null && !step.equals(previousFlowAction)) {
                 // check indexes, step parameter action flow index cannot be
                 // greater than previousFlowAction index
-                if (flowMap.containsKey(previousFlowAction)
-                        && flowMap.containsKey(step)) {
-                    int indexPrev = flowMap.get(previousFlowAction).getIndex();
-                    int indexStep = flowMap.get(step).getIndex();
-                    if (indexStep < indexPrev) {
+                int indexStep = flowConfig.getStepIndex(step);
+                if (previousStep != -1 && indexStep != -1) {
+                    if (indexStep < previousStep) {
                         if (LOG.isDebugEnabled()) {
                             LOG.debug("The 'previousFlowAction' value from session is '"
                                     + previousFlowAction
@@ -282,17 +485,27 @@ public class ActionFlowInterceptor extends AbstractInterceptor {
                         }
 
                         previousFlowAction = step;
+                        previousStep = indexStep;
+
+                        if (scopeSnapshots) {
+                            restoreSnapshot(session, executionKey, indexStep);
+                        }
                     }
                 }
             }
         }
 
+        int nextStep = -1;
         String nextAction = null;
         String prevAction = null;
 
-        if (flowMap.containsKey(previousFlowAction)) {
-            nextAction = flowMap.get(previousFlowAction).getNextAction();
-            prevAction = flowMap.get(previousFlowAction).getPrevAction();
+        if (previousStep != -1) {
+            nextStep = flowConfig.getNextStep(previousStep);
+            if (nextStep != -1) {
+                nextAction = flowConfig.getStepAction(nextStep);
+            }
+            prevAction = flowConfig.getStepAction(flowConfig
+                    .getPrevStep(previousStep));
         }
 
         if (LOG.isDebugEnabled()) {
@@ -302,78 +515,601 @@ public class ActionFlowInterceptor extends AbstractInterceptor {
         }
 
         // force order of flow actions
-        if (forceFlowStepsOrder && flowAction && !actionName.equals(nextAction)) {
+        if (forceFlowStepsOrder && flowAction && route.getStep() != nextStep) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("The forceFlowStepsOrder parameter is set to true. The '"
                         + actionName
                         + "' will not be executed because it is executed in the wrong order.");
             }
 
-            invocation.getInvocationContext().getValueStack()
-                    .set(VIEW_ACTION_PARAM, nextAction + viewActionPostfix);
+            if (jsonViewResult) {
+                return jsonResult(invocation, flowConfig, WRONG_ORDER_OUTCOME,
+                        nextStep);
+            }
+            setRedirectAction(invocation, GLOBAL_VIEW_RESULT,
+                    VIEW_ACTION_PARAM, viewAction(flowConfig, nextStep));
             return GLOBAL_VIEW_RESULT;
         }
 
-        if (nextActionName.equals(actionName)) {
+        if (role == ActionFlowRoute.Role.NEXT) {
             // set start action
-            if (startAction == null) {
-                startAction = prevSimpleAction;
+            if (startAction.get() == null) {
+                startAction.compareAndSet(null, prevSimpleAction);
             }
 
             invocation.getInvocationContext().getValueStack()
                     .set(NEXT_ACTION_PARAM, nextAction);
-        } else if (prevActionName.equals(actionName)) {
-            if (FIRST_FLOW_ACTION_NAME.equals(previousFlowAction)) {
-                invocation.getInvocationContext().getValueStack()
-                        .set(PREV_ACTION_PARAM, nextAction + viewActionPostfix);
-            } else {
-                invocation
-                        .getInvocationContext()
-                        .getValueStack()
-                        .set(PREV_ACTION_PARAM,
-                                previousFlowAction + viewActionPostfix);
-            }
-            session.put(PREVIOUS_FLOW_ACTION, prevAction);
-        }
-
-        // execute global view result on not last flow action
-        if (flowAction && nextAction.equals(actionName) && !lastFlowAction) {
-            final String nextAct = flowMap.get(actionName).getNextAction();
-            invocation.addPreResultListener(new PreResultListener() {
-                public void beforeResult(ActionInvocation invocation,
-                        String resultCode) {
-                    if (Action.SUCCESS.equals(resultCode)) {
-                        invocation
-                                .getInvocationContext()
-                                .getValueStack()
-                                .set(VIEW_ACTION_PARAM,
-                                        nextAct + viewActionPostfix);
-                        invocation.setResultCode(GLOBAL_VIEW_RESULT);
-                    }
+
+            // several steps in one request
+            if (batchSubmission && nextAction != null) {
+                Map<String, Map<String, Object>> stepParams = batchParameters(
+                        invocation, flowConfig);
+                if (stepParams.containsKey(nextAction)) {
+                    return executeBatch(invocation, flowConfig, session,
+                            executionKey, nextStep, stepParams);
+                }
+            }
+
+            // step action without the rest of the stack and the chain
+            if (directDispatch && nextAction != null) {
+                return dispatch(invocation, nextAction);
+            }
+        } else if (role == ActionFlowRoute.Role.PREV) {
+            if (previousStep == 0) {
+                setRedirectAction(invocation, Action.SUCCESS,
+                        PREV_ACTION_PARAM, viewAction(flowConfig, nextStep));
+            } else if (previousStep != -1) {
+                setRedirectAction(invocation, Action.SUCCESS,
+                        PREV_ACTION_PARAM,
+                        flowConfig.getViewAction(previousStep));
+                if (scopeSnapshots) {
+                    restoreSnapshot(session, executionKey, previousStep);
                 }
-            });
+            } else {
+                setRedirectAction(invocation, Action.SUCCESS,
+                        PREV_ACTION_PARAM, previousFlowAction
+                                + viewActionPostfix);
+            }
+            putState(session, executionKey, PREVIOUS_FLOW_ACTION, prevAction);
+
+            // step to show instead of redirect of the previous action
+            if (jsonViewResult && previousStep != -1) {
+                return jsonResult(invocation, flowConfig, Action.SUCCESS,
+                        previousStep == 0 ? nextStep : previousStep);
+            }
+
+            // redirect without the rest of the stack
+            if (directDispatch) {
+                touchExecution(session, executionKey, packageName);
+                return Action.SUCCESS;
+            }
+        }
+
+        // execute global view result on not last flow action, JSON result
+        // also replaces results of the last action and input results
+        ForwardResultListener forwardListener = null;
+        if (flowAction && route.getStep() == nextStep) {
+            if (jsonViewResult) {
+                invocation.addPreResultListener(jsonResultListener);
+            } else if (!lastFlowAction && forwardViewResult) {
+                // view is executed in this request, it must see the new state
+                forwardListener = new ForwardResultListener(flowConfig, route,
+                        session, executionKey, submittedParameters);
+                invocation.addPreResultListener(forwardListener);
+            } else if (!lastFlowAction) {
+                invocation.addPreResultListener(viewResultListener);
+            }
         }
 
         String result = invocation.invoke();
 
+        // step is completed before the result when forwarding
+        boolean completed = forwardListener != null
+                && forwardListener.completed;
+
+        // result code of the flow action behind the JSON result
+        String jsonOutcome = null;
+        if (GLOBAL_JSON_RESULT.equals(result)) {
+            jsonOutcome = (String) invocation.getInvocationContext().get(
+                    FLOW_JSON_OUTCOME);
+        }
+
         // scope
-        if (flowAction) {
-            handleFlowScope(invocation.getAction(), session, false);
+        if (flowAction && !completed && invocation.getAction() != null) {
+            handleFlowScope(invocation.getAction(), session, executionKey,
+                    flowConfig.getScopeLayout(),
+                    flowConfig.getScopeFields(invocation.getAction()
+                            .getClass().getName()), false, route.getStep());
         }
 
-        if (GLOBAL_VIEW_RESULT.equals(result) && flowAction) {
-            session.put(PREVIOUS_FLOW_ACTION, actionName);
+        if ((GLOBAL_VIEW_RESULT.equals(result) || (Action.SUCCESS
+                .equals(jsonOutcome) && !lastFlowAction))
+                && flowAction && !completed) {
+            completeStep(flowConfig, route, session, executionKey,
+                    submittedParameters);
         }
 
         // last flow action
-        if (Action.SUCCESS.equals(result) && flowAction && lastFlowAction) {
-            session.put(PREVIOUS_FLOW_ACTION, null);
-            session.put(FLOW_SCOPE_KEY, null);
+        if ((Action.SUCCESS.equals(result) || Action.SUCCESS
+                .equals(jsonOutcome)) && flowAction && lastFlowAction) {
+            putState(session, executionKey, PREVIOUS_FLOW_ACTION, null);
+            putState(session, executionKey, FLOW_SCOPE_KEY, null);
+            if (forwardViewResult) {
+                putState(session, executionKey, LAST_SUBMISSION_KEY, null);
+            }
+            if (scopeSnapshots) {
+                putState(session, executionKey, FLOW_SCOPE_SNAPSHOTS_KEY, null);
+            }
+        } else {
+            touchExecution(session, executionKey, packageName);
         }
 
         return result;
     }
 
+    /**
+     * Postpones expiry of the flow execution.
+     * 
+     * @param session
+     *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param packageName
+     *            name of the package of the flow.
+     */
+    private void touchExecution(final Map<String, Object> session,
+            final String executionKey, final String packageName) {
+        if (executionKey != null && flowExpiry.isEnabled()) {
+            ActionFlowExecutions executions = getExecutions(session, false);
+            if (executions != null) {
+                HttpServletRequest request = ServletActionContext.getRequest();
+                flowExpiry.touch(executions, executionKey, packageName,
+                        request == null ? null : request.getSession(false));
+            }
+        }
+    }
+
+    /**
+     * Makes the flow action the previous flow action after it completed
+     * successfully.
+     * 
+     * @param flowConfig
+     *            action flow configuration.
+     * @param route
+     *            route of the flow action.
+     * @param session
+     *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param submittedParameters
+     *            request parameters to record the submission of the step or
+     *            <code>null</code>.
+     */
+    private void completeStep(final ActionFlowConfig flowConfig,
+            final ActionFlowRoute route, final Map<String, Object> session,
+            final String executionKey,
+            final Map<String, Object> submittedParameters) {
+        String actionName = flowConfig.getStepAction(route.getStep());
+        putState(session, executionKey, PREVIOUS_FLOW_ACTION, actionName);
+        if (scopeSnapshots) {
+            takeSnapshot(session, executionKey, flowConfig.getStepCount(),
+                    route.getStep());
+        }
+        if (submittedParameters != null) {
+            putState(session, executionKey, LAST_SUBMISSION_KEY, actionName
+                    + ":" + parametersDigest(submittedParameters));
+        }
+    }
+
+    /**
+     * Checks whether the request submits the completed step again. The
+     * parameters are digested only if the last submission is of that step.
+     * 
+     * @param previousFlowAction
+     *            completed step action.
+     * @param submittedParameters
+     *            request parameters.
+     * @param lastSubmission
+     *            last recorded submission or <code>null</code>.
+     * @return <code>true</code> if the same parameters were submitted to the
+     *         completed step.
+     */
+    private boolean isRepeatedSubmission(final String previousFlowAction,
+            final Map<String, Object> submittedParameters,
+            final Object lastSubmission) {
+        if (!(lastSubmission instanceof String)) {
+            return false;
+        }
+        String submission = (String) lastSubmission;
+        int length = previousFlowAction.length();
+        return submission.length() > length
+                && submission.startsWith(previousFlowAction)
+                && submission.charAt(length) == ':'
+                && submission.substring(length + 1).equals(
+                        parametersDigest(submittedParameters));
+    }
+
+    /**
+     * Creates digest of the request parameters identifying submission of a
+     * form. SHA-1 of the parameters sorted by name, so that different
+     * submissions do not collide.
+     * 
+     * @param params
+     *            request parameters.
+     * @return digest of the parameters.
+     */
+    private String parametersDigest(final Map<String, Object> params) {
+        MessageDigest digest = SHA1.get();
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            SHA1.set(digest);
+        } else {
+            digest.reset();
+        }
+        if (params != null) {
+            // independent of the map order
+            for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(
+                    params).entrySet()) {
+                updateDigest(digest, entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof Object[]) {
+                    Object[] values = (Object[]) value;
+                    updateDigest(digest, values.length);
+                    for (Object v : values) {
+                        updateDigest(digest, String.valueOf(v));
+                    }
+                } else {
+                    updateDigest(digest, 1);
+                    updateDigest(digest, String.valueOf(value));
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Updates digest with the length and the characters of the string, so
+     * that concatenated strings cannot collide.
+     * 
+     * @param digest
+     *            message digest.
+     * @param str
+     *            string.
+     */
+    private static void updateDigest(final MessageDigest digest,
+            final String str) {
+        int length = str.length();
+        updateDigest(digest, length);
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            digest.update((byte) (c >>> 8));
+            digest.update((byte) c);
+        }
+    }
+
+    /**
+     * Updates digest with the number.
+     * 
+     * @param digest
+     *            message digest.
+     * @param number
+     *            number, e.g. length or count.
+     */
+    private static void updateDigest(final MessageDigest digest,
+            final int number) {
+        digest.update((byte) (number >>> 24));
+        digest.update((byte) (number >>> 16));
+        digest.update((byte) (number >>> 8));
+        digest.update((byte) number);
+    }
+
+    /**
+     * Groups parameters of batch submitted steps by step action name. Names
+     * of the parameters are prefixed with the step action name and a colon.
+     * 
+     * @param invocation
+     *            action invocation.
+     * @param flowConfig
+     *            action flow configuration.
+     * @return parameters without prefix by step action name, parameters of
+     *         the request without step prefix under <code>null</code> key.
+     */
+    private Map<String, Map<String, Object>> batchParameters(
+            final ActionInvocation invocation, final ActionFlowConfig flowConfig) {
+        Map<String, Map<String, Object>> stepParams = new HashMap<String, Map<String, Object>>();
+        Map<String, Object> common = new HashMap<String, Object>();
+        stepParams.put(null, common);
+        Map<String, Object> params = invocation.getInvocationContext()
+                .getParameters();
+        if (params != null) {
+            for (Map.Entry<String, Object> entry : params.entrySet()) {
+                String name = entry.getKey();
+                int colon = name.indexOf(':');
+                String stepAction = colon > 0 ? name.substring(0, colon)
+                        : null;
+                ActionFlowRoute route = stepAction == null ? null
+                        : flowConfig.getRoute(stepAction);
+                if (route == null
+                        || route.getRole() != ActionFlowRoute.Role.FLOW_STEP) {
+                    common.put(name, entry.getValue());
+                    continue;
+                }
+                Map<String, Object> values = stepParams.get(stepAction);
+                if (values == null) {
+                    values = new HashMap<String, Object>();
+                    stepParams.put(stepAction, values);
+                }
+                values.put(name.substring(colon + 1), entry.getValue());
+            }
+        }
+        return stepParams;
+    }
+
+    /**
+     * Executes batch submitted steps starting from the next step. Each step is
+     * executed by its own action proxy, so it is validated and checked by this
+     * interceptor as if it was submitted alone. Execution stops at the first
+     * step which does not complete. Session writes of all steps are collected
+     * and written once at the end.
+     * 
+     * @param invocation
+     *            action invocation of the 'next' action.
+     * @param flowConfig
+     *            action flow configuration.
+     * @param session
+     *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param nextStep
+     *            index of the next step.
+     * @param stepParams
+     *            parameters by step action name.
+     * @return {@link Action#NONE}, the result of the last executed step is
+     *         already executed.
+     * @throws Exception
+     *             when step action or its result fails.
+     */
+    private String executeBatch(final ActionInvocation invocation,
+            final ActionFlowConfig flowConfig,
+            final Map<String, Object> session, final String executionKey,
+            final int nextStep,
+            final Map<String, Map<String, Object>> stepParams)
+            throws Exception {
+        ActionContext context = invocation.getInvocationContext();
+
+        // the step parameter is only for the first step
+        Map<String, Object> common = new HashMap<String, Object>(
+                stepParams.get(null));
+        common.remove(stepParameterName);
+
+        // session writes of all steps are flushed at the end
+        BatchSession batchSession = session == null ? null
+                : new BatchSession(session);
+
+        ActionProxy proxy = null;
+        int step = nextStep;
+        while (step != -1) {
+            String stepAction = flowConfig.getStepAction(step);
+            Map<String, Object> params = new HashMap<String, Object>(
+                    proxy == null ? stepParams.get(null) : common);
+            params.putAll(stepParams.get(stepAction));
+
+            proxy = actionProxyFactory.createActionProxy(invocation
+                    .getProxy().getNamespace(), stepAction, null,
+                    createExtraContext(context, params, batchSession), false,
+                    true);
+            String resultCode = proxy.execute();
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Batch submitted '" + stepAction
+                        + "' step returned '" + resultCode + "'.");
+            }
+
+            // stop at the first not completed step
+            if (!stepAction.equals(getState(batchSession, executionKey,
+                    PREVIOUS_FLOW_ACTION))) {
+                break;
+            }
+            step = flowConfig.getNextStep(step);
+            if (step == -1
+                    || !stepParams.containsKey(flowConfig.getStepAction(step))) {
+                break;
+            }
+        }
+
+        if (batchSession != null) {
+            batchSession.flush();
+        }
+
+        // result of the last executed step
+        ActionInvocation last = proxy.getInvocation();
+        if (last instanceof DefaultActionInvocation) {
+            Result result = ((DefaultActionInvocation) last).createResult();
+            if (result != null) {
+                ActionContext.setContext(last.getInvocationContext());
+                Object stack = exposeValueStack(context, last.getStack());
+                try {
+                    result.execute(last);
+                } finally {
+                    exposeValueStack(context, stack);
+                    ActionContext.setContext(context);
+                }
+            }
+            return Action.NONE;
+        }
+        return last.getResultCode();
+    }
+
+    /**
+     * Sets the action to redirect to. The {@link ActionFlowRedirectResult}
+     * takes it from the action context, other results evaluate it from the
+     * value stack.
+     * 
+     * @param invocation
+     *            action invocation.
+     * @param resultCode
+     *            code of the redirect result.
+     * @param param
+     *            name of the value stack parameter of the action.
+     * @param action
+     *            name of the action to redirect to.
+     */
+    private void setRedirectAction(final ActionInvocation invocation,
+            final String resultCode, final String param, final String action) {
+        ResultConfig resultConfig = invocation.getProxy().getConfig()
+                .getResults().get(resultCode);
+        if (resultConfig != null
+                && ActionFlowRedirectResult.class.getName().equals(
+                        resultConfig.getClassName())) {
+            invocation.getInvocationContext().put(FLOW_REDIRECT_ACTION, action);
+        } else {
+            invocation.getInvocationContext().getValueStack().set(param, action);
+        }
+    }
+
+    /**
+     * Executes the step action directly instead of the chain result of the
+     * 'next' action. The step action gets the parameters and the session of
+     * the request, but not the value stack of the 'next' action.
+     * 
+     * @param invocation
+     *            action invocation of the 'next' action.
+     * @param stepAction
+     *            name of the step action.
+     * @return {@link Action#NONE}, the step action and its result are already
+     *         executed.
+     * @throws Exception
+     *             when step action or its result fails.
+     */
+    private String dispatch(final ActionInvocation invocation,
+            final String stepAction) throws Exception {
+        ActionContext context = invocation.getInvocationContext();
+        ActionProxy proxy = actionProxyFactory.createActionProxy(invocation
+                .getProxy().getNamespace(), stepAction, null,
+                createExtraContext(context, context.getParameters(),
+                        context.getSession()), true, true);
+
+        Object stack = exposeValueStack(context, proxy.getInvocation()
+                .getStack());
+        try {
+            proxy.execute();
+        } finally {
+            exposeValueStack(context, stack);
+        }
+        return Action.NONE;
+    }
+
+    /**
+     * Creates context of directly executed step action.
+     * 
+     * @param context
+     *            context of the current action.
+     * @param params
+     *            parameters of the step action.
+     * @param session
+     *            session of the step action.
+     * @return extra context for the action proxy.
+     */
+    private Map<String, Object> createExtraContext(
+            final ActionContext context, final Map<String, Object> params,
+            final Map<String, Object> session) {
+        Map<String, Object> extraContext = new HashMap<String, Object>();
+        for (String key : DISPATCH_CONTEXT_KEYS) {
+            if (context.get(key) != null) {
+                extraContext.put(key, context.get(key));
+            }
+        }
+        extraContext.put(ActionContext.PARAMETERS, params);
+        extraContext.put("parameters", params);
+        extraContext.put(ActionContext.SESSION, session);
+        extraContext.put("session", session);
+        return extraContext;
+    }
+
+    /**
+     * Makes the value stack the one used by tags in views.
+     * 
+     * @param context
+     *            context of the current action.
+     * @param stack
+     *            value stack to expose.
+     * @return previously exposed value stack.
+     */
+    private Object exposeValueStack(final ActionContext context,
+            final Object stack) {
+        HttpServletRequest request = (HttpServletRequest) context
+                .get(StrutsStatics.HTTP_REQUEST);
+        if (request == null) {
+            return null;
+        }
+        Object previous = request
+                .getAttribute(ServletActionContext.STRUTS_VALUESTACK_KEY);
+        request.setAttribute(ServletActionContext.STRUTS_VALUESTACK_KEY, stack);
+        return previous;
+    }
+
+    /**
+     * Prepares global JSON result.
+     * 
+     * @param invocation
+     *            action invocation.
+     * @param flowConfig
+     *            action flow configuration.
+     * @param outcome
+     *            outcome to write.
+     * @param step
+     *            index of the step to show or <code>-1</code> if the flow is
+     *            finished.
+     * @return global JSON result code.
+     */
+    private String jsonResult(final ActionInvocation invocation,
+            final ActionFlowConfig flowConfig, final String outcome,
+            final int step) {
+        invocation.getInvocationContext().put(FLOW_JSON_OUTCOME, outcome);
+        invocation.getInvocationContext().put(FLOW_JSON_FRAGMENT,
+                flowConfig.getJsonFragments().getFragment(step));
+        return GLOBAL_JSON_RESULT;
+    }
+
+    /**
+     * Gets name of the view action of the step.
+     * 
+     * @param flowConfig
+     *            action flow configuration.
+     * @param step
+     *            step index or <code>-1</code> if there is no such step.
+     * @return name of the view action.
+     */
+    private String viewAction(final ActionFlowConfig flowConfig, final int step) {
+        if (step == -1) {
+            return missingViewAction;
+        }
+        return flowConfig.getViewAction(step);
+    }
+
+    /**
+     * Gets compiled action flow configuration of given package using
+     * parameters of this interceptor.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @return Compiled action flow configuration.
+     */
+    protected ActionFlowConfig getFlowConfig(final String packageName) {
+        return flowRegistry.getFlowConfig(packageName, nextActionName,
+                prevActionName, viewActionPostfix, viewActionMethod);
+    }
+
     /**
      * Handles action flow scope fields.
      * 
@@ -381,57 +1117,693 @@ public class ActionFlowInterceptor extends AbstractInterceptor {
      *            action object.
      * @param session
      *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param scopeLayout
+     *            slots of the action flow scope fields.
+     * @param scopeFields
+     *            action flow scope fields of the action class.
      * @param fromFlowScope
      *            whether to store value into the session or retrieve it.
      */
+    void handleFlowScope(final Object action,
+            final Map<String, Object> session, final String executionKey,
+            final ActionFlowScopeLayout scopeLayout,
+            final ActionFlowScopeField[] scopeFields,
+            final boolean fromFlowScope) {
+        handleFlowScope(action, session, executionKey, scopeLayout,
+                scopeFields, fromFlowScope, -1);
+    }
+
+    /**
+     * Handles action flow scope fields of the step.
+     * 
+     * @param action
+     *            action object.
+     * @param session
+     *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param scopeLayout
+     *            slots of the action flow scope fields.
+     * @param scopeFields
+     *            action flow scope fields of the action class.
+     * @param fromFlowScope
+     *            whether to store value into the session or retrieve it.
+     * @param step
+     *            index of the step storing the fields or <code>-1</code>.
+     */
     @SuppressWarnings("unchecked")
-    private void handleFlowScope(final Object action,
-            final Map<String, Object> session, final boolean fromFlowScope) {
-        if (action != null && flowScopeFields != null && session != null) {
-            String actionClassName = action.getClass().getName();
+    void handleFlowScope(final Object action,
+            final Map<String, Object> session, final String executionKey,
+            final ActionFlowScopeLayout scopeLayout,
+            final ActionFlowScopeField[] scopeFields,
+            final boolean fromFlowScope, final int step) {
+        if (action != null && scopeFields != null && session != null) {
+            ActionFlowScopeMap scopeMap = null;
+            Object scope = getState(session, executionKey, FLOW_SCOPE_KEY);
+            if (scope instanceof ActionFlowScopeMap) {
+                scopeMap = (ActionFlowScopeMap) scope;
+            } else if (scope instanceof Map) {
+                // written by an older version
+                scopeMap = new ActionFlowScopeMap((Map<String, Object>) scope);
+            }
 
-            Map<String, Object> scopeMap = null;
-            if (session.containsKey(FLOW_SCOPE_KEY)
-                    && session.get(FLOW_SCOPE_KEY) instanceof Map) {
-                scopeMap = (Map<String, Object>) session.get(FLOW_SCOPE_KEY);
+            // nothing to retrieve
+            if (fromFlowScope && scopeMap == null) {
+                return;
             }
+
+            // create scope on first write only
             if (scopeMap == null) {
-                scopeMap = new HashMap<String, Object>();
-            }
-
-            if (flowScopeFields.containsKey(actionClassName)
-                    && flowScopeFields.get(actionClassName) != null) {
-                for (PropertyDescriptor pd : flowScopeFields
-                        .get(actionClassName)) {
-                    try {
-                        Method getter = pd.getReadMethod();
-                        if (getter != null) {
-                            Object val = getter.invoke(action);
-                            String scopeFieldKey = actionClassName + "."
-                                    + pd.getName();
-
-                            if (fromFlowScope) {
-                                if (val == null
-                                        && scopeMap.containsKey(scopeFieldKey)) {
-                                    Method setter = pd.getWriteMethod();
-                                    if (setter != null) {
-                                        setter.invoke(action,
-                                                scopeMap.get(scopeFieldKey));
-                                    }
-                                }
-                            } else {
-                                if (val != null) {
-                                    scopeMap.put(scopeFieldKey, val);
-                                    session.put(FLOW_SCOPE_KEY, scopeMap);
-                                }
-                            }
+                scopeMap = new ActionFlowScopeMap(scopeLayout);
+            } else if (scopeLayout != null) {
+                scopeMap.bind(scopeLayout);
+            }
+
+            // changed slots, only needed for derived fields
+            boolean[] changedSlots = null;
+            if (!fromFlowScope && scopeLayout != null
+                    && scopeLayout.hasDependents()) {
+                changedSlots = new boolean[scopeLayout.getSlotCount()];
+            }
+
+            int changed = 0;
+            int unchanged = 0;
+            for (ActionFlowScopeField field : scopeFields) {
+                try {
+                    if (fromFlowScope) {
+                        scopeMap.restore(field, action);
+                    } else {
+                        int stored = scopeMap.store(field, action);
+                        if (stored == ActionFlowScopeMap.STORED) {
+                            changed++;
+                        } else if (stored == ActionFlowScopeMap.UNCHANGED) {
+                            unchanged++;
                         }
-                    } catch (Exception e) {
-                        LOG.warn("In handleFlowScope", e);
+                        if (changedSlots != null
+                                && stored == ActionFlowScopeMap.STORED
+                                && scopeLayout.contains(field)) {
+                            changedSlots[field.getSlot()] = true;
+                        }
+                    }
+                } catch (Exception e) {
+                    LOG.warn("In handleFlowScope", e);
+                }
+            }
+
+            if (changedSlots != null && changed > 0) {
+                int invalidated = invalidateDependents(scopeMap, scopeLayout,
+                        changedSlots, step);
+                if (invalidated > 0) {
+                    changed += invalidated;
+                    statistics.fieldsInvalidated(invalidated);
+                }
+            }
+
+            if (!fromFlowScope) {
+                // single store write and only if something has changed
+                if (changed > 0) {
+                    putState(session, executionKey, FLOW_SCOPE_KEY, scopeMap);
+                }
+                statistics.scopeStored(changed, unchanged);
+            }
+        }
+    }
+
+    /**
+     * Removes fields derived from the changed fields from the flow scope.
+     * Fields changed by the current request or declared as written by the
+     * current step are kept, they are derived from the new values already.
+     * 
+     * @param scopeMap
+     *            flow scope.
+     * @param scopeLayout
+     *            slots of the action flow scope fields.
+     * @param changedSlots
+     *            fields changed by the current request by slot.
+     * @param step
+     *            index of the current step or <code>-1</code>.
+     * @return number of removed fields.
+     */
+    private int invalidateDependents(final ActionFlowScopeMap scopeMap,
+            final ActionFlowScopeLayout scopeLayout,
+            final boolean[] changedSlots, final int step) {
+        int invalidated = 0;
+        for (int slot = 0; slot < changedSlots.length; slot++) {
+            if (!changedSlots[slot]) {
+                continue;
+            }
+            for (int dependent : scopeLayout.getDependents(slot)) {
+                if (changedSlots[dependent]
+                        || scopeLayout.isWrittenBy(step, dependent)) {
+                    continue;
+                }
+                String key = scopeLayout.getField(dependent).getScopeKey();
+                if (scopeMap.containsKey(key)) {
+                    scopeMap.remove(key);
+                    invalidated++;
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Removed derived flow scope field " + key
+                                + ".");
                     }
                 }
             }
         }
+        return invalidated;
+    }
+
+    /**
+     * Keeps snapshot of the flow scope as of the completed step. Unchanged
+     * values are shared with the snapshot of the closest earlier step.
+     * 
+     * @param session
+     *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param stepCount
+     *            number of steps including <code>firstFlowAction</code>.
+     * @param step
+     *            index of the completed step.
+     */
+    @SuppressWarnings("unchecked")
+    private void takeSnapshot(final Map<String, Object> session,
+            final String executionKey, final int stepCount, final int step) {
+        Object state = getState(session, executionKey,
+                FLOW_SCOPE_SNAPSHOTS_KEY);
+        ActionFlowScopeSnapshot[] snapshots;
+        if (state instanceof ActionFlowScopeSnapshot[]
+                && ((ActionFlowScopeSnapshot[]) state).length == stepCount) {
+            // copy on write, the array may be shared with a replicated session
+            snapshots = ((ActionFlowScopeSnapshot[]) state).clone();
+        } else {
+            snapshots = new ActionFlowScopeSnapshot[stepCount];
+        }
+
+        ActionFlowScopeSnapshot parent = null;
+        for (int i = step - 1; i >= 0 && parent == null; i--) {
+            parent = snapshots[i];
+        }
+
+        Object scope = getState(session, executionKey, FLOW_SCOPE_KEY);
+        snapshots[step] = ActionFlowScopeSnapshot.of(parent,
+                scope instanceof Map ? (Map<String, Object>) scope : null);
+        putState(session, executionKey, FLOW_SCOPE_SNAPSHOTS_KEY, snapshots);
+    }
+
+    /**
+     * Makes a copy of the snapshot of the step current flow scope, if there
+     * is one.
+     * 
+     * @param session
+     *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param step
+     *            index of the step.
+     */
+    private void restoreSnapshot(final Map<String, Object> session,
+            final String executionKey, final int step) {
+        Object state = getState(session, executionKey,
+                FLOW_SCOPE_SNAPSHOTS_KEY);
+        if (state instanceof ActionFlowScopeSnapshot[]) {
+            ActionFlowScopeSnapshot[] snapshots = (ActionFlowScopeSnapshot[]) state;
+            if (step < snapshots.length && snapshots[step] != null) {
+                putState(session, executionKey, FLOW_SCOPE_KEY,
+                        snapshots[step].restore());
+            }
+        }
+    }
+
+    /**
+     * Gets flow execution key of the request. Unknown or evicted keys are
+     * replaced by a new one, so the execution starts from the beginning.
+     * 
+     * @param invocation
+     *            action invocation.
+     * @param session
+     *            session map.
+     * @param create
+     *            whether to create new key if there is none.
+     * @return flow execution key or <code>null</code>.
+     */
+    private String executionKey(final ActionInvocation invocation,
+            final Map<String, Object> session, final boolean create) {
+        // already known in chained actions
+        String key = (String) invocation.getInvocationContext().get(
+                FLOW_EXECUTION_KEY);
+        if (key == null) {
+            Object[] param = (Object[]) invocation.getInvocationContext()
+                    .getParameters().get(FLOW_EXECUTION_KEY_PARAM);
+            if (param != null && param.length > 0 && param[0] != null) {
+                key = String.valueOf(param[0]);
+                ActionFlowExecutions executions = getExecutions(session,
+                        false);
+                if (executions == null || !executions.contains(key)) {
+                    key = null;
+                }
+            }
+            if (key == null && create) {
+                key = ActionFlowExecutions.createKey();
+            }
+            if (key != null) {
+                invocation.getInvocationContext().put(FLOW_EXECUTION_KEY, key);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Gets flow executions container of the session.
+     * 
+     * @param session
+     *            session map.
+     * @param create
+     *            whether to create container if there is none.
+     * @return flow executions or <code>null</code>.
+     */
+    private ActionFlowExecutions getExecutions(
+            final Map<String, Object> session, final boolean create) {
+        Object executions = flowScopeStore.get(session, FLOW_EXECUTIONS_KEY);
+        if (executions instanceof ActionFlowExecutions) {
+            return (ActionFlowExecutions) executions;
+        }
+        if (!create) {
+            return null;
+        }
+        // requests of different tabs can arrive at the same time and can be
+        // handled by different interceptor instances
+        synchronized (sessionMutex(session)) {
+            executions = flowScopeStore.get(session, FLOW_EXECUTIONS_KEY);
+            if (!(executions instanceof ActionFlowExecutions)) {
+                executions = new ActionFlowExecutions(maxExecutions);
+                flowScopeStore.put(session, FLOW_EXECUTIONS_KEY, executions);
+            }
+            return (ActionFlowExecutions) executions;
+        }
+    }
+
+    /**
+     * Gets object to synchronize on for the session. The session map is
+     * created for each request, so the HTTP session of the current request is
+     * used if there is one.
+     * 
+     * @param session
+     *            session map.
+     * @return session mutex.
+     */
+    private Object sessionMutex(final Map<String, Object> session) {
+        HttpServletRequest request = ServletActionContext.getRequest();
+        if (request != null) {
+            HttpSession httpSession = request.getSession(false);
+            if (httpSession != null) {
+                return httpSession;
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Gets value of the flow state.
+     * 
+     * @param session
+     *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param name
+     *            name of the value.
+     * @return value or <code>null</code>.
+     */
+    private Object getState(final Map<String, Object> session,
+            final String executionKey, final String name) {
+        if (executionKey == null) {
+            return flowScopeStore.get(session, name);
+        }
+        ActionFlowExecutions executions = getExecutions(session, false);
+        return executions == null ? null : executions.get(executionKey, name);
+    }
+
+    /**
+     * Puts value of the flow state.
+     * 
+     * @param session
+     *            session map.
+     * @param executionKey
+     *            flow execution key or <code>null</code>.
+     * @param name
+     *            name of the value.
+     * @param value
+     *            value to put, <code>null</code> removes the value.
+     */
+    private void putState(final Map<String, Object> session,
+            final String executionKey, final String name, final Object value) {
+        if (executionKey == null) {
+            flowScopeStore.put(session, name, value);
+        } else {
+            ActionFlowExecutions executions = getExecutions(session,
+                    value != null);
+            if (executions != null) {
+                executions.put(executionKey, name, value);
+                // put again so replicated sessions see the change
+                flowScopeStore.put(session, FLOW_EXECUTIONS_KEY, executions);
+            }
+        }
+    }
+
+    /**
+     * Session of batch submitted steps. Reads fall through to the session,
+     * writes and removals are recorded and applied to the session once by
+     * {@link #flush()}. Attributes of the session which the steps did not
+     * touch are left alone, so concurrent requests can change them.
+     */
+    private static final class BatchSession extends
+            AbstractMap<String, Object> {
+
+        /** Session map of the request. */
+        private final Map<String, Object> session;
+
+        /** Written values by key, <code>null</code> for removed keys. */
+        private final Map<String, Object> written = new LinkedHashMap<String, Object>();
+
+        /**
+         * @param session
+         *            session map of the request.
+         */
+        private BatchSession(final Map<String, Object> session) {
+            this.session = session;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Object get(Object key) {
+            if (written.containsKey(key)) {
+                return written.get(key);
+            }
+            return session.get(key);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean containsKey(Object key) {
+            if (written.containsKey(key)) {
+                return written.get(key) != null;
+            }
+            return session.containsKey(key);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Object put(String key, Object value) {
+            Object previous = get(key);
+            written.put(key, value);
+            return previous;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Object remove(Object key) {
+            Object previous = get(key);
+            written.put(String.valueOf(key), null);
+            return previous;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            Map<String, Object> merged = new HashMap<String, Object>(session);
+            for (Map.Entry<String, Object> entry : written.entrySet()) {
+                if (entry.getValue() == null) {
+                    merged.remove(entry.getKey());
+                } else {
+                    merged.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return Collections.unmodifiableMap(merged).entrySet();
+        }
+
+        /**
+         * Puts each written value into the session once, also values which
+         * were changed in place, so replicated sessions see the change.
+         */
+        private void flush() {
+            for (Map.Entry<String, Object> entry : written.entrySet()) {
+                if (entry.getValue() == null) {
+                    session.remove(entry.getKey());
+                } else {
+                    session.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes global view result of the next step after successful flow
+     * action. Holds no request state, so one instance is shared by all
+     * requests.
+     */
+    private final class ViewResultListener implements PreResultListener,
+            Serializable {
+
+        /** Serial version uid. */
+        private static final long serialVersionUID = 2470958862541253014L;
+
+        /** {@inheritDoc} */
+        public void beforeResult(ActionInvocation invocation, String resultCode) {
+            if (Action.SUCCESS.equals(resultCode)) {
+                ActionFlowConfig flowConfig = getFlowConfig(invocation
+                        .getProxy().getConfig().getPackageName());
+                ActionFlowRoute route = flowConfig.getRoute(invocation
+                        .getInvocationContext().getName());
+                if (route != null
+                        && route.getRole() == ActionFlowRoute.Role.FLOW_STEP
+                        && flowConfig.getNextStep(route.getStep()) != -1) {
+                    setRedirectAction(invocation, GLOBAL_VIEW_RESULT,
+                            VIEW_ACTION_PARAM, flowConfig
+                                    .getViewAction(flowConfig
+                                            .getNextStep(route.getStep())));
+                    invocation.setResultCode(GLOBAL_VIEW_RESULT);
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes global JSON result instead of successful and input results of
+     * flow action. Holds no request state, so one instance is shared by all
+     * requests.
+     */
+    private final class JsonResultListener implements PreResultListener,
+            Serializable {
+
+        /** Serial version uid. */
+        private static final long serialVersionUID = -1722411395683412658L;
+
+        /** {@inheritDoc} */
+        public void beforeResult(ActionInvocation invocation, String resultCode) {
+            if (Action.SUCCESS.equals(resultCode)
+                    || Action.INPUT.equals(resultCode)) {
+                ActionFlowConfig flowConfig = getFlowConfig(invocation
+                        .getProxy().getConfig().getPackageName());
+                ActionFlowRoute route = flowConfig.getRoute(invocation
+                        .getInvocationContext().getName());
+                if (route != null
+                        && route.getRole() == ActionFlowRoute.Role.FLOW_STEP) {
+                    // next step after success, the same step on input
+                    int step = Action.SUCCESS.equals(resultCode) ? flowConfig
+                            .getNextStep(route.getStep()) : route.getStep();
+                    invocation.setResultCode(jsonResult(invocation,
+                            flowConfig, resultCode, step));
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes successful flow action before its result, so the view action
+     * executed by the forward result in the same request sees the new state.
+     * Holds request state, so one instance is created per request.
+     */
+    private final class ForwardResultListener implements PreResultListener,
+            Serializable {
+
+        /** Serial version uid. */
+        private static final long serialVersionUID = -5862637093436402851L;
+
+        private final transient ActionFlowConfig flowConfig;
+        private final transient ActionFlowRoute route;
+        private final transient Map<String, Object> session;
+        private final String executionKey;
+        private final transient Map<String, Object> submittedParameters;
+
+        /** Whether the step has been completed. */
+        private boolean completed;
+
+        /**
+         * @param flowConfig
+         *            action flow configuration.
+         * @param route
+         *            route of the flow action.
+         * @param session
+         *            session map.
+         * @param executionKey
+         *            flow execution key or <code>null</code>.
+         * @param submittedParameters
+         *            request parameters.
+         */
+        ForwardResultListener(final ActionFlowConfig flowConfig,
+                final ActionFlowRoute route, final Map<String, Object> session,
+                final String executionKey,
+                final Map<String, Object> submittedParameters) {
+            this.flowConfig = flowConfig;
+            this.route = route;
+            this.session = session;
+            this.executionKey = executionKey;
+            this.submittedParameters = submittedParameters;
+        }
+
+        /** {@inheritDoc} */
+        public void beforeResult(ActionInvocation invocation, String resultCode) {
+            if (Action.SUCCESS.equals(resultCode)) {
+                if (invocation.getAction() != null) {
+                    handleFlowScope(invocation.getAction(), session,
+                            executionKey, flowConfig.getScopeLayout(),
+                            flowConfig.getScopeFields(invocation.getAction()
+                                    .getClass().getName()), false,
+                            route.getStep());
+                }
+                completeStep(flowConfig, route, session, executionKey,
+                        submittedParameters);
+                completed = true;
+
+                invocation
+                        .getInvocationContext()
+                        .getValueStack()
+                        .set(VIEW_ACTION_PARAM,
+                                flowConfig.getViewAction(flowConfig
+                                        .getNextStep(route.getStep())));
+                invocation.setResultCode(GLOBAL_FORWARD_RESULT);
+            }
+        }
+    }
+
+    /**
+     * @return the nextActionName
+     */
+    String getNextActionName() {
+        return nextActionName;
+    }
+
+    /**
+     * @return the prevActionName
+     */
+    String getPrevActionName() {
+        return prevActionName;
+    }
+
+    /**
+     * @return the viewActionPostfix
+     */
+    String getViewActionPostfix() {
+        return viewActionPostfix;
+    }
+
+    /**
+     * @return the viewActionMethod
+     */
+    String getViewActionMethod() {
+        return viewActionMethod;
+    }
+
+    /**
+     * @param value
+     *            the flowExecutionKeys to set
+     */
+    public void setFlowExecutionKeys(String value) {
+        this.flowExecutionKeys = Boolean.valueOf(value).booleanValue();
+    }
+
+    /**
+     * @param value
+     *            the scopeSnapshots to set
+     */
+    public void setScopeSnapshots(String value) {
+        this.scopeSnapshots = Boolean.valueOf(value).booleanValue();
+    }
+
+    /**
+     * @param value
+     *            the viewResultMode to set, <code>redirect</code>,
+     *            <code>forward</code> or <code>json</code>
+     */
+    public void setViewResultMode(String value) {
+        if (VIEW_RESULT_MODE_FORWARD.equalsIgnoreCase(value)) {
+            this.forwardViewResult = true;
+            this.jsonViewResult = false;
+        } else if (VIEW_RESULT_MODE_JSON.equalsIgnoreCase(value)) {
+            this.forwardViewResult = false;
+            this.jsonViewResult = true;
+        } else if (VIEW_RESULT_MODE_REDIRECT.equalsIgnoreCase(value)) {
+            this.forwardViewResult = false;
+            this.jsonViewResult = false;
+        } else {
+            throw new ConfigurationException("The '" + value
+                    + "' is not a valid view result mode, use '"
+                    + VIEW_RESULT_MODE_REDIRECT + "', '"
+                    + VIEW_RESULT_MODE_FORWARD + "' or '"
+                    + VIEW_RESULT_MODE_JSON + "'.");
+        }
+    }
+
+    /**
+     * @param value
+     *            maximum number of flow executions per session
+     */
+    @Inject(value = ActionFlowConstants.MAX_EXECUTIONS, required = false)
+    public void setMaxExecutions(String value) {
+        this.maxExecutions = Integer.parseInt(value);
+    }
+
+    /**
+     * @param flowScopeStoreName
+     *            name of the flow scope store bean
+     */
+    @Inject(value = ActionFlowConstants.SCOPE_STORE, required = false)
+    public void setFlowScopeStoreName(String flowScopeStoreName) {
+        this.flowScopeStoreName = flowScopeStoreName;
+    }
+
+    /**
+     * @param value
+     *            the batchSubmission to set
+     */
+    public void setBatchSubmission(String value) {
+        this.batchSubmission = Boolean.valueOf(value).booleanValue();
+    }
+
+    /**
+     * @param value
+     *            the directDispatch to set
+     */
+    public void setDirectDispatch(String value) {
+        this.directDispatch = Boolean.valueOf(value).booleanValue();
+    }
+
+    /**
+     * @param actionProxyFactory
+     *            the actionProxyFactory to set
+     */
+    @Inject
+    public void setActionProxyFactory(ActionProxyFactory actionProxyFactory) {
+        this.actionProxyFactory = actionProxyFactory;
+    }
+
+    /**
+     * @param container
+     *            the container to set
+     */
+    @Inject
+    public void setContainer(Container container) {
+        this.container = container;
     }
 
     /**
@@ -464,6 +1836,7 @@ public class ActionFlowInterceptor extends AbstractInterceptor {
      */
     public void setViewActionPostfix(String viewActionPostfix) {
         this.viewActionPostfix = viewActionPostfix;
+        this.missingViewAction = null + viewActionPostfix;
     }
 
     /**
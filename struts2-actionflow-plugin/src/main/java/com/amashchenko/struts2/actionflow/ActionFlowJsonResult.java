@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts2.ServletActionContext;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowJsonFragments;
+import com.opensymphony.xwork2.ActionContext;
+import com.opensymphony.xwork2.ActionInvocation;
+import com.opensymphony.xwork2.Result;
+import com.opensymphony.xwork2.ValidationAware;
+
+/**
+ * Writes JSON step navigation document of the action flow interceptor in
+ * <code>json</code> view result mode, e.g.:
+ * 
+ * <pre>
+ * {"outcome":"success","step":2,"action":"savePhone","view":"savePhoneView",
+ *  "steps":{"1":"saveName","2":"savePhone"},"fieldErrors":{},"actionErrors":[]}
+ * </pre>
+ * 
+ * The outcome is the result code of the flow action or <code>wrongOrder</code>
+ * if the action is executed in the wrong order. The step members describe the
+ * step to show next and are precomputed per step, only the outcome, the
+ * errors and the flow execution key are written per request.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowJsonResult implements Result {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = 4934616478245208671L;
+
+    /** Content type of the document. */
+    private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+    /** {@inheritDoc} */
+    public void execute(ActionInvocation invocation) throws Exception {
+        ActionContext context = invocation.getInvocationContext();
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"outcome\":");
+        ActionFlowJsonFragments.appendString(sb,
+                (String) context.get(ActionFlowInterceptor.FLOW_JSON_OUTCOME));
+        String fragment = (String) context
+                .get(ActionFlowInterceptor.FLOW_JSON_FRAGMENT);
+        if (fragment != null) {
+            sb.append(',').append(fragment);
+        }
+
+        if (invocation.getAction() instanceof ValidationAware) {
+            ValidationAware validationAware = (ValidationAware) invocation
+                    .getAction();
+            sb.append(",\"fieldErrors\":");
+            appendFieldErrors(sb, validationAware.getFieldErrors());
+            sb.append(",\"actionErrors\":");
+            appendArray(sb, validationAware.getActionErrors());
+        }
+
+        String executionKey = (String) context
+                .get(ActionFlowInterceptor.FLOW_EXECUTION_KEY);
+        if (executionKey != null) {
+            sb.append(",\"flowExecutionKey\":");
+            ActionFlowJsonFragments.appendString(sb, executionKey);
+        }
+        sb.append('}');
+
+        HttpServletResponse response = ServletActionContext.getResponse();
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        PrintWriter writer = response.getWriter();
+        writer.write(sb.toString());
+        writer.flush();
+    }
+
+    /**
+     * Appends field errors as JSON object.
+     * 
+     * @param sb
+     *            string builder to append to.
+     * @param fieldErrors
+     *            field errors or <code>null</code>.
+     */
+    private void appendFieldErrors(final StringBuilder sb,
+            final Map<String, List<String>> fieldErrors) {
+        sb.append('{');
+        if (fieldErrors != null) {
+            boolean first = true;
+            for (Entry<String, List<String>> entry : fieldErrors.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                ActionFlowJsonFragments.appendString(sb, entry.getKey());
+                sb.append(':');
+                appendArray(sb, entry.getValue());
+            }
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Appends strings as JSON array.
+     * 
+     * @param sb
+     *            string builder to append to.
+     * @param values
+     *            strings or <code>null</code>.
+     */
+    private void appendArray(final StringBuilder sb,
+            final Collection<String> values) {
+        sb.append('[');
+        if (values != null) {
+            boolean first = true;
+            for (String value : values) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                ActionFlowJsonFragments.appendString(sb, value);
+            }
+        }
+        sb.append(']');
+    }
+}
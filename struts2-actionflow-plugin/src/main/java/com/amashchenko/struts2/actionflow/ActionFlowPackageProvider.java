@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.struts2.dispatcher.Dispatcher;
+import org.apache.struts2.dispatcher.DispatcherListener;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowConfig;
+import com.opensymphony.xwork2.config.Configuration;
+import com.opensymphony.xwork2.config.ConfigurationException;
+import com.opensymphony.xwork2.config.PackageProvider;
+import com.opensymphony.xwork2.config.entities.ActionConfig;
+import com.opensymphony.xwork2.config.entities.InterceptorMapping;
+import com.opensymphony.xwork2.inject.Inject;
+import com.opensymphony.xwork2.util.logging.Logger;
+import com.opensymphony.xwork2.util.logging.LoggerFactory;
+
+/**
+ * Compiles action flows of all packages when the dispatcher is initialized,
+ * so generated actions and scope metadata exist before the first request
+ * arrives. The dispatcher is initialized after XWork has built the runtime
+ * configuration, so the flows are compiled once against it. Action flows of a
+ * reloaded configuration are compiled on first request.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowPackageProvider implements PackageProvider,
+        DispatcherListener {
+
+    /** Logger. */
+    public static final Logger LOG = LoggerFactory
+            .getLogger(ActionFlowPackageProvider.class);
+
+    /** Provider waiting for the dispatcher to be initialized. */
+    private static final AtomicReference<ActionFlowPackageProvider> PENDING = new AtomicReference<ActionFlowPackageProvider>();
+
+    /** XWork configuration. */
+    private Configuration configuration;
+
+    /** Action flow registry. */
+    @Inject
+    private ActionFlowRegistry flowRegistry;
+
+    /** Whether to compile action flows on startup. */
+    private boolean eagerCompilation = true;
+
+    /**
+     * @param value
+     *            whether to compile action flows on startup.
+     */
+    @Inject(value = ActionFlowConstants.EAGER_COMPILATION, required = false)
+    public void setEagerCompilation(String value) {
+        this.eagerCompilation = Boolean.valueOf(value).booleanValue();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void init(Configuration configuration) throws ConfigurationException {
+        this.configuration = configuration;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean needsReload() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void loadPackages() throws ConfigurationException {
+        if (!eagerCompilation) {
+            return;
+        }
+        // interceptor stacks are resolved into runtime configuration only,
+        // wait for XWork to build it
+        ActionFlowPackageProvider previous = PENDING.getAndSet(this);
+        if (previous != null) {
+            Dispatcher.removeDispatcherListener(previous);
+        }
+        Dispatcher.addDispatcherListener(this);
+    }
+
+    /** {@inheritDoc} */
+    public void dispatcherInitialized(Dispatcher du) {
+        Dispatcher.removeDispatcherListener(this);
+        if (PENDING.compareAndSet(this, null)) {
+            compileFlows();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void dispatcherDestroyed(Dispatcher du) {
+        Dispatcher.removeDispatcherListener(this);
+        PENDING.compareAndSet(this, null);
+    }
+
+    /**
+     * Compiles action flows of all packages.
+     */
+    protected void compileFlows() {
+        long start = System.currentTimeMillis();
+
+        Map<String, ActionFlowInterceptor> flowPackages = findFlowPackages();
+        Map<String, ActionFlowConfig> flowConfigs = flowRegistry
+                .compileFlowConfigs(flowPackages);
+
+        for (String packageName : flowPackages.keySet()) {
+            if (!flowConfigs.containsKey(packageName)) {
+                // will be thrown again on the first request to this package
+                LOG.error("Cannot compile action flow of '" + packageName
+                        + "' package on startup.");
+            }
+        }
+
+        if (LOG.isInfoEnabled()) {
+            LOG.info("Compiled action flows of " + flowConfigs.size()
+                    + " packages in " + (System.currentTimeMillis() - start)
+                    + " ms.");
+        }
+    }
+
+    /**
+     * Finds packages with actions intercepted by the action flow interceptor.
+     * 
+     * @return Map of package names and their action flow interceptors, sorted
+     *         by package name.
+     */
+    protected Map<String, ActionFlowInterceptor> findFlowPackages() {
+        Map<String, ActionFlowInterceptor> flowPackages = new TreeMap<String, ActionFlowInterceptor>();
+
+        Map<String, Map<String, ActionConfig>> runtimeActionConfigs = configuration
+                .getRuntimeConfiguration().getActionConfigs();
+        for (Map<String, ActionConfig> actionConfigs : runtimeActionConfigs
+                .values()) {
+            for (ActionConfig actionConfig : actionConfigs.values()) {
+                if (flowPackages.containsKey(actionConfig.getPackageName())) {
+                    continue;
+                }
+                for (InterceptorMapping im : actionConfig.getInterceptors()) {
+                    if (im.getInterceptor() instanceof ActionFlowInterceptor) {
+                        flowPackages.put(actionConfig.getPackageName(),
+                                (ActionFlowInterceptor) im.getInterceptor());
+                        break;
+                    }
+                }
+            }
+        }
+        return flowPackages;
+    }
+}
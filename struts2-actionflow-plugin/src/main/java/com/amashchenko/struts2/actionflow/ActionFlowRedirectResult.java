@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.net.URLEncoder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts2.ServletActionContext;
+import org.apache.struts2.dispatcher.mapper.ActionMapper;
+
+import com.opensymphony.xwork2.ActionContext;
+import com.opensymphony.xwork2.ActionInvocation;
+import com.opensymphony.xwork2.Result;
+import com.opensymphony.xwork2.inject.Inject;
+
+/**
+ * Redirects to the action chosen by the action flow interceptor, e.g. the view
+ * action of the next step. Unlike <code>redirectAction</code> result the
+ * target is not evaluated from the value stack, it is taken from the action
+ * context, and the URL of each target is built by the action mapper once and
+ * reused.
+ * <p/>
+ * <u>Result parameters:</u>
+ * <ul>
+ * <li>actionName (optional) - Action to redirect to when the interceptor has
+ * not chosen any.</li>
+ * <li>namespace (optional) - Namespace of the action. The default is the
+ * namespace of the current action.</li>
+ * </ul>
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowRedirectResult implements Result {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = -3145926558979323846L;
+
+    /** Action mapper building URLs of actions. */
+    private ActionMapper actionMapper;
+
+    /** Registry caching URLs of actions. */
+    private ActionFlowRegistry flowRegistry;
+
+    private String actionName;
+    private String namespace;
+
+    /** {@inheritDoc} */
+    public void execute(ActionInvocation invocation) throws Exception {
+        ActionContext context = invocation.getInvocationContext();
+
+        String target = (String) context
+                .get(ActionFlowInterceptor.FLOW_REDIRECT_ACTION);
+        if (target == null) {
+            target = actionName;
+        }
+        if (target == null) {
+            throw new IllegalStateException(
+                    "There is no action to redirect to from '"
+                            + context.getName() + "' action.");
+        }
+
+        String uri = flowRegistry.getActionUri(actionMapper,
+                namespace == null ? invocation.getProxy().getNamespace()
+                        : namespace, target);
+
+        HttpServletRequest request = ServletActionContext.getRequest();
+        StringBuilder url = new StringBuilder(request.getContextPath())
+                .append(uri);
+        String executionKey = (String) context
+                .get(ActionFlowInterceptor.FLOW_EXECUTION_KEY);
+        if (executionKey != null) {
+            url.append(uri.indexOf('?') == -1 ? '?' : '&')
+                    .append(ActionFlowInterceptor.FLOW_EXECUTION_KEY_PARAM)
+                    .append('=').append(URLEncoder.encode(executionKey, "UTF-8"));
+        }
+
+        HttpServletResponse response = ServletActionContext.getResponse();
+        response.sendRedirect(response.encodeRedirectURL(url.toString()));
+    }
+
+    /**
+     * @param actionMapper
+     *            the actionMapper to set
+     */
+    @Inject
+    public void setActionMapper(ActionMapper actionMapper) {
+        this.actionMapper = actionMapper;
+    }
+
+    /**
+     * @param flowRegistry
+     *            the flowRegistry to set
+     */
+    @Inject
+    public void setFlowRegistry(ActionFlowRegistry flowRegistry) {
+        this.flowRegistry = flowRegistry;
+    }
+
+    /**
+     * @param actionName
+     *            the actionName to set
+     */
+    public void setActionName(String actionName) {
+        this.actionName = actionName;
+    }
+
+    /**
+     * @param namespace
+     *            the namespace to set
+     */
+    public void setNamespace(String namespace) {
+        this.namespace = namespace;
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.struts2.dispatcher.Dispatcher;
+import org.apache.struts2.dispatcher.DispatcherListener;
+import org.apache.struts2.dispatcher.mapper.ActionMapper;
+import org.apache.struts2.dispatcher.mapper.ActionMapping;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowConfig;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowStepConfig;
+import com.opensymphony.xwork2.config.ConfigurationException;
+import com.opensymphony.xwork2.inject.Inject;
+import com.opensymphony.xwork2.util.logging.Logger;
+import com.opensymphony.xwork2.util.logging.LoggerFactory;
+
+/**
+ * Container scoped registry of compiled action flows. Compiles the flow of
+ * each package once and hands the same immutable configuration to every
+ * interceptor instance serving that package.
+ * <p/>
+ * When the dispatcher is destroyed the compiled action flows and the cached
+ * flow scope metadata of the application classes are released. Only the
+ * registry of the latest container is registered as dispatcher listener, so
+ * registries of reloaded configurations are not kept.
+ *
+ * @author Aleksandr Mashchenko
+ *
+ */
+public class ActionFlowRegistry implements DispatcherListener {
+
+    /** Logger. */
+    public static final Logger LOG = LoggerFactory
+            .getLogger(ActionFlowRegistry.class);
+
+    /** Registry registered as dispatcher listener. */
+    private static final AtomicReference<ActionFlowRegistry> LISTENING = new AtomicReference<ActionFlowRegistry>();
+
+    /** Compiled action flows by package name and interceptor parameters. */
+    private final ConcurrentMap<String, ActionFlowConfig> flowConfigs = new ConcurrentHashMap<String, ActionFlowConfig>();
+
+    /** URIs of actions by namespace and action name. */
+    private final ConcurrentMap<String, String> actionUris = new ConcurrentHashMap<String, String>();
+
+    /** Action flow configuration builder. */
+    private ActionFlowConfigBuilder flowConfigBuilder;
+
+    /** Number of threads introspecting action classes on startup. */
+    private int introspectionThreads = 1;
+
+    /**
+     * @param value
+     *            Number of threads introspecting action classes on startup,
+     *            <code>0</code> for one per processor.
+     */
+    @Inject(value = ActionFlowConstants.INTROSPECTION_THREADS, required = false)
+    public void setIntrospectionThreads(String value) {
+        int threads = Integer.parseInt(value);
+        if (threads < 0) {
+            throw new ConfigurationException("The '"
+                    + ActionFlowConstants.INTROSPECTION_THREADS
+                    + "' constant cannot be negative.");
+        }
+        this.introspectionThreads = threads == 0 ? Runtime.getRuntime()
+                .availableProcessors() : threads;
+    }
+
+    /**
+     * @param flowConfigBuilder
+     *            Action flow configuration builder.
+     */
+    @Inject
+    public void setFlowConfigBuilder(ActionFlowConfigBuilder flowConfigBuilder) {
+        this.flowConfigBuilder = flowConfigBuilder;
+        registerListener();
+    }
+
+    /**
+     * Registers this registry as dispatcher listener in place of the registry
+     * of the previous container.
+     */
+    private void registerListener() {
+        ActionFlowRegistry previous = LISTENING.getAndSet(this);
+        if (previous == this) {
+            return;
+        }
+        if (previous != null) {
+            Dispatcher.removeDispatcherListener(previous);
+        }
+        Dispatcher.addDispatcherListener(this);
+    }
+
+    /** {@inheritDoc} */
+    public void dispatcherInitialized(Dispatcher du) {
+    }
+
+    /** {@inheritDoc} */
+    public void dispatcherDestroyed(Dispatcher du) {
+        LISTENING.compareAndSet(this, null);
+        Dispatcher.removeDispatcherListener(this);
+        flowConfigs.clear();
+        actionUris.clear();
+        // metadata is shared by all containers, only classes of this
+        // application are removed
+        ActionFlowScopeMetadata.clearClassLoader(Thread.currentThread()
+                .getContextClassLoader());
+    }
+
+    /**
+     * Gets compiled action flow configuration for given package, compiling it
+     * on first access.
+     *
+     * @param packageName
+     *            Name of the package.
+     * @param nextActionName
+     *            Name of the next action.
+     * @param prevActionName
+     *            Name of the previous action.
+     * @param viewActionPostfix
+     *            View action postfix.
+     * @param viewActionMethod
+     *            View action method.
+     * @return Compiled action flow configuration.
+     */
+    public ActionFlowConfig getFlowConfig(final String packageName,
+            final String nextActionName, final String prevActionName,
+            final String viewActionPostfix, final String viewActionMethod) {
+        String key = flowKey(packageName, nextActionName, prevActionName,
+                viewActionPostfix, viewActionMethod);
+        ActionFlowConfig flowConfig = flowConfigs.get(key);
+        if (flowConfig == null) {
+            // compilation modifies XWork configuration, so only one at a time
+            synchronized (this) {
+                flowConfig = flowConfigs.get(key);
+                if (flowConfig == null) {
+                    flowConfig = createFlowConfig(packageName,
+                            nextActionName, prevActionName,
+                            viewActionPostfix, viewActionMethod);
+                    flowConfigs.put(key, flowConfig);
+                }
+            }
+        }
+        return flowConfig;
+    }
+
+    /**
+     * Builds key of the compiled action flow. Interceptor stacks of one
+     * package may have different parameters which compile to different
+     * action flows.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @param nextActionName
+     *            Name of the next action.
+     * @param prevActionName
+     *            Name of the previous action.
+     * @param viewActionPostfix
+     *            View action postfix.
+     * @param viewActionMethod
+     *            View action method.
+     * @return Key of the compiled action flow.
+     */
+    private String flowKey(final String packageName,
+            final String nextActionName, final String prevActionName,
+            final String viewActionPostfix, final String viewActionMethod) {
+        return packageName + '\n' + nextActionName + '\n' + prevActionName
+                + '\n' + viewActionPostfix + '\n' + viewActionMethod;
+    }
+
+    /**
+     * Builds key of the action flow compiled with parameters of the
+     * interceptor.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @param interceptor
+     *            Action flow interceptor of the package.
+     * @return Key of the compiled action flow.
+     */
+    private String flowKey(final String packageName,
+            final ActionFlowInterceptor interceptor) {
+        return flowKey(packageName, interceptor.getNextActionName(),
+                interceptor.getPrevActionName(),
+                interceptor.getViewActionPostfix(),
+                interceptor.getViewActionMethod());
+    }
+
+    /**
+     * Gets URI of the action without the context path, building it with the
+     * action mapper on first access. The action mapper is a container
+     * singleton like this registry, so the URI of an action never changes.
+     * 
+     * @param actionMapper
+     *            Action mapper.
+     * @param namespace
+     *            Namespace of the action.
+     * @param actionName
+     *            Name of the action.
+     * @return URI of the action.
+     */
+    public String getActionUri(final ActionMapper actionMapper,
+            final String namespace, final String actionName) {
+        String key = namespace + "/" + actionName;
+        String uri = actionUris.get(key);
+        if (uri == null) {
+            uri = actionMapper.getUriFromActionMapping(new ActionMapping(
+                    actionName, namespace, null, null));
+            actionUris.putIfAbsent(key, uri);
+        }
+        return uri;
+    }
+
+    /**
+     * Compiles action flow configurations of given packages at once. Action
+     * flows of all packages are synthesized in one pass with a single rebuild
+     * of the runtime configuration. Packages with wrong action flow
+     * configuration are skipped and will be compiled on first access.
+     * 
+     * @param flowPackages
+     *            Map of package names and their action flow interceptors.
+     * @return Map of package names and compiled action flow configurations.
+     */
+    public Map<String, ActionFlowConfig> compileFlowConfigs(
+            final Map<String, ActionFlowInterceptor> flowPackages) {
+        Map<String, ActionFlowConfig> result = new TreeMap<String, ActionFlowConfig>();
+        synchronized (this) {
+            Map<String, ActionFlowInterceptor> uncompiled = new TreeMap<String, ActionFlowInterceptor>();
+            for (Entry<String, ActionFlowInterceptor> entry : flowPackages
+                    .entrySet()) {
+                ActionFlowConfig flowConfig = flowConfigs.get(flowKey(
+                        entry.getKey(), entry.getValue()));
+                if (flowConfig != null) {
+                    result.put(entry.getKey(), flowConfig);
+                } else {
+                    uncompiled.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            long lookups = ActionFlowScopeMetadata.getLookups();
+            long introspections = ActionFlowScopeMetadata.getIntrospections();
+            long introspectionNanos = ActionFlowScopeMetadata
+                    .getIntrospectionNanos();
+
+            long start = System.currentTimeMillis();
+            Map<String, Map<String, ActionFlowStepConfig>> flowMaps = flowConfigBuilder
+                    .createFlowMaps(uncompiled);
+            if (LOG.isInfoEnabled()) {
+                LOG.info("Created action flows of " + flowMaps.size()
+                        + " packages in "
+                        + (System.currentTimeMillis() - start) + " ms.");
+            }
+
+            if (introspectionThreads > 1 && !flowMaps.isEmpty()) {
+                long introspectionStart = System.currentTimeMillis();
+                int classes = flowConfigBuilder.introspectActionClasses(
+                        flowMaps.keySet(), introspectionThreads);
+                if (LOG.isInfoEnabled()) {
+                    LOG.info("Introspected " + classes + " action classes on "
+                            + introspectionThreads + " threads in "
+                            + (System.currentTimeMillis() - introspectionStart)
+                            + " ms.");
+                }
+            }
+
+            for (Entry<String, Map<String, ActionFlowStepConfig>> entry : flowMaps
+                    .entrySet()) {
+                long packageStart = System.currentTimeMillis();
+
+                ActionFlowInterceptor interceptor = uncompiled.get(entry
+                        .getKey());
+                ActionFlowConfig flowConfig;
+                try {
+                    flowConfig = createFlowConfig(entry.getKey(),
+                            entry.getValue(), interceptor.getNextActionName(),
+                            interceptor.getPrevActionName(),
+                            interceptor.getViewActionPostfix());
+                } catch (ConfigurationException e) {
+                    LOG.error("Cannot compile action flow of '"
+                            + entry.getKey() + "' package.", e);
+                    continue;
+                }
+                flowConfigs.put(flowKey(entry.getKey(), interceptor),
+                        flowConfig);
+                result.put(entry.getKey(), flowConfig);
+
+                if (LOG.isInfoEnabled()) {
+                    LOG.info("Compiled action flow of '" + entry.getKey()
+                            + "' package with "
+                            + flowConfig.getStepsData().getSteps().size()
+                            + " steps in "
+                            + (System.currentTimeMillis() - packageStart)
+                            + " ms.");
+                }
+            }
+
+            if (LOG.isInfoEnabled() && !flowMaps.isEmpty()) {
+                // classes shared by packages are introspected once
+                LOG.info("Resolved action flow scope fields of "
+                        + (ActionFlowScopeMetadata.getLookups() - lookups)
+                        + " action classes, introspected "
+                        + (ActionFlowScopeMetadata.getIntrospections() - introspections)
+                        + " of them in "
+                        + ((ActionFlowScopeMetadata.getIntrospectionNanos() - introspectionNanos) / 1000000L)
+                        + " ms.");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compiles action flow configuration for given package.
+     *
+     * @param packageName
+     *            Name of the package.
+     * @param nextActionName
+     *            Name of the next action.
+     * @param prevActionName
+     *            Name of the previous action.
+     * @param viewActionPostfix
+     *            View action postfix.
+     * @param viewActionMethod
+     *            View action method.
+     * @return Compiled action flow configuration.
+     */
+    protected ActionFlowConfig createFlowConfig(final String packageName,
+            final String nextActionName, final String prevActionName,
+            final String viewActionPostfix, final String viewActionMethod) {
+        return createFlowConfig(packageName, flowConfigBuilder.createFlowMap(
+                packageName, nextActionName, prevActionName,
+                viewActionPostfix, viewActionMethod), nextActionName,
+                prevActionName, viewActionPostfix);
+    }
+
+    /**
+     * Compiles action flow configuration for given package and its action
+     * flow map.
+     * 
+     * @param packageName
+     *            Name of the package.
+     * @param flowMap
+     *            Action flow map of the package.
+     * @param nextActionName
+     *            Name of the next action.
+     * @param prevActionName
+     *            Name of the previous action.
+     * @param viewActionPostfix
+     *            View action postfix.
+     * @return Compiled action flow configuration.
+     */
+    protected ActionFlowConfig createFlowConfig(final String packageName,
+            final Map<String, ActionFlowStepConfig> flowMap,
+            final String nextActionName, final String prevActionName,
+            final String viewActionPostfix) {
+        ActionFlowConfig flowConfig = flowConfigBuilder.createFlowConfig(
+                packageName, flowMap,
+                flowConfigBuilder.createFlowScopeFields(packageName),
+                nextActionName, prevActionName, viewActionPostfix);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("compiled action flow: " + flowConfig);
+        }
+
+        return flowConfig;
+    }
+}
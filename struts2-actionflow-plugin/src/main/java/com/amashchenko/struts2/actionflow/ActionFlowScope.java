@@ -23,6 +23,11 @@ import java.lang.annotation.Target;
 /**
  * Annotates fields which should have their values to be in action flow scope.
  * Action class that holds annotated fields must be annotated as well.
+ * <p/>
+ * By default annotated fields of the action class need a getter and a setter.
+ * With {@link #fieldAccess()} enabled on the action class annotated fields of
+ * the class and its superclasses are read and written directly, so they need
+ * neither.
  * 
  * @author Aleksandr Mashchenko
  * 
@@ -31,4 +36,11 @@ import java.lang.annotation.Target;
 @Target({ ElementType.TYPE, ElementType.FIELD })
 public @interface ActionFlowScope {
 
+    /**
+     * Whether to access annotated fields directly, including private and
+     * inherited ones. Used on action classes only.
+     * 
+     * @return <code>true</code> to access fields directly.
+     */
+    boolean fieldAccess() default false;
 }
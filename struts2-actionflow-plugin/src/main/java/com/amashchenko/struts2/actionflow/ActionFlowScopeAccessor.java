@@ -0,0 +1,196 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.PropertyDescriptor;
+import java.util.List;
+
+import com.opensymphony.xwork2.util.logging.Logger;
+import com.opensymphony.xwork2.util.logging.LoggerFactory;
+
+/**
+ * Reads and writes action flow scope fields of one action class. Fields are
+ * addressed by their index in the list of property descriptors the accessor
+ * was created for.
+ * <p/>
+ * Accessors are generated at runtime and call getters and setters directly.
+ * If generation is not possible, e.g. Javassist is not available or the class
+ * is not public, reflection is used. Fields of classes with field access
+ * enabled in {@link ActionFlowScope} are read and written directly.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public abstract class ActionFlowScopeAccessor {
+
+    /** Logger. */
+    public static final Logger LOG = LoggerFactory
+            .getLogger(ActionFlowScopeAccessor.class);
+
+    /** Whether Javassist is available for generating accessors. */
+    private static final boolean GENERATOR_AVAILABLE = isClassPresent("javassist.ClassPool");
+
+    /**
+     * Gets value of the field.
+     * 
+     * @param action
+     *            action object.
+     * @param field
+     *            index of the field.
+     * @return value of the field.
+     * @throws Exception
+     *             when getter cannot be invoked.
+     */
+    public abstract Object get(Object action, int field) throws Exception;
+
+    /**
+     * Sets value of the field.
+     * 
+     * @param action
+     *            action object.
+     * @param field
+     *            index of the field.
+     * @param value
+     *            value to set.
+     * @throws Exception
+     *             when setter cannot be invoked.
+     */
+    public abstract void set(Object action, int field, Object value)
+            throws Exception;
+
+    /**
+     * Gets value of <code>int</code> field. Generated accessors read it
+     * without boxing.
+     * 
+     * @param action
+     *            action object.
+     * @param field
+     *            index of the field.
+     * @return value of the field.
+     * @throws Exception
+     *             when getter cannot be invoked.
+     */
+    public int getInt(Object action, int field) throws Exception {
+        return ((Integer) get(action, field)).intValue();
+    }
+
+    /**
+     * Gets value of <code>long</code> field. Generated accessors read it
+     * without boxing.
+     * 
+     * @param action
+     *            action object.
+     * @param field
+     *            index of the field.
+     * @return value of the field.
+     * @throws Exception
+     *             when getter cannot be invoked.
+     */
+    public long getLong(Object action, int field) throws Exception {
+        return ((Long) get(action, field)).longValue();
+    }
+
+    /**
+     * Gets value of <code>double</code> field. Generated accessors read it
+     * without boxing.
+     * 
+     * @param action
+     *            action object.
+     * @param field
+     *            index of the field.
+     * @return value of the field.
+     * @throws Exception
+     *             when getter cannot be invoked.
+     */
+    public double getDouble(Object action, int field) throws Exception {
+        return ((Double) get(action, field)).doubleValue();
+    }
+
+    /**
+     * Gets value of <code>boolean</code> field. Generated accessors read it
+     * without boxing.
+     * 
+     * @param action
+     *            action object.
+     * @param field
+     *            index of the field.
+     * @return value of the field.
+     * @throws Exception
+     *             when getter cannot be invoked.
+     */
+    public boolean getBoolean(Object action, int field) throws Exception {
+        return ((Boolean) get(action, field)).booleanValue();
+    }
+
+    /**
+     * Creates accessor of the action flow scope fields of the action class.
+     * 
+     * @param actionClass
+     *            action class.
+     * @param propertyDescriptors
+     *            property descriptors of the fields with getters and setters
+     *            or of the fields accessed directly.
+     * @return accessor of the fields.
+     */
+    public static ActionFlowScopeAccessor create(final Class<?> actionClass,
+            final List<PropertyDescriptor> propertyDescriptors) {
+        if (!propertyDescriptors.isEmpty()
+                && propertyDescriptors.get(0) instanceof FieldPropertyDescriptor) {
+            return new FieldScopeAccessor(
+                    propertyDescriptors
+                            .toArray(new FieldPropertyDescriptor[propertyDescriptors
+                                    .size()]));
+        }
+
+        PropertyDescriptor[] pds = propertyDescriptors
+                .toArray(new PropertyDescriptor[propertyDescriptors.size()]);
+
+        if (GENERATOR_AVAILABLE) {
+            try {
+                return ActionFlowScopeAccessorGenerator.generate(actionClass,
+                        pds);
+            } catch (Exception e) {
+                LOG.warn("Cannot generate action flow scope accessor of '"
+                        + actionClass.getName()
+                        + "', reflection will be used.", e);
+            } catch (LinkageError e) {
+                LOG.warn("Cannot generate action flow scope accessor of '"
+                        + actionClass.getName()
+                        + "', reflection will be used.", e);
+            }
+        }
+        return new ReflectionScopeAccessor(pds);
+    }
+
+    /**
+     * Checks whether class is present without initializing it.
+     * 
+     * @param className
+     *            name of the class.
+     * @return <code>true</code> if class can be loaded.
+     */
+    private static boolean isClassPresent(final String className) {
+        try {
+            Class.forName(className, false,
+                    ActionFlowScopeAccessor.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+/**
+ * Generates action flow scope accessors with Javassist. Generated accessor
+ * calls getters and setters of the action class directly and is defined in a
+ * child class loader of the action class loader, so only public classes and
+ * methods are supported. Getters of <code>int</code>, <code>long</code>,
+ * <code>double</code> and <code>boolean</code> fields are also generated
+ * without boxing.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+final class ActionFlowScopeAccessorGenerator {
+
+    /** Counter for unique names of generated classes. */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /** Utility class. */
+    private ActionFlowScopeAccessorGenerator() {
+    }
+
+    /**
+     * Generates accessor of the fields of the action class.
+     * 
+     * @param actionClass
+     *            action class.
+     * @param pds
+     *            property descriptors of the fields.
+     * @return generated accessor.
+     * @throws Exception
+     *             if accessor cannot be generated for this class.
+     */
+    static ActionFlowScopeAccessor generate(final Class<?> actionClass,
+            final PropertyDescriptor[] pds) throws Exception {
+        ClassLoader loader = actionClass.getClassLoader();
+        if (loader == null) {
+            throw new IllegalArgumentException("Action class '"
+                    + actionClass.getName() + "' has no class loader.");
+        }
+        // generated class must see the same accessor class
+        if (Class.forName(ActionFlowScopeAccessor.class.getName(), false,
+                loader) != ActionFlowScopeAccessor.class) {
+            throw new IllegalArgumentException(
+                    "Accessor class is not visible from class loader of '"
+                            + actionClass.getName() + "'.");
+        }
+
+        StringBuilder getter = new StringBuilder(
+                "public Object get(Object action, int field) { switch (field) {");
+        StringBuilder setter = new StringBuilder(
+                "public void set(Object action, int field, Object value) { switch (field) {");
+        // unboxed getters by primitive type
+        Map<Class<?>, StringBuilder> primitiveGetters = new LinkedHashMap<Class<?>, StringBuilder>();
+        for (int i = 0; i < pds.length; i++) {
+            Method readMethod = pds[i].getReadMethod();
+            Method writeMethod = pds[i].getWriteMethod();
+            checkPublic(readMethod);
+            checkPublic(writeMethod);
+
+            Class<?> type = readMethod.getReturnType();
+            String read = "((" + typeName(readMethod.getDeclaringClass())
+                    + ") action)." + readMethod.getName() + "()";
+            getter.append(" case ").append(i).append(": return ")
+                    .append(box(type, read)).append(";");
+            if (type == Integer.TYPE || type == Long.TYPE
+                    || type == Double.TYPE || type == Boolean.TYPE) {
+                StringBuilder primitiveGetter = primitiveGetters.get(type);
+                if (primitiveGetter == null) {
+                    String typeName = type.getName();
+                    primitiveGetter = new StringBuilder("public ")
+                            .append(typeName).append(" get")
+                            .append(Character.toUpperCase(typeName.charAt(0)))
+                            .append(typeName.substring(1))
+                            .append("(Object action, int field) { switch (field) {");
+                    primitiveGetters.put(type, primitiveGetter);
+                }
+                primitiveGetter.append(" case ").append(i)
+                        .append(": return ").append(read).append(";");
+            }
+
+            setter.append(" case ").append(i).append(": ((")
+                    .append(typeName(writeMethod.getDeclaringClass()))
+                    .append(") action).").append(writeMethod.getName())
+                    .append("(")
+                    .append(unbox(writeMethod.getParameterTypes()[0], "value"))
+                    .append("); return;");
+        }
+        getter.append(" default: throw new IllegalArgumentException(\"Unknown field: \" + field); } }");
+        setter.append(" default: throw new IllegalArgumentException(\"Unknown field: \" + field); } }");
+
+        ClassPool pool = new ClassPool(false);
+        pool.appendClassPath(new ClassClassPath(ActionFlowScopeAccessor.class));
+        pool.appendClassPath(new LoaderClassPath(loader));
+
+        String name = ActionFlowScopeAccessor.class.getName() + "$"
+                + actionClass.getSimpleName() + "$"
+                + COUNTER.incrementAndGet();
+        CtClass cc = pool.makeClass(name);
+        cc.setSuperclass(pool.get(ActionFlowScopeAccessor.class.getName()));
+        cc.addConstructor(CtNewConstructor.defaultConstructor(cc));
+        cc.addMethod(CtNewMethod.make(getter.toString(), cc));
+        cc.addMethod(CtNewMethod.make(setter.toString(), cc));
+        for (StringBuilder primitiveGetter : primitiveGetters.values()) {
+            primitiveGetter
+                    .append(" default: throw new IllegalArgumentException(\"Unknown field: \" + field); } }");
+            cc.addMethod(CtNewMethod.make(primitiveGetter.toString(), cc));
+        }
+
+        byte[] bytecode = cc.toBytecode();
+        cc.detach();
+
+        Class<?> accessorClass = new AccessorClassLoader(loader).define(name,
+                bytecode);
+        return (ActionFlowScopeAccessor) accessorClass
+                .getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Checks that method and its declaring class are public.
+     * 
+     * @param method
+     *            method to check.
+     */
+    private static void checkPublic(final Method method) {
+        if (method == null || !Modifier.isPublic(method.getModifiers())
+                || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            throw new IllegalArgumentException("Method '" + method
+                    + "' is not public.");
+        }
+    }
+
+    /**
+     * @param type
+     *            class.
+     * @return name of the class usable in source code.
+     */
+    private static String typeName(final Class<?> type) {
+        if (type.isArray()) {
+            return typeName(type.getComponentType()) + "[]";
+        }
+        return type.getName();
+    }
+
+    /**
+     * Boxes expression of primitive type.
+     * 
+     * @param type
+     *            type of the expression.
+     * @param expr
+     *            expression.
+     * @return boxed expression.
+     */
+    private static String box(final Class<?> type, final String expr) {
+        if (!type.isPrimitive()) {
+            return expr;
+        }
+        return wrapper(type).getName() + ".valueOf(" + expr + ")";
+    }
+
+    /**
+     * Casts and unboxes expression to given type.
+     * 
+     * @param type
+     *            target type.
+     * @param expr
+     *            expression of type <code>Object</code>.
+     * @return cast expression.
+     */
+    private static String unbox(final Class<?> type, final String expr) {
+        if (!type.isPrimitive()) {
+            return "(" + typeName(type) + ") " + expr;
+        }
+        return "((" + wrapper(type).getName() + ") " + expr + ")."
+                + type.getName() + "Value()";
+    }
+
+    /**
+     * @param type
+     *            primitive type.
+     * @return wrapper class of the primitive type.
+     */
+    private static Class<?> wrapper(final Class<?> type) {
+        if (type == Integer.TYPE) {
+            return Integer.class;
+        } else if (type == Long.TYPE) {
+            return Long.class;
+        } else if (type == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (type == Double.TYPE) {
+            return Double.class;
+        } else if (type == Float.TYPE) {
+            return Float.class;
+        } else if (type == Short.TYPE) {
+            return Short.class;
+        } else if (type == Byte.TYPE) {
+            return Byte.class;
+        } else if (type == Character.TYPE) {
+            return Character.class;
+        }
+        throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+
+    /**
+     * Class loader defining generated accessor classes.
+     */
+    private static final class AccessorClassLoader extends ClassLoader {
+        /**
+         * @param parent
+         *            class loader of the action class.
+         */
+        AccessorClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        /**
+         * Defines class.
+         * 
+         * @param name
+         *            name of the class.
+         * @param bytecode
+         *            bytecode of the class.
+         * @return defined class.
+         */
+        Class<?> define(final String name, final byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
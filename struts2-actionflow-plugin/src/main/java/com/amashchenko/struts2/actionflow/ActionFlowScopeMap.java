@@ -0,0 +1,754 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeField;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeLayout;
+
+/**
+ * Action flow scope values keyed by <code>className.property</code>.
+ * <p/>
+ * Once bound to the {@link ActionFlowScopeLayout} of a compiled action flow,
+ * values of its fields are kept in slot arrays, <code>int</code>,
+ * <code>long</code>, <code>double</code> and <code>boolean</code> values in
+ * primitive arrays. The interceptor reads and writes them by slot, without
+ * hashing and boxing. Other values are kept in a map. Through the map view a
+ * <code>null</code> value of a field with a slot is the same as no value and
+ * the entry set is a read-only snapshot.
+ * <p/>
+ * Serializes in a compact format for replicated and passivated sessions:
+ * <ul>
+ * <li>a magic number and a format version header,</li>
+ * <li>a table per action class with the class name written once and the
+ * property names of that class,</li>
+ * <li>values tagged by type, strings, primitive wrappers and dates are
+ * written without class descriptors, integers as variable length numbers.
+ * Other values use Java serialization.</li>
+ * </ul>
+ * Not thread-safe, just like the map it replaces.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowScopeMap extends AbstractMap<String, Object> implements
+        Externalizable {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = -4823618302585563012L;
+
+    /** Magic number of the format. */
+    private static final int MAGIC = 0x41465343;
+
+    /** Current format version. */
+    private static final int VERSION = 1;
+
+    // value type tags
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_FALSE = 3;
+    private static final int TAG_INTEGER = 4;
+    private static final int TAG_LONG = 5;
+    private static final int TAG_SHORT = 6;
+    private static final int TAG_BYTE = 7;
+    private static final int TAG_CHARACTER = 8;
+    private static final int TAG_DOUBLE = 9;
+    private static final int TAG_FLOAT = 10;
+    private static final int TAG_DATE = 11;
+    private static final int TAG_OBJECT = 12;
+
+    /** Longest string surely fitting into modified UTF-8 limit. */
+    private static final int MAX_UTF_LENGTH = 65535 / 3;
+
+    // results of storing a field
+    static final int STORED = 1;
+    static final int UNCHANGED = 0;
+    static final int SKIPPED = -1;
+
+    /** Layout of the slots, not restored with the session. */
+    private transient ActionFlowScopeLayout layout;
+
+    // slot values by value index of the field
+    private Object[] objects;
+    private int[] ints;
+    private long[] longs;
+    private double[] doubles;
+    private boolean[] booleans;
+
+    /** Bits of slots having a value. */
+    private long[] present;
+
+    /** Number of slots having a value. */
+    private int slotValues;
+
+    /** Values without slot, created on first use. */
+    private Map<String, Object> others;
+
+    /** Creates empty flow scope. */
+    public ActionFlowScopeMap() {
+    }
+
+    /**
+     * Creates flow scope with values of given map.
+     * 
+     * @param map
+     *            values to copy.
+     */
+    public ActionFlowScopeMap(final Map<String, ?> map) {
+        putAll(map);
+    }
+
+    /**
+     * Creates empty flow scope bound to the layout.
+     * 
+     * @param layout
+     *            layout of a compiled action flow or <code>null</code>.
+     */
+    public ActionFlowScopeMap(final ActionFlowScopeLayout layout) {
+        if (layout != null) {
+            bind(layout);
+        }
+    }
+
+    /**
+     * Binds flow scope to the layout, moving values into the slots of the
+     * layout. Binding to the current layout does nothing.
+     * 
+     * @param newLayout
+     *            layout of a compiled action flow.
+     */
+    public void bind(final ActionFlowScopeLayout newLayout) {
+        if (newLayout == layout) {
+            return;
+        }
+        Map<String, Object> values = toMap();
+
+        layout = newLayout;
+        objects = new Object[layout.getValueCount(ActionFlowScopeField.Type.OBJECT)];
+        ints = new int[layout.getValueCount(ActionFlowScopeField.Type.INT)];
+        longs = new long[layout.getValueCount(ActionFlowScopeField.Type.LONG)];
+        doubles = new double[layout
+                .getValueCount(ActionFlowScopeField.Type.DOUBLE)];
+        booleans = new boolean[layout
+                .getValueCount(ActionFlowScopeField.Type.BOOLEAN)];
+        present = new long[(layout.getSlotCount() + 63) >>> 6];
+        slotValues = 0;
+        others = null;
+
+        for (Entry<String, Object> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Restores value of the field if it is <code>null</code> in the action.
+     * Fields of primitive types are never <code>null</code>, so they are not
+     * restored.
+     * 
+     * @param field
+     *            action flow scope field.
+     * @param action
+     *            action object.
+     * @throws Exception
+     *             when field cannot be accessed.
+     */
+    void restore(final ActionFlowScopeField field, final Object action)
+            throws Exception {
+        if (field.getType() != ActionFlowScopeField.Type.OBJECT
+                || field.getValue(action) != null) {
+            return;
+        }
+        if (layout != null && layout.contains(field)) {
+            if (isPresent(field.getSlot())) {
+                field.setValue(action, objects[field.getValueIndex()]);
+            }
+        } else if (others != null && others.containsKey(field.getScopeKey())) {
+            field.setValue(action, others.get(field.getScopeKey()));
+        }
+    }
+
+    /**
+     * Stores value of the field unless it is <code>null</code> or unchanged.
+     * 
+     * @param field
+     *            action flow scope field.
+     * @param action
+     *            action object.
+     * @return {@link #STORED}, {@link #UNCHANGED} or {@link #SKIPPED} for
+     *         <code>null</code> value.
+     * @throws Exception
+     *             when field cannot be accessed.
+     */
+    int store(final ActionFlowScopeField field, final Object action)
+            throws Exception {
+        if (layout == null || !layout.contains(field)) {
+            Object value = field.getValue(action);
+            if (value == null) {
+                return SKIPPED;
+            }
+            if (others == null) {
+                others = new HashMap<String, Object>();
+            } else if (isUnchanged(value, others.get(field.getScopeKey()))) {
+                return UNCHANGED;
+            }
+            others.put(field.getScopeKey(), value);
+            return STORED;
+        }
+
+        final int slot = field.getSlot();
+        final int index = field.getValueIndex();
+        final boolean stored = isPresent(slot);
+        switch (field.getType()) {
+        case INT:
+            int intValue = field.getInt(action);
+            if (stored && ints[index] == intValue) {
+                return UNCHANGED;
+            }
+            ints[index] = intValue;
+            break;
+        case LONG:
+            long longValue = field.getLong(action);
+            if (stored && longs[index] == longValue) {
+                return UNCHANGED;
+            }
+            longs[index] = longValue;
+            break;
+        case DOUBLE:
+            double doubleValue = field.getDouble(action);
+            // same as Double.equals
+            if (stored
+                    && Double.doubleToLongBits(doubles[index]) == Double
+                            .doubleToLongBits(doubleValue)) {
+                return UNCHANGED;
+            }
+            doubles[index] = doubleValue;
+            break;
+        case BOOLEAN:
+            boolean booleanValue = field.getBoolean(action);
+            if (stored && booleans[index] == booleanValue) {
+                return UNCHANGED;
+            }
+            booleans[index] = booleanValue;
+            break;
+        default:
+            Object value = field.getValue(action);
+            if (value == null) {
+                return SKIPPED;
+            }
+            if (stored && isUnchanged(value, objects[index])) {
+                return UNCHANGED;
+            }
+            objects[index] = value;
+            break;
+        }
+        if (!stored) {
+            setPresent(slot, true);
+        }
+        return STORED;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object get(Object key) {
+        ActionFlowScopeField field = slotField(key);
+        if (field != null && isPresent(field.getSlot())) {
+            return slotValue(field);
+        }
+        return others == null ? null : others.get(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(Object key) {
+        ActionFlowScopeField field = slotField(key);
+        if (field != null && isPresent(field.getSlot())) {
+            return true;
+        }
+        return others != null && others.containsKey(key);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object put(String key, Object value) {
+        Object old = get(key);
+        ActionFlowScopeField field = slotField(key);
+        if (field != null) {
+            if (others != null) {
+                others.remove(key);
+            }
+            if (value == null) {
+                clearSlot(field);
+                return old;
+            }
+            if (setSlotValue(field, value)) {
+                return old;
+            }
+            // value of another type than the field, e.g. older class version
+            clearSlot(field);
+        }
+        if (others == null) {
+            others = new HashMap<String, Object>();
+        }
+        others.put(key, value);
+        return old;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object remove(Object key) {
+        Object old = get(key);
+        ActionFlowScopeField field = slotField(key);
+        if (field != null) {
+            clearSlot(field);
+        }
+        if (others != null) {
+            others.remove(key);
+        }
+        return old;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return slotValues + (others == null ? 0 : others.size());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        if (layout != null) {
+            Arrays.fill(objects, null);
+            Arrays.fill(present, 0L);
+        }
+        slotValues = 0;
+        others = null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return Collections.unmodifiableMap(toMap()).entrySet();
+    }
+
+    /**
+     * @return copy of all values.
+     */
+    private Map<String, Object> toMap() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        if (layout != null && slotValues > 0) {
+            for (int slot = 0; slot < layout.getSlotCount(); slot++) {
+                if (isPresent(slot)) {
+                    ActionFlowScopeField field = layout.getField(slot);
+                    values.put(field.getScopeKey(), slotValue(field));
+                }
+            }
+        }
+        if (others != null) {
+            values.putAll(others);
+        }
+        return values;
+    }
+
+    /**
+     * @param key
+     *            scope key.
+     * @return field with a slot or <code>null</code>.
+     */
+    private ActionFlowScopeField slotField(final Object key) {
+        if (layout == null || !(key instanceof String)) {
+            return null;
+        }
+        return layout.getField((String) key);
+    }
+
+    /**
+     * @param slot
+     *            slot.
+     * @return whether slot has a value.
+     */
+    private boolean isPresent(final int slot) {
+        return (present[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param slot
+     *            slot.
+     * @param value
+     *            whether slot has a value.
+     */
+    private void setPresent(final int slot, final boolean value) {
+        if (isPresent(slot) != value) {
+            present[slot >>> 6] ^= 1L << slot;
+            slotValues += value ? 1 : -1;
+        }
+    }
+
+    /**
+     * @param field
+     *            field with a slot.
+     * @return boxed value of the slot.
+     */
+    private Object slotValue(final ActionFlowScopeField field) {
+        final int index = field.getValueIndex();
+        switch (field.getType()) {
+        case INT:
+            return Integer.valueOf(ints[index]);
+        case LONG:
+            return Long.valueOf(longs[index]);
+        case DOUBLE:
+            return Double.valueOf(doubles[index]);
+        case BOOLEAN:
+            return Boolean.valueOf(booleans[index]);
+        default:
+            return objects[index];
+        }
+    }
+
+    /**
+     * Sets value of the slot.
+     * 
+     * @param field
+     *            field with a slot.
+     * @param value
+     *            not <code>null</code> value.
+     * @return <code>false</code> if value does not fit the field type.
+     */
+    private boolean setSlotValue(final ActionFlowScopeField field,
+            final Object value) {
+        final int index = field.getValueIndex();
+        switch (field.getType()) {
+        case INT:
+            if (!(value instanceof Integer)) {
+                return false;
+            }
+            ints[index] = ((Integer) value).intValue();
+            break;
+        case LONG:
+            if (!(value instanceof Long)) {
+                return false;
+            }
+            longs[index] = ((Long) value).longValue();
+            break;
+        case DOUBLE:
+            if (!(value instanceof Double)) {
+                return false;
+            }
+            doubles[index] = ((Double) value).doubleValue();
+            break;
+        case BOOLEAN:
+            if (!(value instanceof Boolean)) {
+                return false;
+            }
+            booleans[index] = ((Boolean) value).booleanValue();
+            break;
+        default:
+            objects[index] = value;
+            break;
+        }
+        setPresent(field.getSlot(), true);
+        return true;
+    }
+
+    /**
+     * @param field
+     *            field with a slot.
+     */
+    private void clearSlot(final ActionFlowScopeField field) {
+        if (field.getType() == ActionFlowScopeField.Type.OBJECT) {
+            objects[field.getValueIndex()] = null;
+        }
+        setPresent(field.getSlot(), false);
+    }
+
+    /**
+     * Checks whether value of the field is the same as the one in the flow
+     * scope. Mutable objects put into the flow scope earlier may have been
+     * modified in place, so the same instance is only considered unchanged for
+     * immutable types.
+     * 
+     * @param value
+     *            current value of the field.
+     * @param scopeValue
+     *            value of the field in the flow scope.
+     * @return <code>true</code> if value does not need to be written.
+     */
+    private static boolean isUnchanged(final Object value,
+            final Object scopeValue) {
+        if (scopeValue == null) {
+            return false;
+        }
+        if (value == scopeValue) {
+            return value instanceof String || value instanceof Boolean
+                    || value instanceof Character || value instanceof Enum
+                    || value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte
+                    || value instanceof Double || value instanceof Float
+                    || value instanceof BigDecimal
+                    || value instanceof BigInteger;
+        }
+        return value.equals(scopeValue);
+    }
+
+    /** {@inheritDoc} */
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        // property names and values by class name
+        Map<String, List<Entry<String, Object>>> classes = new TreeMap<String, List<Entry<String, Object>>>();
+        for (Entry<String, Object> entry : toMap().entrySet()) {
+            String key = entry.getKey();
+            String className = key.substring(0,
+                    Math.max(key.lastIndexOf('.'), 0));
+            List<Entry<String, Object>> entries = classes.get(className);
+            if (entries == null) {
+                entries = new ArrayList<Entry<String, Object>>();
+                classes.put(className, entries);
+            }
+            entries.add(entry);
+        }
+
+        writeVarLong(out, classes.size());
+        for (Entry<String, List<Entry<String, Object>>> cls : classes
+                .entrySet()) {
+            final int offset = cls.getKey().isEmpty() ? 0 : cls.getKey()
+                    .length() + 1;
+            out.writeUTF(cls.getKey());
+            writeVarLong(out, cls.getValue().size());
+            for (Entry<String, Object> entry : cls.getValue()) {
+                out.writeUTF(entry.getKey().substring(offset));
+                writeValue(out, entry.getValue());
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void readExternal(ObjectInput in) throws IOException,
+            ClassNotFoundException {
+        if (in.readInt() != MAGIC) {
+            throw new StreamCorruptedException(
+                    "Not an action flow scope stream.");
+        }
+        int version = in.readUnsignedByte();
+        if (version > VERSION) {
+            throw new InvalidClassException(ActionFlowScopeMap.class.getName(),
+                    "Unsupported action flow scope format version " + version
+                            + ".");
+        }
+
+        // slots are bound again on first use
+        layout = null;
+        objects = null;
+        ints = null;
+        longs = null;
+        doubles = null;
+        booleans = null;
+        present = null;
+        slotValues = 0;
+        others = new HashMap<String, Object>();
+
+        long classCount = readVarLong(in);
+        for (long i = 0; i < classCount; i++) {
+            String className = in.readUTF();
+            String prefix = className.isEmpty() ? "" : className + ".";
+            long fieldCount = readVarLong(in);
+            for (long j = 0; j < fieldCount; j++) {
+                String key = prefix + in.readUTF();
+                others.put(key, readValue(in));
+            }
+        }
+    }
+
+    /**
+     * Writes value with its type tag.
+     * 
+     * @param out
+     *            output.
+     * @param value
+     *            value to write.
+     * @throws IOException
+     *             when value cannot be written.
+     */
+    private static void writeValue(final ObjectOutput out, final Object value)
+            throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String
+                && ((String) value).length() <= MAX_UTF_LENGTH) {
+            out.writeByte(TAG_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE
+                    : TAG_FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            writeVarLong(out, zigZag(((Integer) value).longValue()));
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            writeVarLong(out, zigZag(((Long) value).longValue()));
+        } else if (value instanceof Short) {
+            out.writeByte(TAG_SHORT);
+            out.writeShort(((Short) value).shortValue());
+        } else if (value instanceof Byte) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte(((Byte) value).byteValue());
+        } else if (value instanceof Character) {
+            out.writeByte(TAG_CHARACTER);
+            out.writeChar(((Character) value).charValue());
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        } else if (value instanceof Float) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat(((Float) value).floatValue());
+        } else if (value.getClass() == Date.class) {
+            // subclasses like java.sql.Timestamp carry more state
+            out.writeByte(TAG_DATE);
+            writeVarLong(out, zigZag(((Date) value).getTime()));
+        } else {
+            out.writeByte(TAG_OBJECT);
+            out.writeObject(value);
+        }
+    }
+
+    /**
+     * Reads value written by {@link #writeValue(ObjectOutput, Object)}.
+     * 
+     * @param in
+     *            input.
+     * @return value.
+     * @throws IOException
+     *             when value cannot be read.
+     * @throws ClassNotFoundException
+     *             when class of the value cannot be found.
+     */
+    private static Object readValue(final ObjectInput in) throws IOException,
+            ClassNotFoundException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_STRING:
+            return in.readUTF();
+        case TAG_TRUE:
+            return Boolean.TRUE;
+        case TAG_FALSE:
+            return Boolean.FALSE;
+        case TAG_INTEGER:
+            return Integer.valueOf((int) unZigZag(readVarLong(in)));
+        case TAG_LONG:
+            return Long.valueOf(unZigZag(readVarLong(in)));
+        case TAG_SHORT:
+            return Short.valueOf(in.readShort());
+        case TAG_BYTE:
+            return Byte.valueOf(in.readByte());
+        case TAG_CHARACTER:
+            return Character.valueOf(in.readChar());
+        case TAG_DOUBLE:
+            return Double.valueOf(in.readDouble());
+        case TAG_FLOAT:
+            return Float.valueOf(in.readFloat());
+        case TAG_DATE:
+            return new Date(unZigZag(readVarLong(in)));
+        case TAG_OBJECT:
+            return in.readObject();
+        default:
+            throw new StreamCorruptedException(
+                    "Unknown action flow scope value tag " + tag + ".");
+        }
+    }
+
+    /**
+     * Writes not negative number using 7 bits per byte.
+     * 
+     * @param out
+     *            output.
+     * @param value
+     *            number to write.
+     * @throws IOException
+     *             when number cannot be written.
+     */
+    private static void writeVarLong(final ObjectOutput out, long value)
+            throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads number written by {@link #writeVarLong(ObjectOutput, long)}.
+     * 
+     * @param in
+     *            input.
+     * @return number.
+     * @throws IOException
+     *             when number cannot be read.
+     */
+    private static long readVarLong(final ObjectInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length number.");
+    }
+
+    /**
+     * Maps signed number to not negative one keeping small magnitudes small.
+     * 
+     * @param value
+     *            signed number.
+     * @return encoded number.
+     */
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverts {@link #zigZag(long)}.
+     * 
+     * @param value
+     *            encoded number.
+     * @return signed number.
+     */
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
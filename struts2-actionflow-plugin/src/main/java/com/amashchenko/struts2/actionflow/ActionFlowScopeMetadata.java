@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.opensymphony.xwork2.util.logging.Logger;
+import com.opensymphony.xwork2.util.logging.LoggerFactory;
+
+/**
+ * Action flow scope fields of one action class. Computed once per class and
+ * shared by all packages and containers.
+ * <p/>
+ * Metadata is cached by weak class keys and softly referenced. It does not
+ * keep a strong reference to the class, and metadata of the classes of an
+ * undeployed application is removed by {@link #clearClassLoader(ClassLoader)},
+ * so the classes and their class loader can be collected.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+final class ActionFlowScopeMetadata {
+
+    /** Logger. */
+    public static final Logger LOG = LoggerFactory
+            .getLogger(ActionFlowScopeMetadata.class);
+
+    /** Metadata by action class. */
+    private static final Map<Class<?>, SoftReference<ActionFlowScopeMetadata>> CACHE = new WeakHashMap<Class<?>, SoftReference<ActionFlowScopeMetadata>>();
+
+    /** Lookups of metadata. */
+    private static final AtomicLong LOOKUPS = new AtomicLong();
+
+    /** Classes introspected because they were not in the cache. */
+    private static final AtomicLong INTROSPECTIONS = new AtomicLong();
+
+    /** Time spent introspecting classes. */
+    private static final AtomicLong INTROSPECTION_NANOS = new AtomicLong();
+
+    /** Unmodifiable list of the flow scope fields, may be empty. */
+    private final List<PropertyDescriptor> propertyDescriptors;
+
+    /** Accessor of the fields, created on first use. */
+    private volatile ActionFlowScopeAccessor accessor;
+
+    /**
+     * @param propertyDescriptors
+     *            unmodifiable list of the flow scope fields.
+     */
+    private ActionFlowScopeMetadata(
+            final List<PropertyDescriptor> propertyDescriptors) {
+        this.propertyDescriptors = propertyDescriptors;
+    }
+
+    /**
+     * Gets metadata of the action class, introspecting the class if it is not
+     * cached.
+     * 
+     * @param actionClass
+     *            action class.
+     * @return metadata of the class.
+     * @throws IntrospectionException
+     *             when class cannot be introspected.
+     */
+    static ActionFlowScopeMetadata forClass(final Class<?> actionClass)
+            throws IntrospectionException {
+        LOOKUPS.incrementAndGet();
+        ActionFlowScopeMetadata metadata = cached(actionClass);
+        if (metadata == null) {
+            long start = System.nanoTime();
+            ActionFlowScopeMetadata created = new ActionFlowScopeMetadata(
+                    introspect(actionClass));
+            INTROSPECTIONS.incrementAndGet();
+            INTROSPECTION_NANOS.addAndGet(System.nanoTime() - start);
+
+            synchronized (CACHE) {
+                metadata = cached(actionClass);
+                if (metadata == null) {
+                    metadata = created;
+                    CACHE.put(actionClass,
+                            new SoftReference<ActionFlowScopeMetadata>(
+                                    metadata));
+                }
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * @param actionClass
+     *            action class.
+     * @return cached metadata or <code>null</code>.
+     */
+    private static ActionFlowScopeMetadata cached(final Class<?> actionClass) {
+        SoftReference<ActionFlowScopeMetadata> ref;
+        synchronized (CACHE) {
+            ref = CACHE.get(actionClass);
+        }
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * Removes metadata of the classes loaded by the class loader or by its
+     * descendants, e.g. when an application is undeployed.
+     * 
+     * @param classLoader
+     *            class loader.
+     */
+    static void clearClassLoader(final ClassLoader classLoader) {
+        if (classLoader == null) {
+            return;
+        }
+        synchronized (CACHE) {
+            for (Iterator<Class<?>> it = CACHE.keySet().iterator(); it
+                    .hasNext();) {
+                Class<?> clazz = it.next();
+                if (isUnderClassLoader(clazz.getClassLoader(), classLoader)) {
+                    it.remove();
+                    Introspector.flushFromCaches(clazz);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param candidate
+     *            class loader to check.
+     * @param parent
+     *            parent class loader.
+     * @return whether the candidate is the parent or its descendant.
+     */
+    private static boolean isUnderClassLoader(final ClassLoader candidate,
+            final ClassLoader parent) {
+        for (ClassLoader cl = candidate; cl != null; cl = cl.getParent()) {
+            if (cl == parent) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param actionClass
+     *            action class.
+     * @return whether metadata of the class is cached.
+     */
+    static boolean isCached(final Class<?> actionClass) {
+        return cached(actionClass) != null;
+    }
+
+    /**
+     * Finds flow scope fields of the class. Without field access only fields
+     * declared in the class itself and having a getter and a setter are
+     * included. With field access annotated fields of the class and its
+     * superclasses are included, a field hides fields of the same name in
+     * superclasses.
+     * 
+     * @param clazz
+     *            action class.
+     * @return unmodifiable list of the fields.
+     * @throws IntrospectionException
+     *             when class cannot be introspected.
+     */
+    private static List<PropertyDescriptor> introspect(final Class<?> clazz)
+            throws IntrospectionException {
+        ActionFlowScope classScope = clazz.getAnnotation(ActionFlowScope.class);
+        if (classScope == null) {
+            return Collections.emptyList();
+        }
+
+        List<PropertyDescriptor> pds = new ArrayList<PropertyDescriptor>();
+        if (classScope.fieldAccess()) {
+            Map<String, PropertyDescriptor> fields = new TreeMap<String, PropertyDescriptor>();
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c
+                    .getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (field.isAnnotationPresent(ActionFlowScope.class)
+                            && !Modifier.isStatic(modifiers)
+                            && !Modifier.isFinal(modifiers)
+                            && !fields.containsKey(field.getName())) {
+                        fields.put(field.getName(),
+                                new FieldPropertyDescriptor(field));
+                    }
+                }
+            }
+            pds.addAll(fields.values());
+        } else {
+            for (PropertyDescriptor pd : Introspector.getBeanInfo(clazz)
+                    .getPropertyDescriptors()) {
+                Field field = null;
+                try {
+                    field = clazz.getDeclaredField(pd.getName());
+                } catch (NoSuchFieldException nsfe) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("In introspect", nsfe);
+                    }
+                }
+
+                if (field != null
+                        && field.isAnnotationPresent(ActionFlowScope.class)
+                        && pd.getReadMethod() != null
+                        && pd.getWriteMethod() != null) {
+                    pds.add(pd);
+                }
+            }
+        }
+        return Collections.unmodifiableList(pds);
+    }
+
+    /**
+     * @return number of metadata lookups.
+     */
+    static long getLookups() {
+        return LOOKUPS.get();
+    }
+
+    /**
+     * @return number of introspected classes.
+     */
+    static long getIntrospections() {
+        return INTROSPECTIONS.get();
+    }
+
+    /**
+     * @return time spent introspecting classes in nanoseconds.
+     */
+    static long getIntrospectionNanos() {
+        return INTROSPECTION_NANOS.get();
+    }
+
+    /**
+     * Gets accessor of the fields, creating it on first use.
+     * 
+     * @param actionClass
+     *            action class of this metadata.
+     * @return accessor of the fields.
+     */
+    ActionFlowScopeAccessor getAccessor(final Class<?> actionClass) {
+        ActionFlowScopeAccessor result = accessor;
+        if (result == null) {
+            // racing threads create equal accessors, any of them will do
+            result = ActionFlowScopeAccessor.create(actionClass,
+                    propertyDescriptors);
+            accessor = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the propertyDescriptors
+     */
+    List<PropertyDescriptor> getPropertyDescriptors() {
+        return propertyDescriptors;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable action flow scope as of a completed step. A snapshot keeps only
+ * values changed since the snapshot of the previous step and shares the
+ * others with it, so memory is proportional to the changes.
+ * <p/>
+ * Values are copied when they are kept and when the snapshot is restored,
+ * so actions changing a collection or a bean of the flow scope do not change
+ * snapshots. Immutable values are shared, other values must be serializable
+ * and are copied by serialization.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+final class ActionFlowScopeSnapshot extends AbstractMap<String, Object>
+        implements Serializable {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = 4307561203961844817L;
+
+    /** Longest chain of snapshots, a longer one is flattened. */
+    private static final int MAX_DEPTH = 16;
+
+    /** Snapshot of the previous step or <code>null</code>. */
+    private final ActionFlowScopeSnapshot parent;
+
+    /** Values changed since the parent snapshot. */
+    private final Map<String, Object> changes;
+
+    /** Number of values. */
+    private final int size;
+
+    /** Number of parent snapshots. */
+    private final int depth;
+
+    /**
+     * @param parent
+     *            snapshot of the previous step or <code>null</code>.
+     * @param changes
+     *            values changed since the parent snapshot.
+     * @param size
+     *            number of values.
+     */
+    private ActionFlowScopeSnapshot(final ActionFlowScopeSnapshot parent,
+            final Map<String, Object> changes, final int size) {
+        this.parent = parent;
+        this.changes = changes;
+        this.size = size;
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    /**
+     * Creates snapshot of the flow scope.
+     * 
+     * @param parent
+     *            snapshot of the previous step or <code>null</code>.
+     * @param scope
+     *            flow scope or <code>null</code> if there is none.
+     * @return snapshot sharing unchanged values with the parent.
+     */
+    static ActionFlowScopeSnapshot of(final ActionFlowScopeSnapshot parent,
+            final Map<String, Object> scope) {
+        if (scope == null || scope.isEmpty()) {
+            return new ActionFlowScopeSnapshot(null,
+                    Collections.<String, Object> emptyMap(), 0);
+        }
+        if (scope == parent) {
+            return parent;
+        }
+
+        if (parent != null && parent.depth < MAX_DEPTH) {
+            Map<String, Object> changes = new HashMap<String, Object>();
+            int shared = 0;
+            for (Entry<String, Object> entry : scope.entrySet()) {
+                if (parent.containsKey(entry.getKey())) {
+                    shared++;
+                    Object old = parent.get(entry.getKey());
+                    if (old == entry.getValue()
+                            || (old != null && old.equals(entry.getValue()))) {
+                        continue;
+                    }
+                }
+                changes.put(entry.getKey(),
+                        copy(entry.getKey(), entry.getValue()));
+            }
+            // values are only added or changed, otherwise copy them all
+            if (shared == parent.size()) {
+                return new ActionFlowScopeSnapshot(parent, changes,
+                        scope.size());
+            }
+        }
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (Entry<String, Object> entry : scope.entrySet()) {
+            values.put(entry.getKey(), copy(entry.getKey(), entry.getValue()));
+        }
+        return new ActionFlowScopeSnapshot(null, values, scope.size());
+    }
+
+    /**
+     * Creates flow scope with copies of the values of this snapshot.
+     * 
+     * @return modifiable flow scope.
+     */
+    Map<String, Object> restore() {
+        Map<String, Object> scope = new HashMap<String, Object>();
+        for (Entry<String, Object> entry : entrySet()) {
+            scope.put(entry.getKey(), copy(entry.getKey(), entry.getValue()));
+        }
+        return scope;
+    }
+
+    /**
+     * Copies value of the flow scope. Immutable values are not copied.
+     * 
+     * @param key
+     *            flow scope key of the value.
+     * @param value
+     *            value to copy.
+     * @return copy of the value.
+     * @throws IllegalArgumentException
+     *             if mutable value cannot be copied by serialization.
+     */
+    private static Object copy(final String key, final Object value) {
+        if (value == null || value instanceof String
+                || value instanceof Boolean || value instanceof Character
+                || value instanceof Byte || value instanceof Short
+                || value instanceof Integer || value instanceof Long
+                || value instanceof Float || value instanceof Double
+                || value instanceof Enum<?> || value instanceof Class<?>
+                || value.getClass() == BigInteger.class
+                || value.getClass() == BigDecimal.class) {
+            return value;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return new ValueInputStream(new ByteArrayInputStream(
+                    bytes.toByteArray()), value.getClass().getClassLoader())
+                    .readObject();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Value of '" + key
+                    + "' is neither immutable nor serializable, it cannot be"
+                    + " kept in a flow scope snapshot.", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Value of '" + key
+                    + "' cannot be copied into a flow scope snapshot.", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object get(final Object key) {
+        for (ActionFlowScopeSnapshot s = this; s != null; s = s.parent) {
+            if (s.changes.containsKey(key)) {
+                return s.changes.get(key);
+            }
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(final Object key) {
+        for (ActionFlowScopeSnapshot s = this; s != null; s = s.parent) {
+            if (s.changes.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        List<ActionFlowScopeSnapshot> chain = new ArrayList<ActionFlowScopeSnapshot>();
+        for (ActionFlowScopeSnapshot s = this; s != null; s = s.parent) {
+            chain.add(s);
+        }
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            values.putAll(chain.get(i).changes);
+        }
+        return Collections.unmodifiableMap(values).entrySet();
+    }
+
+    /**
+     * @return number of values kept by this snapshot itself.
+     */
+    int getChangeCount() {
+        return changes.size();
+    }
+
+    /**
+     * Reads copied values with the class loader of the value class.
+     */
+    private static final class ValueInputStream extends ObjectInputStream {
+        /** Class loader of the value class or <code>null</code>. */
+        private final ClassLoader classLoader;
+
+        /**
+         * @param in
+         *            serialized value.
+         * @param classLoader
+         *            class loader of the value class or <code>null</code>.
+         * @throws IOException
+         *             if stream header cannot be read.
+         */
+        private ValueInputStream(final InputStream in,
+                final ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    // primitive types and classes of other loaders
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Container scoped counters of the action flow plug-in. Obtain it from the
+ * container to monitor flow scope session writes and abandoned flows.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowStatistics {
+
+    /** Flow scope session attribute writes. */
+    private final AtomicLong scopeWrites = new AtomicLong();
+
+    /** Flow scope session attribute writes skipped because nothing changed. */
+    private final AtomicLong skippedScopeWrites = new AtomicLong();
+
+    /** Changed flow scope fields. */
+    private final AtomicLong changedFields = new AtomicLong();
+
+    /** Unchanged flow scope fields not written to the flow scope. */
+    private final AtomicLong unchangedFields = new AtomicLong();
+
+    /** Derived flow scope fields removed because their inputs changed. */
+    private final AtomicLong invalidatedFields = new AtomicLong();
+
+    /** Abandoned flows by package name and last completed step. */
+    private final ConcurrentMap<String, AtomicLong> abandonedFlows = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Records storing action flow scope fields of one request.
+     * 
+     * @param changed
+     *            number of changed fields.
+     * @param unchanged
+     *            number of unchanged fields.
+     */
+    public void scopeStored(final int changed, final int unchanged) {
+        if (changed > 0) {
+            scopeWrites.incrementAndGet();
+            changedFields.addAndGet(changed);
+        } else {
+            skippedScopeWrites.incrementAndGet();
+        }
+        if (unchanged > 0) {
+            unchangedFields.addAndGet(unchanged);
+        }
+    }
+
+    /**
+     * Records derived action flow scope fields removed by one request.
+     * 
+     * @param count
+     *            number of removed fields.
+     */
+    public void fieldsInvalidated(final int count) {
+        invalidatedFields.addAndGet(count);
+    }
+
+    /**
+     * Records flow abandoned after given step.
+     * 
+     * @param packageName
+     *            name of the package of the flow.
+     * @param stepAction
+     *            last completed step action.
+     */
+    public void flowAbandoned(final String packageName, final String stepAction) {
+        String key = packageName + "/" + stepAction;
+        AtomicLong counter = abandonedFlows.get(key);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = abandonedFlows.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+        scopeWrites.set(0);
+        skippedScopeWrites.set(0);
+        changedFields.set(0);
+        unchangedFields.set(0);
+        invalidatedFields.set(0);
+        abandonedFlows.clear();
+    }
+
+    /**
+     * @return the scopeWrites
+     */
+    public long getScopeWrites() {
+        return scopeWrites.get();
+    }
+
+    /**
+     * @return the skippedScopeWrites
+     */
+    public long getSkippedScopeWrites() {
+        return skippedScopeWrites.get();
+    }
+
+    /**
+     * @return the changedFields
+     */
+    public long getChangedFields() {
+        return changedFields.get();
+    }
+
+    /**
+     * @return the unchangedFields
+     */
+    public long getUnchangedFields() {
+        return unchangedFields.get();
+    }
+
+    /**
+     * @return the invalidatedFields
+     */
+    public long getInvalidatedFields() {
+        return invalidatedFields.get();
+    }
+
+    /**
+     * @return number of abandoned flows by <code>package/stepAction</code>
+     *         key, the step is the last completed one.
+     */
+    public Map<String, Long> getAbandonedFlows() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Entry<String, AtomicLong> entry : abandonedFlows.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ActionFlowStatistics ");
+        sb.append("scopeWrites:").append(getScopeWrites()).append(", ");
+        sb.append("skippedScopeWrites:").append(getSkippedScopeWrites())
+                .append(", ");
+        sb.append("changedFields:").append(getChangedFields()).append(", ");
+        sb.append("unchangedFields:").append(getUnchangedFields())
+                .append(", ");
+        sb.append("invalidatedFields:").append(getInvalidatedFields())
+                .append(", ");
+        sb.append("abandonedFlows:").append(getAbandonedFlows());
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -26,7 +26,9 @@ import com.amashchenko.struts2.actionflow.entities.ActionFlowStepsData;
  */
 public interface ActionFlowStepsAware {
     /**
-     * Sets the action flow steps data in the implementing class.
+     * Sets the action flow steps data in the implementing class. The steps
+     * data is shared between requests and read-only, use
+     * {@link ActionFlowStepsData#copy()} to change it.
      * 
      * @param stepsData
      *            action flow steps data.
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.IntrospectionException;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+
+/**
+ * Property descriptor of action flow scope field accessed directly, without
+ * getter and setter.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+final class FieldPropertyDescriptor extends PropertyDescriptor {
+
+    /** Field. */
+    private final Field field;
+
+    /**
+     * @param field
+     *            field, made accessible.
+     * @throws IntrospectionException
+     *             when descriptor cannot be created.
+     */
+    FieldPropertyDescriptor(final Field field) throws IntrospectionException {
+        super(field.getName(), null, null);
+        field.setAccessible(true);
+        this.field = field;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized Class<?> getPropertyType() {
+        return field.getType();
+    }
+
+    /**
+     * @return the field
+     */
+    Field getField() {
+        return field;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.lang.reflect.Field;
+
+/**
+ * Action flow scope accessor reading and writing fields directly. Fields can
+ * be private and declared in superclasses.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+final class FieldScopeAccessor extends ActionFlowScopeAccessor {
+
+    private final Field[] fields;
+
+    /**
+     * @param pds
+     *            property descriptors of the fields.
+     */
+    FieldScopeAccessor(final FieldPropertyDescriptor[] pds) {
+        fields = new Field[pds.length];
+        for (int i = 0; i < pds.length; i++) {
+            fields[i] = pds[i].getField();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object get(final Object action, final int field) throws Exception {
+        return fields[field].get(action);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void set(final Object action, final int field, final Object value)
+            throws Exception {
+        fields[field].set(action, value);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getInt(final Object action, final int field) throws Exception {
+        return fields[field].getInt(action);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getLong(final Object action, final int field) throws Exception {
+        return fields[field].getLong(action);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getDouble(final Object action, final int field)
+            throws Exception {
+        return fields[field].getDouble(action);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean getBoolean(final Object action, final int field)
+            throws Exception {
+        return fields[field].getBoolean(action);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.Map;
+
+/**
+ * Storage of the action flow state, i.e. the previous flow action and the flow
+ * scope. Implementations are container beans selected by the
+ * {@value ActionFlowConstants#SCOPE_STORE} constant and must be thread-safe.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public interface FlowScopeStore {
+
+    /**
+     * Gets value of the action flow state.
+     * 
+     * @param session
+     *            session map of the current request.
+     * @param key
+     *            key of the value.
+     * @return value or <code>null</code> if there is none.
+     */
+    Object get(Map<String, Object> session, String key);
+
+    /**
+     * Puts value of the action flow state.
+     * 
+     * @param session
+     *            session map of the current request.
+     * @param key
+     *            key of the value.
+     * @param value
+     *            value to put, <code>null</code> removes the value.
+     */
+    void put(Map<String, Object> session, String key, Object value);
+}
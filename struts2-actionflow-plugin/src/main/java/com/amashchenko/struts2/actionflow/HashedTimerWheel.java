@@ -0,0 +1,237 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.opensymphony.xwork2.util.logging.Logger;
+import com.opensymphony.xwork2.util.logging.LoggerFactory;
+
+/**
+ * Hashed timer wheel running tasks after a delay with tick precision.
+ * Scheduling is a queue insert and each tick only visits one bucket, so
+ * the cost does not depend on the number of pending tasks. Tasks run on a
+ * single daemon thread which is started on first schedule.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+final class HashedTimerWheel {
+
+    /** Logger. */
+    public static final Logger LOG = LoggerFactory
+            .getLogger(HashedTimerWheel.class);
+
+    /** Tick duration in nanoseconds. */
+    private final long tickNanos;
+
+    /** Name of the worker thread. */
+    private final String threadName;
+
+    /** Buckets, guarded by itself. */
+    private final List<Timeout>[] buckets;
+
+    /** Tasks scheduled since the last tick. */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+
+    /** Worker thread, guarded by this. */
+    private Thread worker;
+
+    /**
+     * @param tickMillis
+     *            tick duration in milliseconds.
+     * @param wheelSize
+     *            number of buckets, power of two.
+     * @param threadName
+     *            name of the worker thread.
+     */
+    HashedTimerWheel(final long tickMillis, final int wheelSize,
+            final String threadName) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException(
+                    "Wheel size must be a power of two.");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.threadName = threadName;
+        this.buckets = newBuckets(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<Timeout>();
+        }
+    }
+
+    /**
+     * Creates array of buckets.
+     * 
+     * @param size
+     *            number of buckets.
+     * @return array of not initialized buckets.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Timeout>[] newBuckets(final int size) {
+        return (List<Timeout>[]) new List<?>[size];
+    }
+
+    /**
+     * Schedules task.
+     * 
+     * @param task
+     *            task to run.
+     * @param delayMillis
+     *            delay in milliseconds.
+     */
+    void schedule(final Runnable task, final long delayMillis) {
+        pending.add(new Timeout(task, System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(delayMillis)));
+        start();
+    }
+
+    /**
+     * Starts worker thread if it is not running.
+     */
+    private synchronized void start() {
+        if (worker == null) {
+            worker = new Thread(new Worker(), threadName);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops worker thread. Not yet run tasks are kept and will run if
+     * something is scheduled again.
+     */
+    void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+            worker = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return whether this thread is the current worker.
+     */
+    private synchronized boolean isWorker() {
+        return worker == Thread.currentThread();
+    }
+
+    /**
+     * Scheduled task.
+     */
+    private static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+
+        private Timeout(final Runnable task, final long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Advances the wheel once per tick.
+     */
+    private final class Worker implements Runnable {
+
+        /** Mask of the bucket index. */
+        private final int mask = buckets.length - 1;
+
+        /** {@inheritDoc} */
+        public void run() {
+            final long start = System.nanoTime();
+            long tick = 0;
+            while (isWorker()) {
+                // sleep rounds to milliseconds and may end before the tick,
+                // a bucket expired early would keep its tasks a whole round
+                final long tickEnd = start + (tick + 1) * tickNanos;
+                long sleep;
+                try {
+                    while ((sleep = tickEnd - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.sleep(sleep);
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                // stopped worker may still be draining
+                synchronized (buckets) {
+                    transferPending(start, tick);
+                    expire(buckets[(int) (tick & mask)], System.nanoTime());
+                }
+                tick++;
+            }
+
+            // keep not run tasks for the next worker
+            synchronized (buckets) {
+                for (List<Timeout> bucket : buckets) {
+                    pending.addAll(bucket);
+                    bucket.clear();
+                }
+            }
+        }
+
+        /**
+         * Moves pending tasks into their buckets.
+         * 
+         * @param start
+         *            start time of the worker.
+         * @param tick
+         *            current tick.
+         */
+        private void transferPending(final long start, final long tick) {
+            Timeout timeout;
+            while ((timeout = pending.poll()) != null) {
+                long ticks = Math.max((timeout.deadline - start) / tickNanos,
+                        tick);
+                timeout.rounds = (ticks - tick) / buckets.length;
+                buckets[(int) (ticks & mask)].add(timeout);
+            }
+        }
+
+        /**
+         * Runs due tasks of the bucket.
+         * 
+         * @param bucket
+         *            bucket of the current tick.
+         * @param now
+         *            current time.
+         */
+        private void expire(final List<Timeout> bucket, final long now) {
+            for (Iterator<Timeout> it = bucket.iterator(); it.hasNext();) {
+                Timeout timeout = it.next();
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                } else if (timeout.deadline <= now) {
+                    it.remove();
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        LOG.warn("In timer task", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.opensymphony.xwork2.inject.Inject;
+
+/**
+ * Flow scope store keeping action flow state on the heap. The session only
+ * holds a short flow id under {@value #FLOW_ID_KEY} key.
+ * <p/>
+ * The number of stored flows is bounded, least recently used flows are
+ * evicted first. Flows not accessed for longer than time to live are
+ * expired. An evicted or expired flow starts from the beginning.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class HeapFlowScopeStore implements FlowScopeStore {
+
+    /** Session key of the flow id. */
+    public static final String FLOW_ID_KEY = "actionFlowId";
+
+    /** Default maximum number of stored flows. */
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** Default time to live in seconds. */
+    private static final long DEFAULT_TIME_TO_LIVE = 1800;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long timeToLive = TimeUnit.SECONDS.toMillis(DEFAULT_TIME_TO_LIVE);
+
+    /** Flows by id in access order, guarded by itself. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 6911403525328419423L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxEntries) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // metrics, guarded by entries
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /** {@inheritDoc} */
+    public Object get(final Map<String, Object> session, final String key) {
+        Object id = session.get(FLOW_ID_KEY);
+        if (id == null) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = getEntry(id.toString(), false);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.values.get(key);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void put(final Map<String, Object> session, final String key,
+            final Object value) {
+        Object id = session.get(FLOW_ID_KEY);
+        if (value == null) {
+            if (id != null) {
+                Entry entry = getEntry(id.toString(), false);
+                if (entry != null) {
+                    entry.values.remove(key);
+                }
+            }
+        } else {
+            if (id == null) {
+                id = UUID.randomUUID().toString();
+                session.put(FLOW_ID_KEY, id);
+            }
+            getEntry(id.toString(), true).values.put(key, value);
+        }
+    }
+
+    /**
+     * Gets flow entry removing expired entries.
+     * 
+     * @param id
+     *            flow id.
+     * @param create
+     *            whether to create entry if there is none.
+     * @return flow entry or <code>null</code>.
+     */
+    private Entry getEntry(final String id, final boolean create) {
+        final long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(id);
+            if (entry != null && now - entry.lastAccess > timeToLive) {
+                entries.remove(id);
+                expirations++;
+                entry = null;
+            }
+
+            if (entry == null && create) {
+                removeExpired(now);
+                entry = new Entry();
+                entries.put(id, entry);
+            }
+
+            if (entry != null) {
+                entry.lastAccess = now;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Removes expired entries starting from the least recently used one.
+     * 
+     * @param now
+     *            current time.
+     */
+    private void removeExpired(final long now) {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (now - it.next().lastAccess > timeToLive) {
+                it.remove();
+                expirations++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param value
+     *            maximum number of stored flows.
+     */
+    @Inject(value = ActionFlowConstants.HEAP_STORE_MAX_ENTRIES, required = false)
+    public void setMaxEntries(String value) {
+        int max = Integer.parseInt(value);
+        if (max < 1) {
+            throw new IllegalArgumentException(
+                    ActionFlowConstants.HEAP_STORE_MAX_ENTRIES
+                            + " must be positive.");
+        }
+        synchronized (entries) {
+            this.maxEntries = max;
+        }
+    }
+
+    /**
+     * @param value
+     *            time to live of not accessed flows in seconds.
+     */
+    @Inject(value = ActionFlowConstants.HEAP_STORE_TIME_TO_LIVE, required = false)
+    public void setTimeToLive(String value) {
+        synchronized (entries) {
+            this.timeToLive = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        }
+    }
+
+    /**
+     * @return number of stored flows.
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return number of reads of stored flows.
+     */
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /**
+     * @return number of reads of missing or expired flows.
+     */
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /**
+     * @return number of flows evicted because of the size bound.
+     */
+    public long getEvictions() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    /**
+     * @return number of expired flows.
+     */
+    public long getExpirations() {
+        synchronized (entries) {
+            return expirations;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        synchronized (entries) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{HeapFlowScopeStore ");
+            sb.append("size:").append(entries.size()).append(", ");
+            sb.append("hits:").append(hits).append(", ");
+            sb.append("misses:").append(misses).append(", ");
+            sb.append("evictions:").append(evictions).append(", ");
+            sb.append("expirations:").append(expirations);
+            sb.append("}");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Stored flow.
+     */
+    private static final class Entry {
+        /** Values of the flow. */
+        private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<String, Object>();
+
+        /** Last access time, guarded by entries. */
+        private long lastAccess;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+
+/**
+ * Action flow scope accessor invoking getters and setters through reflection.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+final class ReflectionScopeAccessor extends ActionFlowScopeAccessor {
+
+    /** Arguments of the getter invocation. */
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Method[] getters;
+    private final Method[] setters;
+
+    /**
+     * @param pds
+     *            property descriptors of the fields.
+     */
+    ReflectionScopeAccessor(final PropertyDescriptor[] pds) {
+        getters = new Method[pds.length];
+        setters = new Method[pds.length];
+        for (int i = 0; i < pds.length; i++) {
+            getters[i] = pds[i].getReadMethod();
+            setters[i] = pds[i].getWriteMethod();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object get(final Object action, final int field) throws Exception {
+        return getters[field].invoke(action, NO_ARGS);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void set(final Object action, final int field, final Object value)
+            throws Exception {
+        setters[field].invoke(action, value);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.Map;
+
+/**
+ * Default flow scope store keeping action flow state in the session.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class SessionFlowScopeStore implements FlowScopeStore {
+
+    /** {@inheritDoc} */
+    public Object get(final Map<String, Object> session, final String key) {
+        return session.get(key);
+    }
+
+    /** {@inheritDoc} */
+    public void put(final Map<String, Object> session, final String key,
+            final Object value) {
+        session.put(key, value);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.entities;
+
+import java.beans.PropertyDescriptor;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled action flow configuration of one package. Instances are immutable
+ * and shared between all interceptor instances serving the package.
+ * <p/>
+ * Steps are addressed by integer indexes, index <code>0</code> is the
+ * <code>firstFlowAction</code> and indexes of actual steps start from
+ * <code>1</code>. Route table maps any action name of the flow to its role and
+ * step index in one lookup.
+ *
+ * @author Aleksandr Mashchenko
+ *
+ */
+public class ActionFlowConfig {
+    /** Name of the package. */
+    private final String packageName;
+
+    /** Action flow map. */
+    private final Map<String, ActionFlowStepConfig> flowMap;
+
+    /** Action flow scope fields. */
+    private final Map<String, List<PropertyDescriptor>> flowScopeFields;
+
+    /** Action flow steps data. */
+    private final ActionFlowStepsData stepsData;
+
+    /** Action flow steps data by active step index. */
+    private final ActionFlowStepsData[] stepsDataByStep;
+
+    /** Action flow scope fields with precomputed keys by class name. */
+    private final Map<String, ActionFlowScopeField[]> scopeFields;
+
+    /** Slots of the action flow scope fields. */
+    private final ActionFlowScopeLayout scopeLayout;
+
+    /** Step action names by step index. */
+    private final String[] stepActions;
+
+    /** View action names by step index. */
+    private final String[] viewActions;
+
+    /** Next step indexes by step index, <code>-1</code> for none. */
+    private final int[] nextSteps;
+
+    /** Previous step indexes by step index. */
+    private final int[] prevSteps;
+
+    /** Routes by action name. */
+    private final Map<String, ActionFlowRoute> routes;
+
+    /** Precomputed JSON step navigation fragments. */
+    private final ActionFlowJsonFragments jsonFragments;
+
+    /**
+     * @param packageName
+     *            name of the package.
+     * @param flowMap
+     *            unmodifiable action flow map.
+     * @param flowScopeFields
+     *            unmodifiable action flow scope fields map.
+     * @param stepsData
+     *            action flow steps data.
+     * @param stepsDataByStep
+     *            action flow steps data by active step index.
+     * @param scopeFields
+     *            unmodifiable action flow scope fields by class name.
+     * @param scopeLayout
+     *            slots of the action flow scope fields.
+     * @param stepActions
+     *            step action names by step index.
+     * @param viewActions
+     *            view action names by step index.
+     * @param nextSteps
+     *            next step indexes by step index.
+     * @param prevSteps
+     *            previous step indexes by step index.
+     * @param routes
+     *            unmodifiable routes by action name.
+     */
+    public ActionFlowConfig(final String packageName,
+            final Map<String, ActionFlowStepConfig> flowMap,
+            final Map<String, List<PropertyDescriptor>> flowScopeFields,
+            final ActionFlowStepsData stepsData,
+            final ActionFlowStepsData[] stepsDataByStep,
+            final Map<String, ActionFlowScopeField[]> scopeFields,
+            final ActionFlowScopeLayout scopeLayout,
+            final String[] stepActions,
+            final String[] viewActions, final int[] nextSteps,
+            final int[] prevSteps, final Map<String, ActionFlowRoute> routes) {
+        this.packageName = packageName;
+        this.flowMap = flowMap;
+        this.flowScopeFields = flowScopeFields;
+        this.stepsData = stepsData;
+        this.stepsDataByStep = stepsDataByStep.clone();
+        this.scopeFields = scopeFields;
+        this.scopeLayout = scopeLayout;
+        this.stepActions = stepActions.clone();
+        this.viewActions = viewActions.clone();
+        this.nextSteps = nextSteps.clone();
+        this.prevSteps = prevSteps.clone();
+        this.routes = routes;
+        this.jsonFragments = new ActionFlowJsonFragments(this.stepActions,
+                this.viewActions, stepsData);
+    }
+
+    /**
+     * Gets route of the action.
+     * 
+     * @param actionName
+     *            name of the action.
+     * @return route of the action or <code>null</code> if the action is not a
+     *         part of action flow.
+     */
+    public ActionFlowRoute getRoute(final String actionName) {
+        return routes.get(actionName);
+    }
+
+    /**
+     * Gets index of the flow step.
+     * 
+     * @param stepAction
+     *            name of the step action or <code>firstFlowAction</code>.
+     * @return step index or <code>-1</code> if there is no such step.
+     */
+    public int getStepIndex(final String stepAction) {
+        if (stepAction == null) {
+            return -1;
+        }
+        if (stepActions.length > 0 && stepActions[0].equals(stepAction)) {
+            return 0;
+        }
+        ActionFlowRoute route = routes.get(stepAction);
+        if (route != null && route.getRole() == ActionFlowRoute.Role.FLOW_STEP) {
+            return route.getStep();
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of steps including <code>firstFlowAction</code>.
+     */
+    public int getStepCount() {
+        return stepActions.length;
+    }
+
+    /**
+     * @param step
+     *            step index.
+     * @return name of the step action.
+     */
+    public String getStepAction(final int step) {
+        return stepActions[step];
+    }
+
+    /**
+     * @param step
+     *            step index.
+     * @return name of the step view action.
+     */
+    public String getViewAction(final int step) {
+        return viewActions[step];
+    }
+
+    /**
+     * @param step
+     *            step index.
+     * @return index of the next step or <code>-1</code> if it is the last one.
+     */
+    public int getNextStep(final int step) {
+        return nextSteps[step];
+    }
+
+    /**
+     * @param step
+     *            step index.
+     * @return index of the previous step.
+     */
+    public int getPrevStep(final int step) {
+        return prevSteps[step];
+    }
+
+    /**
+     * Gets shared action flow steps data with given active step index.
+     * 
+     * @param stepIndex
+     *            active step index starting from <code>1</code>.
+     * @return action flow steps data.
+     */
+    public ActionFlowStepsData getStepsData(final int stepIndex) {
+        return stepsDataByStep[stepIndex];
+    }
+
+    /**
+     * Gets action flow scope fields of the action class.
+     * 
+     * @param className
+     *            name of the action class.
+     * @return action flow scope fields or <code>null</code> if the class has
+     *         none. The returned array must not be modified.
+     */
+    public ActionFlowScopeField[] getScopeFields(final String className) {
+        return scopeFields.get(className);
+    }
+
+    /**
+     * @return slots of the action flow scope fields.
+     */
+    public ActionFlowScopeLayout getScopeLayout() {
+        return scopeLayout;
+    }
+
+    /**
+     * @return precomputed JSON step navigation fragments.
+     */
+    public ActionFlowJsonFragments getJsonFragments() {
+        return jsonFragments;
+    }
+
+    /**
+     * @return the packageName
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * @return the flowMap
+     */
+    public Map<String, ActionFlowStepConfig> getFlowMap() {
+        return flowMap;
+    }
+
+    /**
+     * @return the flowScopeFields
+     */
+    public Map<String, List<PropertyDescriptor>> getFlowScopeFields() {
+        return flowScopeFields;
+    }
+
+    /**
+     * @return the stepsData
+     */
+    public ActionFlowStepsData getStepsData() {
+        return stepsData;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ActionFlowConfig ");
+        sb.append("packageName:").append(packageName).append(", ");
+        sb.append("flowMap:").append(flowMap);
+        sb.append("}");
+        return sb.toString();
+    }
+}
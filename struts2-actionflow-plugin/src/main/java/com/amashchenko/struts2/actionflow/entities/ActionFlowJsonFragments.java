@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.entities;
+
+import java.util.Map.Entry;
+
+/**
+ * Precomputed parts of the JSON step navigation documents of a compiled action
+ * flow. The fragment of a step describes the step to show next and the flow
+ * progress, it is a list of JSON object members without the enclosing braces.
+ * Instances are immutable.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowJsonFragments {
+    /** Fragments by step index. */
+    private final String[] fragments;
+
+    /** Fragment of the finished flow. */
+    private final String finished;
+
+    /**
+     * @param stepActions
+     *            step action names by step index.
+     * @param viewActions
+     *            view action names by step index.
+     * @param stepsData
+     *            action flow steps data.
+     */
+    public ActionFlowJsonFragments(final String[] stepActions,
+            final String[] viewActions, final ActionFlowStepsData stepsData) {
+        // steps are the same in all fragments
+        StringBuilder steps = new StringBuilder();
+        steps.append("\"steps\":{");
+        if (stepsData != null && stepsData.getSteps() != null) {
+            boolean first = true;
+            for (Entry<Integer, String> entry : stepsData.getSteps()
+                    .entrySet()) {
+                if (!first) {
+                    steps.append(',');
+                }
+                first = false;
+                appendString(steps, String.valueOf(entry.getKey()));
+                steps.append(':');
+                appendString(steps, entry.getValue());
+            }
+        }
+        steps.append('}');
+
+        fragments = new String[stepActions.length];
+        for (int i = 1; i < stepActions.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("\"step\":").append(i).append(',');
+            sb.append("\"action\":");
+            appendString(sb, stepActions[i]);
+            sb.append(",\"view\":");
+            appendString(sb, viewActions[i]);
+            sb.append(',').append(steps);
+            fragments[i] = sb.toString();
+        }
+        finished = "\"step\":null,\"action\":null,\"view\":null," + steps;
+    }
+
+    /**
+     * Gets fragment describing the step to show.
+     * 
+     * @param step
+     *            step index starting from <code>1</code> or <code>-1</code>
+     *            if the flow is finished.
+     * @return JSON object members.
+     */
+    public String getFragment(final int step) {
+        if (step < 1 || step >= fragments.length) {
+            return finished;
+        }
+        return fragments[step];
+    }
+
+    /**
+     * Appends JSON string literal.
+     * 
+     * @param sb
+     *            string builder to append to.
+     * @param value
+     *            string value or <code>null</code>.
+     */
+    public static void appendString(final StringBuilder sb, final String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                // also escape '<' and line separators so the document can be
+                // embedded in HTML and JavaScript
+                if (c < 0x20 || c == '<' || c == '\u2028' || c == '\u2029') {
+                    String hex = Integer.toHexString(c);
+                    sb.append("\\u");
+                    for (int j = hex.length(); j < 4; j++) {
+                        sb.append('0');
+                    }
+                    sb.append(hex);
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ActionFlowJsonFragments ");
+        sb.append("steps:").append(fragments.length);
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.entities;
+
+/**
+ * Role of an action in action flow together with its step index.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowRoute {
+
+    /**
+     * Action roles in action flow.
+     */
+    public enum Role {
+        /** Action flow step. */
+        FLOW_STEP,
+        /** View action of the action flow step. */
+        FLOW_VIEW,
+        /** Next action. */
+        NEXT,
+        /** Previous action. */
+        PREV
+    }
+
+    private final Role role;
+    private final int step;
+
+    /**
+     * @param role
+     *            role of the action.
+     * @param step
+     *            step index, <code>-1</code> for next and previous actions.
+     */
+    public ActionFlowRoute(final Role role, final int step) {
+        this.role = role;
+        this.step = step;
+    }
+
+    /**
+     * @return the role
+     */
+    public Role getRole() {
+        return role;
+    }
+
+    /**
+     * @return the step
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ActionFlowRoute ");
+        sb.append("role:").append(role).append(", ");
+        sb.append("step:").append(step);
+        sb.append("}");
+        return sb.toString();
+    }
+}
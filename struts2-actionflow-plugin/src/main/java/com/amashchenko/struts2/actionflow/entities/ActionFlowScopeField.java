@@ -0,0 +1,285 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.entities;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.Collections;
+
+import com.amashchenko.struts2.actionflow.ActionFlowScopeAccessor;
+
+/**
+ * Action flow scope field of an action class with precomputed flow scope key
+ * and accessor of the field value. Fields of a compiled action flow have a
+ * slot in {@link ActionFlowScopeLayout} and values of <code>int</code>,
+ * <code>long</code>, <code>double</code> and <code>boolean</code> fields are
+ * stored without boxing.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowScopeField {
+    /** Storage type of the field value. */
+    public enum Type {
+        OBJECT, INT, LONG, DOUBLE, BOOLEAN
+    }
+
+    /** Key of the field value in the flow scope. */
+    private final String scopeKey;
+
+    /** Property descriptor of the field. */
+    private final PropertyDescriptor propertyDescriptor;
+
+    /** Getter of the field. */
+    private final Method readMethod;
+
+    /** Setter of the field. */
+    private final Method writeMethod;
+
+    /** Accessor of the action class fields. */
+    private final ActionFlowScopeAccessor accessor;
+
+    /** Index of the field in the accessor. */
+    private final int index;
+
+    /** Storage type of the field value. */
+    private final Type type;
+
+    /** Slot of the field in the layout or <code>-1</code> if there is none. */
+    private final int slot;
+
+    /** Index of the value among values of the same type in the layout. */
+    private final int valueIndex;
+
+    /**
+     * Creates field with its own accessor.
+     * 
+     * @param className
+     *            name of the action class.
+     * @param propertyDescriptor
+     *            property descriptor of the field.
+     */
+    public ActionFlowScopeField(final String className,
+            final PropertyDescriptor propertyDescriptor) {
+        this(className, propertyDescriptor, ActionFlowScopeAccessor.create(
+                propertyDescriptor.getReadMethod().getDeclaringClass(),
+                Collections.singletonList(propertyDescriptor)), 0);
+    }
+
+    /**
+     * @param className
+     *            name of the action class.
+     * @param propertyDescriptor
+     *            property descriptor of the field.
+     * @param accessor
+     *            accessor of the action class fields.
+     * @param index
+     *            index of the field in the accessor.
+     */
+    public ActionFlowScopeField(final String className,
+            final PropertyDescriptor propertyDescriptor,
+            final ActionFlowScopeAccessor accessor, final int index) {
+        this(className, propertyDescriptor, accessor, index, -1, -1);
+    }
+
+    /**
+     * @param className
+     *            name of the action class.
+     * @param propertyDescriptor
+     *            property descriptor of the field.
+     * @param accessor
+     *            accessor of the action class fields.
+     * @param index
+     *            index of the field in the accessor.
+     * @param slot
+     *            slot of the field in the layout.
+     * @param valueIndex
+     *            index of the value among values of the same type.
+     */
+    public ActionFlowScopeField(final String className,
+            final PropertyDescriptor propertyDescriptor,
+            final ActionFlowScopeAccessor accessor, final int index,
+            final int slot, final int valueIndex) {
+        this.scopeKey = className + "." + propertyDescriptor.getName();
+        this.propertyDescriptor = propertyDescriptor;
+        this.readMethod = propertyDescriptor.getReadMethod();
+        this.writeMethod = propertyDescriptor.getWriteMethod();
+        this.accessor = accessor;
+        this.index = index;
+        this.type = typeOf(propertyDescriptor.getPropertyType());
+        this.slot = slot;
+        this.valueIndex = valueIndex;
+    }
+
+    /**
+     * Gets storage type of the property type.
+     * 
+     * @param propertyType
+     *            type of the property.
+     * @return storage type.
+     */
+    public static Type typeOf(final Class<?> propertyType) {
+        if (propertyType == Integer.TYPE) {
+            return Type.INT;
+        } else if (propertyType == Long.TYPE) {
+            return Type.LONG;
+        } else if (propertyType == Double.TYPE) {
+            return Type.DOUBLE;
+        } else if (propertyType == Boolean.TYPE) {
+            return Type.BOOLEAN;
+        }
+        return Type.OBJECT;
+    }
+
+    /**
+     * Gets value of the field.
+     * 
+     * @param action
+     *            action object.
+     * @return value of the field.
+     * @throws Exception
+     *             when value cannot be read.
+     */
+    public Object getValue(final Object action) throws Exception {
+        return accessor.get(action, index);
+    }
+
+    /**
+     * Gets value of <code>int</code> field.
+     * 
+     * @param action
+     *            action object.
+     * @return value of the field.
+     * @throws Exception
+     *             when value cannot be read.
+     */
+    public int getInt(final Object action) throws Exception {
+        return accessor.getInt(action, index);
+    }
+
+    /**
+     * Gets value of <code>long</code> field.
+     * 
+     * @param action
+     *            action object.
+     * @return value of the field.
+     * @throws Exception
+     *             when value cannot be read.
+     */
+    public long getLong(final Object action) throws Exception {
+        return accessor.getLong(action, index);
+    }
+
+    /**
+     * Gets value of <code>double</code> field.
+     * 
+     * @param action
+     *            action object.
+     * @return value of the field.
+     * @throws Exception
+     *             when value cannot be read.
+     */
+    public double getDouble(final Object action) throws Exception {
+        return accessor.getDouble(action, index);
+    }
+
+    /**
+     * Gets value of <code>boolean</code> field.
+     * 
+     * @param action
+     *            action object.
+     * @return value of the field.
+     * @throws Exception
+     *             when value cannot be read.
+     */
+    public boolean getBoolean(final Object action) throws Exception {
+        return accessor.getBoolean(action, index);
+    }
+
+    /**
+     * Sets value of the field.
+     * 
+     * @param action
+     *            action object.
+     * @param value
+     *            value to set.
+     * @throws Exception
+     *             when value cannot be written.
+     */
+    public void setValue(final Object action, final Object value)
+            throws Exception {
+        accessor.set(action, index, value);
+    }
+
+    /**
+     * @return the scopeKey
+     */
+    public String getScopeKey() {
+        return scopeKey;
+    }
+
+    /**
+     * @return the type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the slot
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return the valueIndex
+     */
+    public int getValueIndex() {
+        return valueIndex;
+    }
+
+    /**
+     * @return the propertyDescriptor
+     */
+    public PropertyDescriptor getPropertyDescriptor() {
+        return propertyDescriptor;
+    }
+
+    /**
+     * @return the readMethod
+     */
+    public Method getReadMethod() {
+        return readMethod;
+    }
+
+    /**
+     * @return the writeMethod
+     */
+    public Method getWriteMethod() {
+        return writeMethod;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ActionFlowScopeField ");
+        sb.append("scopeKey:").append(scopeKey);
+        sb.append("}");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.entities;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Slots of all action flow scope fields of a compiled action flow. Each field
+ * has a slot, values of the fields are stored in arrays by type and indexed by
+ * value index of the field. Instances are immutable.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowScopeLayout {
+    /** Fields by slot. */
+    private final ActionFlowScopeField[] fields;
+
+    /** Fields by scope key. */
+    private final Map<String, ActionFlowScopeField> fieldsByKey;
+
+    /** Slots of the fields derived from the field by slot. */
+    private final int[][] dependents;
+
+    /** Whether any field has derived fields. */
+    private final boolean hasDependents;
+
+    /** Fields declared as written by the step by step index and slot. */
+    private final boolean[][] stepWrites;
+
+    /** Number of values by type ordinal. */
+    private final int[] valueCounts = new int[ActionFlowScopeField.Type
+            .values().length];
+
+    /**
+     * @param fields
+     *            fields by slot.
+     */
+    public ActionFlowScopeLayout(final ActionFlowScopeField[] fields) {
+        this(fields, null, null);
+    }
+
+    /**
+     * @param fields
+     *            fields by slot.
+     * @param dependents
+     *            slots of the fields derived directly or indirectly from the
+     *            field by slot, <code>null</code> if there are none.
+     * @param stepWrites
+     *            slots of the fields declared as written by the step by step
+     *            index, <code>null</code> if there are none.
+     */
+    public ActionFlowScopeLayout(final ActionFlowScopeField[] fields,
+            final int[][] dependents, final int[][] stepWrites) {
+        this.fields = fields.clone();
+        this.dependents = new int[fields.length][];
+        boolean any = false;
+        for (int i = 0; i < fields.length; i++) {
+            int[] slots = dependents == null ? null : dependents[i];
+            this.dependents[i] = slots == null ? new int[0] : slots.clone();
+            any |= this.dependents[i].length > 0;
+        }
+        this.hasDependents = any;
+        this.stepWrites = new boolean[stepWrites == null ? 0
+                : stepWrites.length][];
+        for (int i = 0; i < this.stepWrites.length; i++) {
+            this.stepWrites[i] = new boolean[fields.length];
+            if (stepWrites[i] != null) {
+                for (int slot : stepWrites[i]) {
+                    this.stepWrites[i][slot] = true;
+                }
+            }
+        }
+        Map<String, ActionFlowScopeField> byKey = new HashMap<String, ActionFlowScopeField>();
+        for (int i = 0; i < this.fields.length; i++) {
+            ActionFlowScopeField field = this.fields[i];
+            if (field.getSlot() != i) {
+                throw new IllegalArgumentException("Field " + field
+                        + " has slot " + field.getSlot() + " instead of " + i
+                        + ".");
+            }
+            byKey.put(field.getScopeKey(), field);
+            int type = field.getType().ordinal();
+            valueCounts[type] = Math.max(valueCounts[type],
+                    field.getValueIndex() + 1);
+        }
+        this.fieldsByKey = Collections.unmodifiableMap(byKey);
+    }
+
+    /**
+     * Checks whether field belongs to this layout.
+     * 
+     * @param field
+     *            action flow scope field.
+     * @return <code>true</code> if field has a slot in this layout.
+     */
+    public boolean contains(final ActionFlowScopeField field) {
+        int slot = field.getSlot();
+        return slot >= 0 && slot < fields.length && fields[slot] == field;
+    }
+
+    /**
+     * @param scopeKey
+     *            scope key of the field.
+     * @return field or <code>null</code> if there is no such field.
+     */
+    public ActionFlowScopeField getField(final String scopeKey) {
+        return fieldsByKey.get(scopeKey);
+    }
+
+    /**
+     * @param slot
+     *            slot of the field.
+     * @return field.
+     */
+    public ActionFlowScopeField getField(final int slot) {
+        return fields[slot];
+    }
+
+    /**
+     * Gets fields derived from the field, they are no longer valid when the
+     * field changes.
+     * 
+     * @param slot
+     *            slot of the field.
+     * @return slots of the derived fields. The returned array must not be
+     *         modified.
+     */
+    public int[] getDependents(final int slot) {
+        return dependents[slot];
+    }
+
+    /**
+     * Checks whether the step declares the field as written, such field is
+     * derived from the current values when the step completes.
+     * 
+     * @param step
+     *            step index.
+     * @param slot
+     *            slot of the field.
+     * @return <code>true</code> if the step writes the field.
+     */
+    public boolean isWrittenBy(final int step, final int slot) {
+        return step >= 0 && step < stepWrites.length
+                && stepWrites[step][slot];
+    }
+
+    /**
+     * @return whether any field has derived fields.
+     */
+    public boolean hasDependents() {
+        return hasDependents;
+    }
+
+    /**
+     * @return number of slots.
+     */
+    public int getSlotCount() {
+        return fields.length;
+    }
+
+    /**
+     * @param type
+     *            storage type.
+     * @return number of values of the type.
+     */
+    public int getValueCount(final ActionFlowScopeField.Type type) {
+        return valueCounts[type.ordinal()];
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{ActionFlowScopeLayout ");
+        sb.append("slots:").append(fields.length);
+        sb.append("}");
+        return sb.toString();
+    }
+}
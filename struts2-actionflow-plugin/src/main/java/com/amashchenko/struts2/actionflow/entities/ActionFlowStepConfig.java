@@ -15,6 +15,9 @@
  */
 package com.amashchenko.struts2.actionflow.entities;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * Action flow step configuration.
  * 
@@ -25,11 +28,17 @@ public class ActionFlowStepConfig {
     private int index;
     private String nextAction;
     private String prevAction;
+    /** Names of the flow scope fields the step reads. */
+    private Set<String> reads = Collections.emptySet();
+    /** Names of the flow scope fields the step writes. */
+    private Set<String> writes = Collections.emptySet();
 
     protected ActionFlowStepConfig(ActionFlowStepConfig orig) {
         this.index = orig.index;
         this.nextAction = orig.nextAction;
         this.prevAction = orig.prevAction;
+        this.reads = orig.reads;
+        this.writes = orig.writes;
     }
 
     protected ActionFlowStepConfig(int index, String nextAction,
@@ -60,6 +69,20 @@ public class ActionFlowStepConfig {
         return prevAction;
     }
 
+    /**
+     * @return unmodifiable names of the flow scope fields the step reads.
+     */
+    public Set<String> getReads() {
+        return reads;
+    }
+
+    /**
+     * @return unmodifiable names of the flow scope fields the step writes.
+     */
+    public Set<String> getWrites() {
+        return writes;
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean equals(Object o) {
@@ -83,6 +106,12 @@ public class ActionFlowStepConfig {
                 : (stepConfig.prevAction != null)) {
             return false;
         }
+        if (!reads.equals(stepConfig.reads)) {
+            return false;
+        }
+        if (!writes.equals(stepConfig.writes)) {
+            return false;
+        }
         return true;
     }
 
@@ -96,6 +125,8 @@ public class ActionFlowStepConfig {
                 + ((nextAction == null) ? 0 : nextAction.hashCode());
         result = prime * result
                 + ((prevAction == null) ? 0 : prevAction.hashCode());
+        result = prime * result + reads.hashCode();
+        result = prime * result + writes.hashCode();
         return result;
     }
 
@@ -107,6 +138,10 @@ public class ActionFlowStepConfig {
         sb.append("index:").append(index).append(", ");
         sb.append("nextAction:").append(nextAction).append(", ");
         sb.append("prevAction:").append(prevAction);
+        if (!reads.isEmpty() || !writes.isEmpty()) {
+            sb.append(", reads:").append(reads);
+            sb.append(", writes:").append(writes);
+        }
         sb.append("}");
         return sb.toString();
     }
@@ -141,6 +176,16 @@ public class ActionFlowStepConfig {
             return this;
         }
 
+        public Builder reads(Set<String> reads) {
+            target.reads = Collections.unmodifiableSet(reads);
+            return this;
+        }
+
+        public Builder writes(Set<String> writes) {
+            target.writes = Collections.unmodifiableSet(writes);
+            return this;
+        }
+
         public ActionFlowStepConfig build() {
             ActionFlowStepConfig result = target;
             target = new ActionFlowStepConfig(target);
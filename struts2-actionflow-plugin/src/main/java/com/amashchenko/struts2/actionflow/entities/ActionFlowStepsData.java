@@ -15,29 +15,102 @@
  */
 package com.amashchenko.struts2.actionflow.entities;
 
+import java.util.Collections;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
  * Holds sorted indexed map of steps names and currently active step index. Step
  * index starts from <code>1</code> for more convenient display in view.
+ * <p/>
+ * The map of steps is read-only and shared between requests. Step index of
+ * shared instances precomputed for every step cannot be changed, use a
+ * {@link #copy() copy} to change it.
  * 
  * @author Aleksandr Mashchenko
  * 
  */
 public class ActionFlowStepsData {
-    /** Naturally sorted step names. */
-    private final TreeMap<Integer, String> steps;
+    /** Read-only view of naturally sorted step names. */
+    private final SortedMap<Integer, String> steps;
 
     /** Currently active step index. */
     private Integer stepIndex;
 
+    /** Whether the instance is shared between requests. */
+    private final boolean shared;
+
     /**
      * 
      * @param steps
      *            map of steps.
      */
     public ActionFlowStepsData(final TreeMap<Integer, String> steps) {
+        this(steps, null);
+    }
+
+    /**
+     * 
+     * @param steps
+     *            map of steps.
+     * @param stepIndex
+     *            currently active step index.
+     */
+    public ActionFlowStepsData(final TreeMap<Integer, String> steps,
+            final Integer stepIndex) {
+        this(Collections.unmodifiableSortedMap(steps), stepIndex, false);
+    }
+
+    /**
+     * 
+     * @param steps
+     *            read-only map of steps.
+     * @param stepIndex
+     *            currently active step index.
+     * @param shared
+     *            whether the instance is shared between requests.
+     */
+    private ActionFlowStepsData(final SortedMap<Integer, String> steps,
+            final Integer stepIndex, final boolean shared) {
         this.steps = steps;
+        this.stepIndex = stepIndex;
+        this.shared = shared;
+    }
+
+    /**
+     * Creates instance shared between requests, its step index cannot be
+     * changed.
+     * 
+     * @param steps
+     *            map of steps.
+     * @param stepIndex
+     *            currently active step index.
+     * @return shared action flow steps data.
+     */
+    public static ActionFlowStepsData createShared(
+            final TreeMap<Integer, String> steps, final Integer stepIndex) {
+        return new ActionFlowStepsData(Collections.unmodifiableSortedMap(steps),
+                stepIndex, true);
+    }
+
+    /**
+     * Creates shared instance with given step index sharing the map of steps.
+     * 
+     * @param stepIndex
+     *            currently active step index.
+     * @return shared action flow steps data.
+     */
+    public ActionFlowStepsData shareWithStepIndex(final Integer stepIndex) {
+        return new ActionFlowStepsData(steps, stepIndex, true);
+    }
+
+    /**
+     * Creates a copy with the same step index sharing the map of steps.
+     * 
+     * @return not shared copy of this instance.
+     */
+    public ActionFlowStepsData copy() {
+        return new ActionFlowStepsData(steps, stepIndex, false);
     }
 
     /**
@@ -48,17 +121,25 @@ public class ActionFlowStepsData {
     }
 
     /**
+     * Sets the step index.
+     * 
      * @param stepIndex
      *            the stepIndex to set
+     * @throws UnsupportedOperationException
+     *             if this instance is shared between requests.
      */
     public void setStepIndex(Integer stepIndex) {
+        if (shared) {
+            throw new UnsupportedOperationException(
+                    "Step index of shared action flow steps data cannot be changed, use a copy.");
+        }
         this.stepIndex = stepIndex;
     }
 
     /**
-     * @return the steps
+     * @return read-only map of steps.
      */
-    public TreeMap<Integer, String> getSteps() {
+    public SortedMap<Integer, String> getSteps() {
         return steps;
     }
 }
@@ -16,8 +16,15 @@
 package com.amashchenko.struts2.actionflow;
 
 import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 import org.apache.struts2.StrutsJUnit4TestCase;
 import org.junit.Assert;
@@ -25,6 +32,9 @@ import org.junit.Test;
 
 import com.amashchenko.struts2.actionflow.entities.ActionFlowStepConfig;
 import com.amashchenko.struts2.actionflow.mock.MockActionFlowAction;
+import com.amashchenko.struts2.actionflow.mock.MockFieldAccessAction;
+import com.opensymphony.xwork2.config.RuntimeConfiguration;
+import com.opensymphony.xwork2.config.entities.InterceptorMapping;
 import com.opensymphony.xwork2.inject.Inject;
 
 /**
@@ -81,6 +91,40 @@ public class ActionFlowConfigBuilderTest extends
         }
     }
 
+    /**
+     * Tests interceptors of generated view actions.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testViewInterceptorStack() throws Exception {
+        injectStrutsDependencies(this);
+        flowConfigBuilder.createFlowMap("batchFlow", "next", "prev", "View",
+                "execute");
+
+        RuntimeConfiguration runtime = configuration.getRuntimeConfiguration();
+
+        // same interceptors as the step action
+        Assert.assertEquals(
+                runtime.getActionConfig("/batchFlow", "saveName")
+                        .getInterceptors().size(),
+                runtime.getActionConfig("/batchFlow", "saveNameView")
+                        .getInterceptors().size());
+
+        // lean view stack
+        List<InterceptorMapping> interceptors = runtime.getActionConfig(
+                "/batchFlow", "savePhoneView").getInterceptors();
+        Assert.assertEquals(2, interceptors.size());
+        Assert.assertEquals("actionFlow", interceptors.get(0).getName());
+        Assert.assertEquals("prepare", interceptors.get(1).getName());
+
+        // action flow interceptor of the step with package parameters
+        Assert.assertSame(runtime.getActionConfig("/batchFlow", "savePhone")
+                .getInterceptors().get(0).getInterceptor(), interceptors
+                .get(0).getInterceptor());
+    }
+
     /**
      * Tests modifying of action flow scope fields configuration.
      * 
@@ -138,4 +182,152 @@ public class ActionFlowConfigBuilderTest extends
                     e instanceof UnsupportedOperationException);
         }
     }
+
+    /**
+     * Tests introspecting action classes on several threads.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testIntrospectActionClasses() throws Exception {
+        injectStrutsDependencies(this);
+
+        // MockActionFlowAction, MockFieldAccessAction and ActionSupport, the
+        // class of unloadableFlow fails to initialize
+        int classes = flowConfigBuilder.introspectActionClasses(Arrays.asList(
+                "correctFlow", "fieldAccessFlow", "noFlow", "unloadableFlow"),
+                4);
+        Assert.assertEquals(3, classes);
+
+        long introspections = ActionFlowScopeMetadata.getIntrospections();
+        Map<String, List<PropertyDescriptor>> map = flowConfigBuilder
+                .createFlowScopeFields("fieldAccessFlow");
+        Assert.assertEquals(introspections,
+                ActionFlowScopeMetadata.getIntrospections());
+        Assert.assertEquals(3, map.get(MockFieldAccessAction.class.getName())
+                .size());
+    }
+
+    /**
+     * Tests that action class which cannot be loaded is reported and skipped.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testUnloadableActionClass() throws Exception {
+        injectStrutsDependencies(this);
+
+        final List<LogRecord> records = new ArrayList<LogRecord>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+                    records.add(record);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(ActionFlowConfigBuilder.class
+                .getName());
+        logger.addHandler(handler);
+        Map<String, List<PropertyDescriptor>> map;
+        try {
+            map = flowConfigBuilder.createFlowScopeFields("unloadableFlow");
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals("In createFlowScope", records.get(0).getMessage());
+        Assert.assertTrue(records.get(0).getThrown() instanceof LinkageError);
+    }
+
+    /**
+     * Tests action flow scope fields of class with field access.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testFieldAccessScopeFields() throws Exception {
+        injectStrutsDependencies(this);
+
+        Map<String, List<PropertyDescriptor>> map = flowConfigBuilder
+                .createFlowScopeFields("fieldAccessFlow");
+
+        List<PropertyDescriptor> list = map.get(MockFieldAccessAction.class
+                .getName());
+        Assert.assertNotNull(list);
+
+        // inherited and private fields without getters and setters
+        Assert.assertEquals(3, list.size());
+        Assert.assertEquals("age", list.get(0).getName());
+        Assert.assertEquals(Integer.class, list.get(0).getPropertyType());
+        Assert.assertEquals("email", list.get(1).getName());
+        Assert.assertEquals("phone", list.get(2).getName());
+
+        // hierarchy is walked once per class
+        Assert.assertSame(list,
+                flowConfigBuilder.createFlowScopeFields("fieldAccessFlow")
+                        .get(MockFieldAccessAction.class.getName()));
+    }
+
+    /**
+     * Tests that scope accessor is cached with the metadata of the class.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testScopeAccessorOfMetadata() throws Exception {
+        injectStrutsDependencies(this);
+
+        ActionFlowScopeMetadata metadata = ActionFlowScopeMetadata
+                .forClass(MockActionFlowAction.class);
+
+        ActionFlowScopeAccessor accessor = flowConfigBuilder.getScopeAccessor(
+                MockActionFlowAction.class.getName(),
+                metadata.getPropertyDescriptors());
+
+        Assert.assertSame(metadata.getAccessor(MockActionFlowAction.class),
+                accessor);
+    }
+
+    /**
+     * Tests creating action flows of several packages at once.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testCreateFlowMaps() throws Exception {
+        injectStrutsDependencies(this);
+        Assert.assertNotNull(flowConfigBuilder);
+
+        Map<String, ActionFlowInterceptor> flowPackages = new HashMap<String, ActionFlowInterceptor>();
+        flowPackages.put("correctFlow", new ActionFlowInterceptor());
+        flowPackages.put("sameFlowSteps", new ActionFlowInterceptor());
+        flowPackages.put("noFlow", new ActionFlowInterceptor());
+
+        Map<String, Map<String, ActionFlowStepConfig>> maps = flowConfigBuilder
+                .createFlowMaps(flowPackages);
+
+        Assert.assertNotNull(maps);
+        Assert.assertEquals(flowConfigBuilder.createFlowMap("correctFlow",
+                "next", "prev", "View", "execute"), maps.get("correctFlow"));
+        Assert.assertTrue(maps.get("noFlow").isEmpty());
+
+        // wrong configuration is skipped
+        Assert.assertFalse(maps.containsKey("sameFlowSteps"));
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import org.apache.struts2.StrutsJUnit4TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpSession;
+
+/**
+ * Tests for flow execution keys.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowExecutionsTest extends StrutsJUnit4TestCase<Object> {
+
+    /** Key for previous flow action. */
+    private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
+    /** Key for flow executions. */
+    private static final String FLOW_EXECUTIONS_KEY = "actionFlowExecutions";
+
+    /** {@inheritDoc} */
+    @Override
+    protected String getConfigPath() {
+        return "struts-plugin.xml, struts-test.xml";
+    }
+
+    /**
+     * Tests independent flow executions in one session.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testIndependentExecutions() throws Exception {
+        executeAction("/executionKeysFlow/executionKeysFlow");
+        MockHttpSession session = new MockHttpSession();
+
+        // first tab
+        initRequest(session);
+        executeAction("/executionKeysFlow/next");
+        String firstKey = (String) findValueAfterExecute("#"
+                + ActionFlowInterceptor.FLOW_EXECUTION_KEY);
+        Assert.assertNotNull(firstKey);
+        Assert.assertTrue(response.getRedirectedUrl().contains(
+                ActionFlowInterceptor.FLOW_EXECUTION_KEY_PARAM + "="
+                        + firstKey));
+
+        // second tab
+        initRequest(session);
+        executeAction("/executionKeysFlow/next");
+        String secondKey = (String) findValueAfterExecute("#"
+                + ActionFlowInterceptor.FLOW_EXECUTION_KEY);
+        Assert.assertNotNull(secondKey);
+        Assert.assertNotEquals(firstKey, secondKey);
+
+        // first tab goes on
+        initRequest(session);
+        request.setParameter(ActionFlowInterceptor.FLOW_EXECUTION_KEY_PARAM,
+                firstKey);
+        request.setParameter("step", "saveName");
+        executeAction("/executionKeysFlow/next");
+        Assert.assertEquals(firstKey, findValueAfterExecute("#"
+                + ActionFlowInterceptor.FLOW_EXECUTION_KEY));
+
+        Assert.assertNull(session.getAttribute(PREVIOUS_FLOW_ACTION));
+        ActionFlowExecutions executions = (ActionFlowExecutions) session
+                .getAttribute(FLOW_EXECUTIONS_KEY);
+        Assert.assertNotNull(executions);
+        Assert.assertEquals(2, executions.size());
+        Assert.assertEquals("savePhone",
+                executions.get(firstKey, PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals("saveName",
+                executions.get(secondKey, PREVIOUS_FLOW_ACTION));
+    }
+
+    /**
+     * Tests that unknown execution key starts new execution.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testUnknownExecutionKey() throws Exception {
+        executeAction("/executionKeysFlow/executionKeysFlow");
+        initServletMockObjects();
+        request.setParameter(ActionFlowInterceptor.FLOW_EXECUTION_KEY_PARAM,
+                "unknown");
+        executeAction("/executionKeysFlow/next");
+
+        String key = (String) findValueAfterExecute("#"
+                + ActionFlowInterceptor.FLOW_EXECUTION_KEY);
+        Assert.assertNotNull(key);
+        Assert.assertNotEquals("unknown", key);
+    }
+
+    /**
+     * Tests evicting least recently used executions.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        ActionFlowExecutions executions = new ActionFlowExecutions(2);
+        executions.put("a", PREVIOUS_FLOW_ACTION, "saveName");
+        executions.put("b", PREVIOUS_FLOW_ACTION, "saveName");
+        Assert.assertTrue(executions.contains("a"));
+        executions.put("c", PREVIOUS_FLOW_ACTION, "saveName");
+
+        Assert.assertEquals(2, executions.size());
+        Assert.assertTrue(executions.contains("a"));
+        Assert.assertFalse(executions.contains("b"));
+        Assert.assertTrue(executions.contains("c"));
+
+        executions.put("a", PREVIOUS_FLOW_ACTION, null);
+        Assert.assertFalse(executions.contains("a"));
+    }
+
+    /**
+     * Creates new request within given session.
+     * 
+     * @param session
+     *            session.
+     */
+    private void initRequest(final MockHttpSession session) {
+        initServletMockObjects();
+        request.setSession(session);
+    }
+}
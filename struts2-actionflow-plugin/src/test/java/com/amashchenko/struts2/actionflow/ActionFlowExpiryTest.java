@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.struts2.StrutsJUnit4TestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpSession;
+
+import com.opensymphony.xwork2.config.ConfigurationException;
+
+/**
+ * Tests for expiry of idle action flows.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowExpiryTest extends StrutsJUnit4TestCase<Object> {
+
+    /** Key for previous flow action. */
+    private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
+    /** Key for flow scope. */
+    private static final String FLOW_SCOPE_KEY = "actionFlowScope";
+    /** Key for flow executions. */
+    private static final String FLOW_EXECUTIONS_KEY = "actionFlowExecutions";
+
+    /** Expiry under test. */
+    private final ActionFlowExpiry expiry = new ActionFlowExpiry(10);
+
+    /** {@inheritDoc} */
+    @Override
+    protected String getConfigPath() {
+        return "struts-plugin.xml, struts-test.xml, struts-test-flow-timeout.xml";
+    }
+
+    /** Stops expiry thread. */
+    @After
+    public void stopExpiry() {
+        expiry.stop();
+    }
+
+    /**
+     * Tests expiring idle flow.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testExpireIdleFlow() throws Exception {
+        ActionFlowStatistics statistics = new ActionFlowStatistics();
+        final List<Object[]> abandoned = Collections
+                .synchronizedList(new ArrayList<Object[]>());
+        expiry.setStatistics(statistics);
+        expiry.setTimeoutMillis(50);
+        expiry.setListener(new ActionFlowAbandonmentListener() {
+            public void flowAbandoned(String packageName, String stepAction,
+                    Map<String, Object> scope) {
+                abandoned.add(new Object[] { packageName, stepAction, scope });
+            }
+        });
+
+        Map<String, Object> scope = new HashMap<String, Object>();
+        scope.put("name", "value");
+
+        ActionFlowExecutions executions = new ActionFlowExecutions(5);
+        executions.put("key", PREVIOUS_FLOW_ACTION, "savePhone");
+        executions.put("key", FLOW_SCOPE_KEY, scope);
+        expiry.touch(executions, "key", "correctFlow", null);
+
+        waitForExpiry(executions, 2000);
+
+        // listener is notified after the execution is removed
+        long start = System.currentTimeMillis();
+        while (abandoned.isEmpty()
+                && System.currentTimeMillis() - start < 2000) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(0, executions.size());
+        Assert.assertEquals(1, abandoned.size());
+        Assert.assertEquals("correctFlow", abandoned.get(0)[0]);
+        Assert.assertEquals("savePhone", abandoned.get(0)[1]);
+        Assert.assertEquals(scope, abandoned.get(0)[2]);
+        Assert.assertEquals(Long.valueOf(1), statistics.getAbandonedFlows()
+                .get("correctFlow/savePhone"));
+    }
+
+    /**
+     * Tests that accessed flow is not expired.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testAccessedFlowKept() throws Exception {
+        expiry.setStatistics(new ActionFlowStatistics());
+        expiry.setTimeoutMillis(200);
+
+        ActionFlowExecutions executions = new ActionFlowExecutions(5);
+        executions.put("key", PREVIOUS_FLOW_ACTION, "saveName");
+        expiry.touch(executions, "key", "correctFlow", null);
+
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(50);
+            // size does not update last access time of the execution
+            Assert.assertEquals(1, executions.size());
+            executions.get("key", PREVIOUS_FLOW_ACTION);
+            expiry.touch(executions, "key", "correctFlow", null);
+        }
+
+        waitForExpiry(executions, 2000);
+        Assert.assertEquals(0, executions.size());
+    }
+
+    /**
+     * Tests that expired executions container is put again into the session.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testExpiredExecutionsPutIntoSession() throws Exception {
+        expiry.setStatistics(new ActionFlowStatistics());
+        expiry.setTimeoutMillis(50);
+
+        ActionFlowExecutions executions = new ActionFlowExecutions(5);
+        executions.put("key", PREVIOUS_FLOW_ACTION, "saveName");
+        final List<Object> writes = Collections
+                .synchronizedList(new ArrayList<Object>());
+        MockHttpSession httpSession = new MockHttpSession() {
+            @Override
+            public void setAttribute(String name, Object value) {
+                if (FLOW_EXECUTIONS_KEY.equals(name)) {
+                    writes.add(value);
+                }
+                super.setAttribute(name, value);
+            }
+        };
+        httpSession.setAttribute(FLOW_EXECUTIONS_KEY, executions);
+        writes.clear();
+        expiry.touch(executions, "key", "correctFlow", httpSession);
+
+        waitForExpiry(executions, 2000);
+
+        long start = System.currentTimeMillis();
+        while (writes.isEmpty() && System.currentTimeMillis() - start < 2000) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(0, executions.size());
+        Assert.assertEquals(1, writes.size());
+        Assert.assertSame(executions, writes.get(0));
+    }
+
+    /**
+     * Tests that missing abandonment listener is reported on injection.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test(expected = ConfigurationException.class)
+    public void testMissingListener() throws Exception {
+        ActionFlowExpiry flowExpiry = new ActionFlowExpiry();
+        flowExpiry.setListenerName("missingListener");
+        flowExpiry.setContainer(container);
+    }
+
+    /**
+     * Tests that flow state is kept in executions container with flow
+     * timeout.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testFlowStateInExecutions() throws Exception {
+        executeAction("/correctFlow/correctFlow");
+        initServletMockObjects();
+        executeAction("/correctFlow/next");
+
+        Assert.assertNull(request.getSession().getAttribute(
+                PREVIOUS_FLOW_ACTION));
+
+        ActionFlowExecutions executions = (ActionFlowExecutions) request
+                .getSession().getAttribute(FLOW_EXECUTIONS_KEY);
+        Assert.assertNotNull(executions);
+        Assert.assertEquals("saveName",
+                executions.get("default", PREVIOUS_FLOW_ACTION));
+        Assert.assertNotNull(executions.getExpiryTask("default"));
+    }
+
+    /**
+     * Waits until all executions are expired.
+     * 
+     * @param executions
+     *            flow executions.
+     * @param maxWait
+     *            maximum time to wait in milliseconds.
+     * @throws InterruptedException
+     *             when interrupted.
+     */
+    private void waitForExpiry(final ActionFlowExecutions executions,
+            final long maxWait) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (executions.size() > 0
+                && System.currentTimeMillis() - start < maxWait) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.struts2.StrutsJUnit4TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpSession;
+
+import com.amashchenko.struts2.actionflow.mock.MockActionFlowAction;
+import com.opensymphony.xwork2.ActionProxy;
+
+/**
+ * Tests for JSON view result mode.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowJsonResultTest extends
+        StrutsJUnit4TestCase<MockActionFlowAction> {
+
+    /** Key for previous flow action. */
+    private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
+
+    /** Steps of the flow. */
+    private static final String STEPS = "\"steps\":{\"1\":\"saveName\",\"2\":\"savePhone\"}";
+
+    /** {@inheritDoc} */
+    @Override
+    protected String getConfigPath() {
+        return "struts-plugin.xml, struts-test.xml";
+    }
+
+    /**
+     * Tests JSON documents of the flow steps.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testFlowSteps() throws Exception {
+        executeAction("/jsonFlow/jsonFlow");
+        MockHttpSession session = new MockHttpSession();
+
+        initRequest(session);
+        request.setParameter("phone", "phone");
+        String output = executeAction("/jsonFlow/next");
+
+        Assert.assertEquals("{\"outcome\":\"success\",\"step\":2,"
+                + "\"action\":\"savePhone\",\"view\":\"savePhoneView\","
+                + STEPS + ",\"fieldErrors\":{},\"actionErrors\":[]}", output);
+        Assert.assertEquals("application/json;charset=UTF-8",
+                response.getContentType());
+        Assert.assertNull(response.getRedirectedUrl());
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+
+        // back to the first step
+        initRequest(session);
+        output = executeAction("/jsonFlow/prev");
+
+        Assert.assertEquals("{\"outcome\":\"success\",\"step\":1,"
+                + "\"action\":\"saveName\",\"view\":\"saveNameView\","
+                + STEPS + ",\"fieldErrors\":{},\"actionErrors\":[]}", output);
+        Assert.assertEquals("firstFlowAction",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+
+        // wrong order
+        initRequest(session);
+        output = executeAction("/jsonFlow/savePhone");
+
+        Assert.assertTrue(output,
+                output.startsWith("{\"outcome\":\"wrongOrder\",\"step\":1,"));
+
+        // last step finishes the flow
+        initRequest(session);
+        executeAction("/jsonFlow/next");
+        initRequest(session);
+        output = executeAction("/jsonFlow/next");
+
+        Assert.assertTrue(output, output.startsWith("{\"outcome\":\"success\","
+                + "\"step\":null,\"action\":null,\"view\":null,"));
+        Assert.assertNull(session.getAttribute(PREVIOUS_FLOW_ACTION));
+    }
+
+    /**
+     * Tests JSON document of the input result.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testInput() throws Exception {
+        executeAction("/jsonFlow/jsonFlow");
+        initServletMockObjects();
+
+        ActionProxy ap = getActionProxy("/jsonFlow/saveName");
+        MockActionFlowAction action = (MockActionFlowAction) ap.getAction();
+        action.addFieldError("phone", "Phone is \"required\".");
+        action.addActionError("Error");
+
+        Map<String, Object> sessionMap = new HashMap<String, Object>();
+        ap.getInvocation().getInvocationContext().setSession(sessionMap);
+
+        ap.execute();
+
+        Assert.assertEquals("{\"outcome\":\"input\",\"step\":1,"
+                + "\"action\":\"saveName\",\"view\":\"saveNameView\","
+                + STEPS
+                + ",\"fieldErrors\":{\"phone\":[\"Phone is \\\"required\\\".\"]},"
+                + "\"actionErrors\":[\"Error\"]}",
+                response.getContentAsString());
+        Assert.assertNull(sessionMap.get(PREVIOUS_FLOW_ACTION));
+    }
+
+    private void initRequest(final MockHttpSession session) {
+        initServletMockObjects();
+        request.setSession(session);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import org.apache.struts2.StrutsJUnit4TestCase;
+import org.apache.struts2.dispatcher.mapper.ActionMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpSession;
+
+import com.amashchenko.struts2.actionflow.mock.MockActionFlowAction;
+import com.opensymphony.xwork2.inject.Inject;
+
+/**
+ * Tests for ActionFlowRedirectResult.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowRedirectResultTest extends
+        StrutsJUnit4TestCase<MockActionFlowAction> {
+
+    /** Key for previous flow action. */
+    private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
+
+    /** Action flow registry. */
+    @Inject
+    private ActionFlowRegistry flowRegistry;
+
+    /** Action mapper. */
+    @Inject
+    private ActionMapper actionMapper;
+
+    /** {@inheritDoc} */
+    @Override
+    protected String getConfigPath() {
+        return "struts-plugin.xml, struts-test.xml";
+    }
+
+    /**
+     * Tests redirects of next and previous actions.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testRedirect() throws Exception {
+        executeAction("/redirectFlow/redirectFlow");
+        MockHttpSession session = new MockHttpSession();
+
+        initRequest(session);
+        request.setParameter("phone", "phone");
+        executeAction("/redirectFlow/next");
+
+        Assert.assertEquals("/redirectFlow/savePhoneView.action",
+                response.getRedirectedUrl());
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertNull(findValueAfterExecute(ActionFlowInterceptor.VIEW_ACTION_PARAM));
+
+        initRequest(session);
+        executeAction("/redirectFlow/prev");
+
+        Assert.assertEquals("/redirectFlow/saveNameView.action",
+                response.getRedirectedUrl());
+        Assert.assertEquals("firstFlowAction",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+    }
+
+    /**
+     * Tests flow execution key of the redirect.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testFlowExecutionKey() throws Exception {
+        executeAction("/redirectKeysFlow/redirectKeysFlow");
+        MockHttpSession session = new MockHttpSession();
+
+        initRequest(session);
+        request.setParameter("phone", "phone");
+        executeAction("/redirectKeysFlow/next");
+
+        String key = (String) findValueAfterExecute("#"
+                + ActionFlowInterceptor.FLOW_EXECUTION_KEY);
+        Assert.assertNotNull(key);
+        Assert.assertEquals("/redirectKeysFlow/savePhoneView.action?"
+                + ActionFlowInterceptor.FLOW_EXECUTION_KEY_PARAM + "=" + key,
+                response.getRedirectedUrl());
+    }
+
+    /**
+     * Tests caching of action URIs.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testActionUri() throws Exception {
+        injectStrutsDependencies(this);
+
+        String uri = flowRegistry.getActionUri(actionMapper, "/redirectFlow",
+                "savePhoneView");
+        Assert.assertEquals("/redirectFlow/savePhoneView.action", uri);
+        Assert.assertSame(uri, flowRegistry.getActionUri(actionMapper,
+                "/redirectFlow", "savePhoneView"));
+    }
+
+    private void initRequest(final MockHttpSession session) {
+        initServletMockObjects();
+        request.setSession(session);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import org.apache.struts2.StrutsJUnit4TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowConfig;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowRoute;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeField;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowStepsData;
+import com.amashchenko.struts2.actionflow.mock.MockActionFlowAction;
+import com.opensymphony.xwork2.inject.Inject;
+
+/**
+ * Tests for ActionFlowRegistry.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowRegistryTest extends
+        StrutsJUnit4TestCase<ActionFlowRegistry> {
+
+    /** Action flow registry. */
+    @Inject
+    private ActionFlowRegistry flowRegistry;
+
+    /** {@inheritDoc} */
+    @Override
+    protected String getConfigPath() {
+        return "struts-plugin.xml, struts-test.xml";
+    }
+
+    /**
+     * Tests that action flow is compiled once and shared.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testSharedFlowConfig() throws Exception {
+        injectStrutsDependencies(this);
+        Assert.assertNotNull(flowRegistry);
+
+        ActionFlowConfig flowConfig = flowRegistry.getFlowConfig(
+                "correctFlow", "next", "prev", "View", "execute");
+
+        Assert.assertNotNull(flowConfig);
+        Assert.assertEquals("correctFlow", flowConfig.getPackageName());
+        Assert.assertEquals(4, flowConfig.getFlowMap().size());
+        Assert.assertEquals(3, flowConfig.getStepsData().getSteps().size());
+
+        Assert.assertSame(flowConfig, flowRegistry.getFlowConfig(
+                "correctFlow", "next", "prev", "View", "execute"));
+    }
+
+    /**
+     * Tests that different interceptor parameters of one package get
+     * different action flows.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testFlowConfigPerParameters() throws Exception {
+        injectStrutsDependencies(this);
+
+        ActionFlowConfig flowConfig = flowRegistry.getFlowConfig(
+                "correctFlow", "next", "prev", "View", "execute");
+        ActionFlowConfig formFlowConfig = flowRegistry.getFlowConfig(
+                "correctFlow", "next", "prev", "Form", "execute");
+
+        Assert.assertNotSame(flowConfig, formFlowConfig);
+        Assert.assertEquals("saveNameView", flowConfig.getViewAction(1));
+        Assert.assertEquals("saveNameForm", formFlowConfig.getViewAction(1));
+        Assert.assertSame(formFlowConfig, flowRegistry.getFlowConfig(
+                "correctFlow", "next", "prev", "Form", "execute"));
+    }
+
+    /**
+     * Tests that the same registry is injected into different interceptors.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testSingleRegistry() throws Exception {
+        injectStrutsDependencies(this);
+
+        ActionFlowRegistry anotherRegistry = container
+                .getInstance(ActionFlowRegistry.class);
+
+        Assert.assertSame(flowRegistry, anotherRegistry);
+    }
+
+    /**
+     * Tests compiled action flow routes.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testFlowRoutes() throws Exception {
+        injectStrutsDependencies(this);
+
+        ActionFlowConfig flowConfig = flowRegistry.getFlowConfig(
+                "correctFlow", "next", "prev", "View", "execute");
+
+        Assert.assertEquals(4, flowConfig.getStepCount());
+        Assert.assertEquals("firstFlowAction", flowConfig.getStepAction(0));
+        Assert.assertEquals("savePhone", flowConfig.getStepAction(2));
+        Assert.assertEquals("savePhoneView", flowConfig.getViewAction(2));
+        Assert.assertEquals(3, flowConfig.getNextStep(2));
+        Assert.assertEquals(-1, flowConfig.getNextStep(3));
+        Assert.assertEquals(0, flowConfig.getPrevStep(1));
+
+        Assert.assertEquals(0, flowConfig.getStepIndex("firstFlowAction"));
+        Assert.assertEquals(1, flowConfig.getStepIndex("saveName"));
+        Assert.assertEquals(-1, flowConfig.getStepIndex("saveNameView"));
+        Assert.assertEquals(-1, flowConfig.getStepIndex("correctFlow"));
+
+        ActionFlowRoute route = flowConfig.getRoute("saveEmail");
+        Assert.assertEquals(ActionFlowRoute.Role.FLOW_STEP, route.getRole());
+        Assert.assertEquals(3, route.getStep());
+
+        route = flowConfig.getRoute("saveNameView");
+        Assert.assertEquals(ActionFlowRoute.Role.FLOW_VIEW, route.getRole());
+        Assert.assertEquals(1, route.getStep());
+
+        Assert.assertEquals(ActionFlowRoute.Role.NEXT,
+                flowConfig.getRoute("next").getRole());
+        Assert.assertEquals(ActionFlowRoute.Role.PREV,
+                flowConfig.getRoute("prev").getRole());
+        Assert.assertNull(flowConfig.getRoute("correctFlow"));
+    }
+
+    /**
+     * Tests precomputed steps data and scope fields.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testPrecomputedRequestData() throws Exception {
+        injectStrutsDependencies(this);
+
+        ActionFlowConfig flowConfig = flowRegistry.getFlowConfig(
+                "correctFlow", "next", "prev", "View", "execute");
+
+        Assert.assertSame(flowConfig.getStepsData(2),
+                flowConfig.getStepsData(2));
+        Assert.assertEquals(Integer.valueOf(2), flowConfig.getStepsData(2)
+                .getStepIndex());
+        Assert.assertSame(flowConfig.getStepsData().getSteps(), flowConfig
+                .getStepsData(2).getSteps());
+
+        ActionFlowScopeField[] scopeFields = flowConfig
+                .getScopeFields(MockActionFlowAction.class.getName());
+        Assert.assertNotNull(scopeFields);
+        Assert.assertEquals(1, scopeFields.length);
+        Assert.assertEquals(MockActionFlowAction.class.getName() + ".phone",
+                scopeFields[0].getScopeKey());
+        Assert.assertNull(flowConfig.getScopeFields(Object.class.getName()));
+    }
+
+    /**
+     * Tests that shared steps data cannot be changed.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testSharedStepsDataUnchanged() throws Exception {
+        injectStrutsDependencies(this);
+
+        ActionFlowConfig flowConfig = flowRegistry.getFlowConfig(
+                "correctFlow", "next", "prev", "View", "execute");
+
+        try {
+            flowConfig.getStepsData(1).setStepIndex(2);
+            Assert.fail("Shared steps data must be read-only. Should throw UnsupportedOperationException.");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(Integer.valueOf(1), flowConfig
+                    .getStepsData(1).getStepIndex());
+        }
+        try {
+            flowConfig.getStepsData(1).getSteps().put(4, "unknown");
+            Assert.fail("The map must be unmodifiable. Should throw UnsupportedOperationException.");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(3, flowConfig.getStepsData().getSteps()
+                    .size());
+        }
+
+        ActionFlowStepsData copy = flowConfig.getStepsData(1).copy();
+        copy.setStepIndex(2);
+        Assert.assertEquals(Integer.valueOf(2), copy.getStepIndex());
+        Assert.assertSame(flowConfig.getStepsData().getSteps(),
+                copy.getSteps());
+    }
+}
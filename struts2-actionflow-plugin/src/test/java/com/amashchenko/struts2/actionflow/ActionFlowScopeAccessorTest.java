@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amashchenko.struts2.actionflow.mock.MockScopeFieldsAction;
+
+/**
+ * Tests for action flow scope accessors.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowScopeAccessorTest {
+
+    /**
+     * Tests generated accessor.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testGeneratedAccessor() throws Exception {
+        List<PropertyDescriptor> pds = propertyDescriptors(MockScopeFieldsAction.class);
+        ActionFlowScopeAccessor accessor = ActionFlowScopeAccessor.create(
+                MockScopeFieldsAction.class, pds);
+
+        Assert.assertFalse(accessor instanceof ReflectionScopeAccessor);
+
+        assertAccessor(accessor, pds);
+    }
+
+    /**
+     * Tests reflection accessor.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testReflectionAccessor() throws Exception {
+        List<PropertyDescriptor> pds = propertyDescriptors(MockScopeFieldsAction.class);
+        ActionFlowScopeAccessor accessor = new ReflectionScopeAccessor(
+                pds.toArray(new PropertyDescriptor[pds.size()]));
+
+        assertAccessor(accessor, pds);
+    }
+
+    /**
+     * Tests falling back to reflection for not public class.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testNotPublicClass() throws Exception {
+        List<PropertyDescriptor> pds = propertyDescriptors(NotPublicAction.class);
+        ActionFlowScopeAccessor accessor = ActionFlowScopeAccessor.create(
+                NotPublicAction.class, pds);
+
+        Assert.assertTrue(accessor instanceof ReflectionScopeAccessor);
+
+        NotPublicAction action = new NotPublicAction();
+        accessor.set(action, 0, "value");
+        Assert.assertEquals("value", accessor.get(action, 0));
+    }
+
+    private void assertAccessor(final ActionFlowScopeAccessor accessor,
+            final List<PropertyDescriptor> pds) throws Exception {
+        MockScopeFieldsAction action = new MockScopeFieldsAction();
+        Date date = new Date();
+        long[] ids = new long[] { 1L, 2L };
+
+        accessor.set(action, index(pds, "name"), "name");
+        accessor.set(action, index(pds, "count"), 5);
+        accessor.set(action, index(pds, "active"), Boolean.TRUE);
+        accessor.set(action, index(pds, "ids"), ids);
+        accessor.set(action, index(pds, "date"), date);
+
+        Assert.assertEquals("name", action.getName());
+        Assert.assertEquals(5, action.getCount());
+        Assert.assertTrue(action.isActive());
+        Assert.assertSame(ids, action.getIds());
+        Assert.assertSame(date, action.getDate());
+
+        Assert.assertEquals("name", accessor.get(action, index(pds, "name")));
+        Assert.assertEquals(Integer.valueOf(5),
+                accessor.get(action, index(pds, "count")));
+        Assert.assertEquals(Boolean.TRUE,
+                accessor.get(action, index(pds, "active")));
+        Assert.assertSame(ids, accessor.get(action, index(pds, "ids")));
+        Assert.assertSame(date, accessor.get(action, index(pds, "date")));
+
+        Assert.assertEquals(5, accessor.getInt(action, index(pds, "count")));
+        Assert.assertTrue(accessor.getBoolean(action, index(pds, "active")));
+    }
+
+    private List<PropertyDescriptor> propertyDescriptors(final Class<?> clazz)
+            throws Exception {
+        List<PropertyDescriptor> pds = new ArrayList<PropertyDescriptor>();
+        for (PropertyDescriptor pd : Introspector.getBeanInfo(clazz, Object.class)
+                .getPropertyDescriptors()) {
+            if (pd.getReadMethod() != null && pd.getWriteMethod() != null) {
+                pds.add(pd);
+            }
+        }
+        return pds;
+    }
+
+    private int index(final List<PropertyDescriptor> pds, final String name) {
+        for (int i = 0; i < pds.size(); i++) {
+            if (pds.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    /** Not public action. */
+    static class NotPublicAction {
+        private String value;
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
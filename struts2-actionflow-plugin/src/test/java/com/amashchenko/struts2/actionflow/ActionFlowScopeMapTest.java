@@ -0,0 +1,268 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeField;
+import com.amashchenko.struts2.actionflow.entities.ActionFlowScopeLayout;
+import com.amashchenko.struts2.actionflow.mock.MockActionFlowAction;
+import com.amashchenko.struts2.actionflow.mock.MockScopeFieldsAction;
+
+/**
+ * Tests for ActionFlowScopeMap.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowScopeMapTest {
+
+    /** Prefix of scope keys. */
+    private static final String PREFIX = MockActionFlowAction.class.getName()
+            + ".";
+
+    /**
+     * Tests serializing values of all supported types.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put(PREFIX + "string", "value");
+        values.put(PREFIX + "empty", "");
+        values.put(PREFIX + "nullValue", null);
+        values.put(PREFIX + "yes", Boolean.TRUE);
+        values.put(PREFIX + "no", Boolean.FALSE);
+        values.put(PREFIX + "integer", Integer.valueOf(-42));
+        values.put(PREFIX + "maxInteger", Integer.valueOf(Integer.MAX_VALUE));
+        values.put(PREFIX + "minLong", Long.valueOf(Long.MIN_VALUE));
+        values.put(PREFIX + "shortValue", Short.valueOf((short) 7));
+        values.put(PREFIX + "byteValue", Byte.valueOf((byte) -1));
+        values.put(PREFIX + "character", Character.valueOf('x'));
+        values.put(PREFIX + "doubleValue", Double.valueOf(1.5));
+        values.put(PREFIX + "floatValue", Float.valueOf(2.5f));
+        values.put(PREFIX + "date", new Date(1234567890123L));
+        values.put(PREFIX + "timestamp", new Timestamp(1234567890123L));
+        values.put(PREFIX + "decimal", new BigDecimal("3.14"));
+        values.put(PREFIX + "array", new int[] { 1, 2 });
+        values.put("other.Action.name", "other");
+        values.put("noClass", "value");
+
+        char[] chars = new char[70000];
+        Arrays.fill(chars, 'a');
+        values.put(PREFIX + "longString", new String(chars));
+
+        ActionFlowScopeMap copy = roundTrip(new ActionFlowScopeMap(values));
+
+        Assert.assertEquals(values.size(), copy.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Assert.assertTrue(entry.getKey(), copy.containsKey(entry.getKey()));
+            if (entry.getValue() instanceof int[]) {
+                Assert.assertArrayEquals((int[]) entry.getValue(),
+                        (int[]) copy.get(entry.getKey()));
+            } else {
+                Assert.assertEquals(entry.getKey(), entry.getValue(),
+                        copy.get(entry.getKey()));
+            }
+        }
+        Assert.assertEquals(Timestamp.class, copy.get(PREFIX + "timestamp")
+                .getClass());
+    }
+
+    /**
+     * Tests that compact format is smaller than serialized hash map.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testSmallerThanHashMap() throws Exception {
+        HashMap<String, Object> values = new HashMap<String, Object>();
+        for (int i = 0; i < 10; i++) {
+            values.put(PREFIX + "field" + i, "value" + i);
+            values.put(PREFIX + "number" + i, Integer.valueOf(i));
+        }
+
+        Assert.assertTrue(serialize(new ActionFlowScopeMap(values)).length < serialize(values).length);
+    }
+
+    /**
+     * Tests storing and restoring fields by slot.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testSlots() throws Exception {
+        ActionFlowScopeLayout layout = createLayout();
+        String prefix = MockScopeFieldsAction.class.getName() + ".";
+
+        MockScopeFieldsAction action = new MockScopeFieldsAction();
+        action.setName("name");
+        action.setCount(3);
+        action.setActive(true);
+
+        ActionFlowScopeMap scope = new ActionFlowScopeMap(layout);
+        scope.put("other.Action.name", "other");
+
+        Assert.assertEquals(ActionFlowScopeMap.STORED,
+                scope.store(layout.getField(prefix + "name"), action));
+        Assert.assertEquals(ActionFlowScopeMap.STORED,
+                scope.store(layout.getField(prefix + "count"), action));
+        Assert.assertEquals(ActionFlowScopeMap.STORED,
+                scope.store(layout.getField(prefix + "active"), action));
+        Assert.assertEquals(ActionFlowScopeMap.SKIPPED,
+                scope.store(layout.getField(prefix + "date"), action));
+
+        Assert.assertEquals(ActionFlowScopeMap.UNCHANGED,
+                scope.store(layout.getField(prefix + "count"), action));
+        action.setCount(4);
+        Assert.assertEquals(ActionFlowScopeMap.STORED,
+                scope.store(layout.getField(prefix + "count"), action));
+
+        // map view
+        Assert.assertEquals(4, scope.size());
+        Assert.assertEquals("name", scope.get(prefix + "name"));
+        Assert.assertEquals(Integer.valueOf(4), scope.get(prefix + "count"));
+        Assert.assertEquals(Boolean.TRUE, scope.get(prefix + "active"));
+        Assert.assertFalse(scope.containsKey(prefix + "date"));
+        Assert.assertEquals("other", scope.get("other.Action.name"));
+
+        // value of another type than the field
+        scope.put(prefix + "count", "text");
+        Assert.assertEquals("text", scope.get(prefix + "count"));
+        scope.put(prefix + "count", Integer.valueOf(5));
+        Assert.assertEquals(Integer.valueOf(5), scope.get(prefix + "count"));
+        Assert.assertEquals(4, scope.size());
+
+        scope.remove(prefix + "active");
+        Assert.assertFalse(scope.containsKey(prefix + "active"));
+        Assert.assertEquals(3, scope.size());
+
+        // restore after serialization and binding to the new layout
+        ActionFlowScopeMap copy = roundTrip(scope);
+        Assert.assertEquals(scope, copy);
+        ActionFlowScopeLayout newLayout = createLayout();
+        copy.bind(newLayout);
+        Assert.assertEquals(scope, copy);
+
+        MockScopeFieldsAction restored = new MockScopeFieldsAction();
+        for (String name : new String[] { "name", "count", "date" }) {
+            copy.restore(newLayout.getField(prefix + name), restored);
+        }
+        Assert.assertEquals("name", restored.getName());
+        Assert.assertNull(restored.getDate());
+    }
+
+    /**
+     * Creates layout of the fields of mock action.
+     * 
+     * @return layout.
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    private ActionFlowScopeLayout createLayout() throws Exception {
+        List<PropertyDescriptor> pds = new ArrayList<PropertyDescriptor>();
+        for (PropertyDescriptor pd : Introspector.getBeanInfo(
+                MockScopeFieldsAction.class).getPropertyDescriptors()) {
+            if (pd.getWriteMethod() != null) {
+                pds.add(pd);
+            }
+        }
+        ActionFlowScopeAccessor accessor = ActionFlowScopeAccessor.create(
+                MockScopeFieldsAction.class, pds);
+        ActionFlowScopeField[] fields = new ActionFlowScopeField[pds.size()];
+        int[] valueCounts = new int[ActionFlowScopeField.Type.values().length];
+        for (int i = 0; i < fields.length; i++) {
+            int type = ActionFlowScopeField.typeOf(
+                    pds.get(i).getPropertyType()).ordinal();
+            fields[i] = new ActionFlowScopeField(
+                    MockScopeFieldsAction.class.getName(), pds.get(i),
+                    accessor, i, i, valueCounts[type]++);
+        }
+        return new ActionFlowScopeLayout(fields);
+    }
+
+    /**
+     * Tests reading not a flow scope stream.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test(expected = StreamCorruptedException.class)
+    public void testWrongMagic() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeInt(0);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        new ActionFlowScopeMap().readExternal(in);
+    }
+
+    /**
+     * Serializes and deserializes flow scope.
+     * 
+     * @param scope
+     *            flow scope.
+     * @return copy of the flow scope.
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    private ActionFlowScopeMap roundTrip(final ActionFlowScopeMap scope)
+            throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                serialize(scope)));
+        return (ActionFlowScopeMap) in.readObject();
+    }
+
+    /**
+     * Serializes object.
+     * 
+     * @param object
+     *            object to serialize.
+     * @return bytes.
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    private byte[] serialize(final Object object) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(object);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.amashchenko.struts2.actionflow.mock.MockActionFlowAction;
+import com.amashchenko.struts2.actionflow.mock.MockFieldAccessAction;
+import com.amashchenko.struts2.actionflow.mock.MockScopeFieldsAction;
+
+/**
+ * Tests for ActionFlowScopeMetadata.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowScopeMetadataTest {
+
+    /**
+     * Tests that class is introspected once.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testCached() throws Exception {
+        ActionFlowScopeMetadata metadata = ActionFlowScopeMetadata
+                .forClass(MockFieldAccessAction.class);
+        long introspections = ActionFlowScopeMetadata.getIntrospections();
+
+        Assert.assertSame(metadata,
+                ActionFlowScopeMetadata.forClass(MockFieldAccessAction.class));
+        Assert.assertEquals(introspections,
+                ActionFlowScopeMetadata.getIntrospections());
+        Assert.assertSame(
+                metadata.getAccessor(MockFieldAccessAction.class),
+                metadata.getAccessor(MockFieldAccessAction.class));
+        Assert.assertEquals(3, metadata.getPropertyDescriptors().size());
+    }
+
+    /**
+     * Tests fields of classes with and without annotation.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testPropertyDescriptors() throws Exception {
+        Assert.assertTrue(ActionFlowScopeMetadata
+                .forClass(MockScopeFieldsAction.class)
+                .getPropertyDescriptors().isEmpty());
+
+        ActionFlowScopeMetadata metadata = ActionFlowScopeMetadata
+                .forClass(MockActionFlowAction.class);
+        Assert.assertEquals(1, metadata.getPropertyDescriptors().size());
+        Assert.assertEquals("phone", metadata.getPropertyDescriptors().get(0)
+                .getName());
+    }
+
+    /**
+     * Tests that metadata of the classes of a cleared class loader is removed
+     * and the class loader can be collected.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testClearClassLoader() throws Exception {
+        ActionFlowScopeMetadata.forClass(MockActionFlowAction.class);
+
+        ClassLoader loader = new ActionClassLoader(
+                MockActionFlowAction.class.getName());
+        Class<?> actionClass = loader.loadClass(MockActionFlowAction.class
+                .getName());
+        Assert.assertNotSame(MockActionFlowAction.class, actionClass);
+
+        Assert.assertEquals(1, ActionFlowScopeMetadata.forClass(actionClass)
+                .getPropertyDescriptors().size());
+        Assert.assertNotNull(ActionFlowScopeMetadata.forClass(actionClass)
+                .getAccessor(actionClass));
+        Assert.assertTrue(ActionFlowScopeMetadata.isCached(actionClass));
+
+        ActionFlowScopeMetadata.clearClassLoader(loader);
+
+        Assert.assertFalse(ActionFlowScopeMetadata.isCached(actionClass));
+        Assert.assertTrue(ActionFlowScopeMetadata
+                .isCached(MockActionFlowAction.class));
+
+        WeakReference<ClassLoader> loaderRef = new WeakReference<ClassLoader>(
+                loader);
+        loader = null;
+        actionClass = null;
+        for (int i = 0; i < 50 && loaderRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(loaderRef.get());
+    }
+
+    /**
+     * Class loader defining its own copy of one class, like the class loader
+     * of a deployed application.
+     */
+    private static final class ActionClassLoader extends ClassLoader {
+        /** Name of the class. */
+        private final String className;
+
+        /**
+         * @param className
+         *            name of the class to define.
+         */
+        ActionClassLoader(final String className) {
+            super(ActionClassLoader.class.getClassLoader());
+            this.className = className;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected synchronized Class<?> loadClass(final String name,
+                final boolean resolve) throws ClassNotFoundException {
+            if (!className.equals(name)) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                byte[] bytecode = readClass(name);
+                clazz = defineClass(name, bytecode, 0, bytecode.length);
+            }
+            return clazz;
+        }
+
+        /**
+         * @param name
+         *            name of the class.
+         * @return bytecode of the class.
+         * @throws ClassNotFoundException
+         *             when class cannot be read.
+         */
+        private byte[] readClass(final String name)
+                throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(
+                    name.replace('.', '/') + ".class");
+            if (in == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                try {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                    return out.toByteArray();
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for ActionFlowScopeSnapshot.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowScopeSnapshotTest {
+
+    /**
+     * Tests that snapshot keeps only changed values.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testSharedValues() throws Exception {
+        Map<String, Object> scope = new HashMap<String, Object>();
+        scope.put("name", "name");
+        scope.put("phone", "phone");
+        ActionFlowScopeSnapshot first = ActionFlowScopeSnapshot.of(null, scope);
+
+        scope.put("phone", "newPhone");
+        scope.put("email", "email");
+        ActionFlowScopeSnapshot second = ActionFlowScopeSnapshot.of(first,
+                scope);
+
+        Assert.assertEquals(2, second.getChangeCount());
+        Assert.assertEquals(3, second.size());
+        Assert.assertEquals(scope, second);
+        Assert.assertEquals("phone", first.get("phone"));
+        Assert.assertFalse(first.containsKey("email"));
+
+        // removed value is not shared
+        scope.remove("name");
+        ActionFlowScopeSnapshot third = ActionFlowScopeSnapshot.of(second,
+                scope);
+        Assert.assertEquals(2, third.getChangeCount());
+        Assert.assertEquals(scope, third);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(second);
+        out.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray())).readObject();
+        Assert.assertEquals(second, copy);
+    }
+
+    /**
+     * Tests snapshot of missing flow scope.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testEmpty() throws Exception {
+        ActionFlowScopeSnapshot snapshot = ActionFlowScopeSnapshot.of(null,
+                null);
+        Assert.assertTrue(snapshot.isEmpty());
+        Assert.assertNull(snapshot.get("name"));
+    }
+
+    /**
+     * Tests that changing mutable values does not change snapshots.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMutableValues() throws Exception {
+        List<String> phones = new ArrayList<String>();
+        phones.add("first");
+        Map<String, Object> scope = new HashMap<String, Object>();
+        scope.put("name", "name");
+        scope.put("phones", phones);
+        ActionFlowScopeSnapshot first = ActionFlowScopeSnapshot.of(null, scope);
+
+        phones.add("second");
+        ActionFlowScopeSnapshot second = ActionFlowScopeSnapshot.of(first,
+                scope);
+
+        Assert.assertEquals(Arrays.asList("first"), first.get("phones"));
+        Assert.assertEquals(Arrays.asList("first", "second"),
+                second.get("phones"));
+        Assert.assertSame(first.get("name"), second.get("name"));
+
+        // restored values are copies too
+        Map<String, Object> restored = first.restore();
+        ((List<String>) restored.get("phones")).add("third");
+        Assert.assertEquals(Arrays.asList("first"), first.get("phones"));
+    }
+
+    /**
+     * Tests that mutable values which cannot be copied are rejected.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotSerializableValue() throws Exception {
+        Map<String, Object> scope = new HashMap<String, Object>();
+        scope.put("value", new Object());
+        ActionFlowScopeSnapshot.of(null, scope);
+    }
+}
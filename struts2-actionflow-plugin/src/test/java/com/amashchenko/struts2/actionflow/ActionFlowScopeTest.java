@@ -21,9 +21,12 @@ import java.util.Map;
 import org.apache.struts2.StrutsJUnit4TestCase;
 import org.junit.Assert;
 import org.junit.Test;
+import org.springframework.mock.web.MockHttpSession;
 
 import com.amashchenko.struts2.actionflow.mock.MockActionFlowAction;
+import com.amashchenko.struts2.actionflow.mock.MockFieldAccessAction;
 import com.opensymphony.xwork2.ActionProxy;
+import com.opensymphony.xwork2.inject.Inject;
 
 public class ActionFlowScopeTest extends
         StrutsJUnit4TestCase<MockActionFlowAction> {
@@ -32,6 +35,9 @@ public class ActionFlowScopeTest extends
     private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
     private static final String FLOW_SCOPE_KEY = "actionFlowScope";
 
+    @Inject
+    private ActionFlowStatistics statistics;
+
     /** {@inheritDoc} */
     @Override
     protected String getConfigPath() {
@@ -151,4 +157,435 @@ public class ActionFlowScopeTest extends
         Assert.assertNull(sessionMap.get(FLOW_SCOPE_KEY));
         Assert.assertEquals(immutableValue, sessionMap.get(immutableValue));
     }
+
+    @Test
+    public void testSkipUnchangedScopeWrite() throws Exception {
+        injectStrutsDependencies(this);
+        statistics.reset();
+
+        final String value = "phoneFromFlowScope";
+
+        ActionProxy ap = getActionProxy("/correctFlow/savePhone");
+        MockActionFlowAction action = (MockActionFlowAction) ap.getAction();
+        action.setPhone(value);
+
+        CountingSessionMap sessionMap = new CountingSessionMap();
+        Map<String, Object> scopeMap = new HashMap<String, Object>();
+        scopeMap.put(action.getClass().getName() + ".phone", value);
+        sessionMap.put(FLOW_SCOPE_KEY, scopeMap);
+        sessionMap.put(PREVIOUS_FLOW_ACTION, "saveName");
+        sessionMap.scopeWrites = 0;
+        ap.getInvocation().getInvocationContext().setSession(sessionMap);
+
+        ap.execute();
+
+        Assert.assertEquals(0, sessionMap.scopeWrites);
+        Assert.assertEquals(1, statistics.getSkippedScopeWrites());
+        Assert.assertEquals(1, statistics.getUnchangedFields());
+        Assert.assertEquals(0, statistics.getScopeWrites());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testChangedScopeWrite() throws Exception {
+        injectStrutsDependencies(this);
+        statistics.reset();
+
+        final String value = "phoneFromFlowScope";
+
+        ActionProxy ap = getActionProxy("/correctFlow/savePhone");
+        MockActionFlowAction action = (MockActionFlowAction) ap.getAction();
+        action.setPhone(value);
+
+        CountingSessionMap sessionMap = new CountingSessionMap();
+        Map<String, Object> scopeMap = new HashMap<String, Object>();
+        scopeMap.put(action.getClass().getName() + ".phone", "oldValue");
+        sessionMap.put(FLOW_SCOPE_KEY, scopeMap);
+        sessionMap.put(PREVIOUS_FLOW_ACTION, "saveName");
+        sessionMap.scopeWrites = 0;
+        ap.getInvocation().getInvocationContext().setSession(sessionMap);
+
+        ap.execute();
+
+        Assert.assertEquals(1, sessionMap.scopeWrites);
+        Assert.assertEquals(value, ((Map<String, Object>) sessionMap
+                .get(FLOW_SCOPE_KEY)).get(action.getClass().getName()
+                + ".phone"));
+        Assert.assertEquals(1, statistics.getScopeWrites());
+        Assert.assertEquals(1, statistics.getChangedFields());
+    }
+
+    @Test
+    public void testFieldAccessScope() throws Exception {
+        executeAction("/fieldAccessFlow/fieldAccessFlow");
+        initServletMockObjects();
+
+        ActionProxy ap = getActionProxy("/fieldAccessFlow/saveName");
+        MockFieldAccessAction action = (MockFieldAccessAction) ap.getAction();
+        action.setPhone("phone");
+        action.fill("email", Integer.valueOf(42));
+
+        Map<String, Object> sessionMap = new HashMap<String, Object>();
+        ap.getInvocation().getInvocationContext().setSession(sessionMap);
+
+        ap.execute();
+
+        Assert.assertNotNull(sessionMap.get(FLOW_SCOPE_KEY));
+
+        initServletMockObjects();
+        ap = getActionProxy("/fieldAccessFlow/saveNameView");
+        action = (MockFieldAccessAction) ap.getAction();
+        ap.getInvocation().getInvocationContext().setSession(sessionMap);
+
+        ap.execute();
+
+        Assert.assertEquals("phone", action.getPhone());
+        Assert.assertEquals("email", action.getEmail());
+        Assert.assertEquals(Integer.valueOf(42), action.age());
+        Assert.assertNull(action.note());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testScopeSnapshots() throws Exception {
+        executeAction("/snapshotFlow/snapshotFlow");
+        MockHttpSession session = new MockHttpSession();
+        final String scopeKey = MockActionFlowAction.class.getName()
+                + ".phone";
+
+        initRequest(session);
+        request.setParameter("phone", "first");
+        executeAction("/snapshotFlow/next");
+
+        initRequest(session);
+        request.setParameter("phone", "second");
+        request.setParameter("step", "saveName");
+        executeAction("/snapshotFlow/next");
+
+        Assert.assertEquals("savePhone",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals("second", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY)).get(scopeKey));
+
+        // back to the first step restores its flow scope
+        initRequest(session);
+        request.setParameter("step", "saveName");
+        executeAction("/snapshotFlow/prev");
+
+        Assert.assertEquals("first", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY)).get(scopeKey));
+
+        // snapshot is copied on write
+        initRequest(session);
+        request.setParameter("phone", "third");
+        executeAction("/snapshotFlow/next");
+
+        Assert.assertEquals("third", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY)).get(scopeKey));
+        ActionFlowScopeSnapshot[] snapshots = (ActionFlowScopeSnapshot[]) session
+                .getAttribute(ActionFlowInterceptor.FLOW_SCOPE_SNAPSHOTS_KEY);
+        Assert.assertEquals("third", snapshots[1].get(scopeKey));
+        Assert.assertEquals("second", snapshots[2].get(scopeKey));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDerivedFieldsInvalidated() throws Exception {
+        injectStrutsDependencies(this);
+        statistics.reset();
+        executeAction("/derivedFlow/derivedFlow");
+        initServletMockObjects();
+        final String prefix = MockFieldAccessAction.class.getName() + ".";
+
+        ActionProxy ap = getActionProxy("/derivedFlow/savePhone");
+        MockFieldAccessAction action = (MockFieldAccessAction) ap.getAction();
+        action.setPhone("newPhone");
+        action.fill("newEmail", null);
+
+        Map<String, Object> sessionMap = new HashMap<String, Object>();
+        Map<String, Object> scopeMap = new HashMap<String, Object>();
+        scopeMap.put(prefix + "phone", "oldPhone");
+        scopeMap.put(prefix + "email", "oldEmail");
+        scopeMap.put(prefix + "age", Integer.valueOf(42));
+        sessionMap.put(FLOW_SCOPE_KEY, scopeMap);
+        sessionMap.put(PREVIOUS_FLOW_ACTION, "saveName");
+        ap.getInvocation().getInvocationContext().setSession(sessionMap);
+
+        ap.execute();
+
+        // email is written by the step, age is derived from it
+        Map<String, Object> scope = (Map<String, Object>) sessionMap
+                .get(FLOW_SCOPE_KEY);
+        Assert.assertEquals("newPhone", scope.get(prefix + "phone"));
+        Assert.assertEquals("newEmail", scope.get(prefix + "email"));
+        Assert.assertFalse(scope.containsKey(prefix + "age"));
+        Assert.assertEquals(1, statistics.getInvalidatedFields());
+
+        // changing the input of the first step invalidates all derived fields
+        initServletMockObjects();
+        ap = getActionProxy("/derivedFlow/saveName");
+        action = (MockFieldAccessAction) ap.getAction();
+        action.setPhone("otherPhone");
+        sessionMap.remove(PREVIOUS_FLOW_ACTION);
+        ap.getInvocation().getInvocationContext().setSession(sessionMap);
+
+        ap.execute();
+
+        scope = (Map<String, Object>) sessionMap.get(FLOW_SCOPE_KEY);
+        Assert.assertEquals("otherPhone", scope.get(prefix + "phone"));
+        Assert.assertFalse(scope.containsKey(prefix + "email"));
+        Assert.assertEquals(2, statistics.getInvalidatedFields());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testForwardViewResult() throws Exception {
+        injectStrutsDependencies(this);
+        executeAction("/forwardFlow/forwardFlow");
+        MockHttpSession session = new MockHttpSession();
+        final String scopeKey = MockActionFlowAction.class.getName()
+                + ".phone";
+
+        // view of the next step is shown in the same request
+        initRequest(session);
+        request.setParameter("phone", "first");
+        executeAction("/forwardFlow/next");
+
+        Assert.assertNull(response.getRedirectedUrl());
+        Assert.assertEquals("phone", response.getForwardedUrl());
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals("first", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY)).get(scopeKey));
+
+        // submitting the same form again does not execute the step
+        statistics.reset();
+        initRequest(session);
+        request.setParameter("phone", "first");
+        executeAction("/forwardFlow/next");
+
+        Assert.assertEquals("phone", response.getForwardedUrl());
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals(0, statistics.getScopeWrites()
+                + statistics.getSkippedScopeWrites());
+
+        // next step
+        initRequest(session);
+        request.setParameter("phone", "second");
+        request.setParameter("step", "saveName");
+        executeAction("/forwardFlow/next");
+
+        Assert.assertEquals("email", response.getForwardedUrl());
+        Assert.assertEquals("savePhone",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals("second", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY)).get(scopeKey));
+    }
+
+    @Test
+    public void testForwardViewResultDifferentSubmission() throws Exception {
+        injectStrutsDependencies(this);
+        executeAction("/forwardFlow/forwardFlow");
+        MockHttpSession session = new MockHttpSession();
+
+        initRequest(session);
+        request.setParameter("phone", "Aa");
+        executeAction("/forwardFlow/next");
+
+        Assert.assertEquals("phone", response.getForwardedUrl());
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+
+        // same hash code as "Aa", but a different submission
+        initRequest(session);
+        request.setParameter("phone", "BB");
+        executeAction("/forwardFlow/next");
+
+        Assert.assertEquals("email", response.getForwardedUrl());
+        Assert.assertEquals("savePhone",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+    }
+
+    @Test
+    public void testForwardViewResultWrongOrder() throws Exception {
+        injectStrutsDependencies(this);
+        executeAction("/forwardFlow/forwardFlow");
+        MockHttpSession session = new MockHttpSession();
+
+        initRequest(session);
+        request.setParameter("phone", "first");
+        executeAction("/forwardFlow/next");
+
+        // wrong order submission is redirected to the expected step
+        initRequest(session);
+        executeAction("/forwardFlow/saveEmail");
+
+        Assert.assertNull(response.getForwardedUrl());
+        Assert.assertNotNull(response.getRedirectedUrl());
+        Assert.assertTrue(response.getRedirectedUrl().startsWith(
+                "/forwardFlow/savePhoneView.action"));
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchSubmission() throws Exception {
+        injectStrutsDependencies(this);
+        executeAction("/batchFlow/batchFlow");
+        MockHttpSession session = new MockHttpSession();
+        final String scopeKey = MockActionFlowAction.class.getName()
+                + ".phone";
+
+        // two steps in one request
+        initRequest(session);
+        request.setParameter("saveName:phone", "first");
+        request.setParameter("savePhone:phone", "second");
+        executeAction("/batchFlow/next");
+
+        Assert.assertTrue(response.getRedirectedUrl().contains(
+                "saveEmailView"));
+        Assert.assertEquals("savePhone",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals("second", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY)).get(scopeKey));
+
+        // stops at the first step with errors
+        session = new MockHttpSession();
+        initRequest(session);
+        request.setParameter("saveName:phone", "first");
+        request.setParameter("savePhone:date", "not a date");
+        request.setParameter("saveEmail:phone", "third");
+        executeAction("/batchFlow/next");
+
+        Assert.assertEquals("phone", response.getForwardedUrl());
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals("first", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY)).get(scopeKey));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchSubmissionSessionWrites() throws Exception {
+        injectStrutsDependencies(this);
+        executeAction("/batchFlow/batchFlow");
+        CountingHttpSession session = new CountingHttpSession();
+        session.setAttribute("otherAttribute", "other");
+
+        initRequest(session);
+        request.setParameter("saveName:phone", "first");
+        executeAction("/batchFlow/next");
+
+        // flow scope of the session is changed in place
+        session.scopeWrites = 0;
+        initRequest(session);
+        request.setParameter("savePhone:phone", "second");
+        executeAction("/batchFlow/next");
+
+        Assert.assertEquals(1, session.scopeWrites);
+        Assert.assertEquals("savePhone",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals("second", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY))
+                .get(MockActionFlowAction.class.getName() + ".phone"));
+        Assert.assertEquals("other", session.getAttribute("otherAttribute"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDirectDispatch() throws Exception {
+        injectStrutsDependencies(this);
+        executeAction("/directFlow/directFlow");
+        MockHttpSession session = new MockHttpSession();
+        final String scopeKey = MockActionFlowAction.class.getName()
+                + ".phone";
+
+        initRequest(session);
+        request.setParameter("phone", "first");
+        executeAction("/directFlow/next");
+
+        Assert.assertTrue(response.getRedirectedUrl().contains(
+                "savePhoneView"));
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+        Assert.assertEquals("first", ((Map<String, Object>) session
+                .getAttribute(FLOW_SCOPE_KEY)).get(scopeKey));
+
+        // input result of the step
+        initRequest(session);
+        request.setParameter("step", "saveName");
+        request.setParameter("date", "not a date");
+        executeAction("/directFlow/next");
+
+        Assert.assertEquals("phone", response.getForwardedUrl());
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+
+        initRequest(session);
+        request.setParameter("step", "saveName");
+        request.setParameter("phone", "second");
+        executeAction("/directFlow/next");
+
+        Assert.assertTrue(response.getRedirectedUrl().contains(
+                "saveEmailView"));
+        Assert.assertEquals("savePhone",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+
+        initRequest(session);
+        executeAction("/directFlow/prev");
+
+        Assert.assertTrue(response.getRedirectedUrl().contains(
+                "savePhoneView"));
+        Assert.assertEquals("saveName",
+                session.getAttribute(PREVIOUS_FLOW_ACTION));
+    }
+
+    @Test
+    public void testUnknownPreviousFlowAction() throws Exception {
+        executeAction("/correctFlow/correctFlow");
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(PREVIOUS_FLOW_ACTION, "unknownAction");
+
+        // there is no next step
+        initRequest(session);
+        executeAction("/correctFlow/saveEmail");
+
+        Assert.assertTrue(response.getRedirectedUrl().contains(
+                "/correctFlow/nullView"));
+    }
+
+    private void initRequest(final MockHttpSession session) {
+        initServletMockObjects();
+        request.setSession(session);
+    }
+
+    /** Session map counting writes of the flow scope. */
+    private static class CountingSessionMap extends HashMap<String, Object> {
+        private static final long serialVersionUID = 1L;
+
+        private int scopeWrites;
+
+        @Override
+        public Object put(String key, Object value) {
+            if (FLOW_SCOPE_KEY.equals(key)) {
+                scopeWrites++;
+            }
+            return super.put(key, value);
+        }
+    }
+
+    /** Http session counting writes of the flow scope. */
+    private static class CountingHttpSession extends MockHttpSession {
+        private int scopeWrites;
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            if (FLOW_SCOPE_KEY.equals(name)) {
+                scopeWrites++;
+            }
+            super.setAttribute(name, value);
+        }
+    }
 }
@@ -22,6 +22,7 @@ import org.apache.struts2.StrutsJUnit4TestCase;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.amashchenko.struts2.actionflow.entities.ActionFlowStepsData;
 import com.amashchenko.struts2.actionflow.mock.MockActionFlowAction;
 import com.opensymphony.xwork2.Action;
 import com.opensymphony.xwork2.ActionProxy;
@@ -114,4 +115,50 @@ public class ActionFlowStepsAwareTest extends
 
         Assert.assertEquals(stepCount, action.getStepsData().getStepIndex());
     }
+
+    /**
+     * Tests that each request gets shared steps data of its step.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testStepsDataPerRequest() throws Exception {
+        ActionProxy ap = getActionProxy("/correctFlow/savePhoneView");
+        MockActionFlowAction phoneAction = (MockActionFlowAction) ap
+                .getAction();
+        ap.execute();
+
+        initServletMockObjects();
+
+        ap = getActionProxy("/correctFlow/saveEmailView");
+        MockActionFlowAction emailAction = (MockActionFlowAction) ap
+                .getAction();
+        ap.execute();
+
+        Assert.assertNotSame(phoneAction.getStepsData(),
+                emailAction.getStepsData());
+        Assert.assertSame(phoneAction.getStepsData().getSteps(), emailAction
+                .getStepsData().getSteps());
+
+        // step index of the first request is not overwritten
+        Assert.assertEquals(new Integer(2), phoneAction.getStepsData()
+                .getStepIndex());
+        Assert.assertEquals(new Integer(3), emailAction.getStepsData()
+                .getStepIndex());
+
+        // shared steps data of the action cannot be changed, a copy can
+        try {
+            phoneAction.getStepsData().setStepIndex(1);
+            Assert.fail("Shared steps data must be read-only. Should throw UnsupportedOperationException.");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(new Integer(2), phoneAction.getStepsData()
+                    .getStepIndex());
+        }
+        ActionFlowStepsData copy = phoneAction.getStepsData().copy();
+        copy.setStepIndex(1);
+        Assert.assertEquals(new Integer(1), copy.getStepIndex());
+        Assert.assertEquals(new Integer(2), phoneAction.getStepsData()
+                .getStepIndex());
+    }
 }
@@ -129,6 +129,25 @@ public class CorrectFlowConfigurationTest extends StrutsJUnit4TestCase<Object> {
                         .get(ServletDispatcherResult.DEFAULT_PARAM));
     }
 
+    /**
+     * Tests that action flow configuration is created on startup.
+     *
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testEagerCompilation() throws Exception {
+        Assert.assertNotNull(configuration.getRuntimeConfiguration()
+                .getActionConfig("/correctFlow", "saveNameView"));
+        Assert.assertNotNull(configuration.getRuntimeConfiguration()
+                .getActionConfig("/correctFlow", "next"));
+        Assert.assertNotNull(configuration.getRuntimeConfiguration()
+                .getActionConfig("/correctFlow", "prev"));
+        Assert.assertNotNull(configuration.getRuntimeConfiguration()
+                .getActionConfig("/correctFlowOverride",
+                        "saveNameViewOverride"));
+    }
+
     /**
      * Tests creating empty action flow configuration.
      * 
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.struts2.StrutsJUnit4TestCase;
+import org.apache.struts2.dispatcher.SessionMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.opensymphony.xwork2.inject.Container;
+import com.opensymphony.xwork2.inject.Inject;
+
+/**
+ * Tests for HeapFlowScopeStore.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class HeapFlowScopeStoreTest extends StrutsJUnit4TestCase<Object> {
+
+    /** Key for previous flow action. */
+    private static final String PREVIOUS_FLOW_ACTION = "actionFlowPreviousAction";
+
+    @Inject
+    private Container container;
+
+    /** {@inheritDoc} */
+    @Override
+    protected String getConfigPath() {
+        return "struts-plugin.xml, struts-test.xml, struts-test-heap-store.xml";
+    }
+
+    /**
+     * Tests that only flow id is stored in the session.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testOnlyFlowIdInSession() throws Exception {
+        injectStrutsDependencies(this);
+
+        executeAction("/correctFlow/correctFlow");
+        initServletMockObjects();
+        executeAction("/correctFlow/next");
+
+        Assert.assertNotNull(request.getSession().getAttribute(
+                HeapFlowScopeStore.FLOW_ID_KEY));
+        Assert.assertNull(request.getSession().getAttribute(
+                PREVIOUS_FLOW_ACTION));
+
+        FlowScopeStore store = container.getInstance(FlowScopeStore.class,
+                "heap");
+        Assert.assertEquals("saveName", store.get(
+                new SessionMap<String, Object>(request), PREVIOUS_FLOW_ACTION));
+    }
+
+    /**
+     * Tests storing and removing values.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testPutAndGet() throws Exception {
+        HeapFlowScopeStore store = new HeapFlowScopeStore();
+        Map<String, Object> session = new HashMap<String, Object>();
+
+        Assert.assertNull(store.get(session, "key"));
+        Assert.assertTrue(session.isEmpty());
+
+        store.put(session, "key", "value");
+        Assert.assertEquals(1, session.size());
+        Assert.assertTrue(session.get(HeapFlowScopeStore.FLOW_ID_KEY) instanceof String);
+        Assert.assertEquals("value", store.get(session, "key"));
+
+        store.put(session, "key", null);
+        Assert.assertNull(store.get(session, "key"));
+
+        // other session has its own flow
+        Map<String, Object> otherSession = new HashMap<String, Object>();
+        store.put(otherSession, "key", "other");
+        Assert.assertNotEquals(session.get(HeapFlowScopeStore.FLOW_ID_KEY),
+                otherSession.get(HeapFlowScopeStore.FLOW_ID_KEY));
+        Assert.assertEquals(2, store.getSize());
+    }
+
+    /**
+     * Tests evicting least recently used flows.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        HeapFlowScopeStore store = new HeapFlowScopeStore();
+        store.setMaxEntries("2");
+
+        Map<String, Object> session1 = new HashMap<String, Object>();
+        Map<String, Object> session2 = new HashMap<String, Object>();
+        Map<String, Object> session3 = new HashMap<String, Object>();
+
+        store.put(session1, "key", "1");
+        store.put(session2, "key", "2");
+        // access first so the second one is the eldest
+        Assert.assertEquals("1", store.get(session1, "key"));
+        store.put(session3, "key", "3");
+
+        Assert.assertEquals(2, store.getSize());
+        Assert.assertEquals(1, store.getEvictions());
+        Assert.assertEquals("1", store.get(session1, "key"));
+        Assert.assertNull(store.get(session2, "key"));
+        Assert.assertEquals("3", store.get(session3, "key"));
+    }
+
+    /**
+     * Tests expiring not accessed flows.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        HeapFlowScopeStore store = new HeapFlowScopeStore();
+        store.setTimeToLive("0");
+
+        Map<String, Object> session = new HashMap<String, Object>();
+        store.put(session, "key", "value");
+
+        Thread.sleep(10);
+
+        Assert.assertNull(store.get(session, "key"));
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertEquals(1, store.getExpirations());
+    }
+
+    /**
+     * Tests hit and miss metrics.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        HeapFlowScopeStore store = new HeapFlowScopeStore();
+        Map<String, Object> session = new HashMap<String, Object>();
+
+        // no flow id yet, store is not asked
+        store.get(session, "key");
+        Assert.assertEquals(0, store.getMisses());
+
+        store.put(session, "key", "value");
+        Assert.assertEquals(0, store.getMisses());
+
+        store.get(session, "key");
+        store.get(session, "other");
+        Assert.assertEquals(2, store.getHits());
+    }
+
+    /**
+     * Tests that only reads are counted as hits and misses.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testMetricsOfPutAndGet() throws Exception {
+        HeapFlowScopeStore store = new HeapFlowScopeStore();
+        Map<String, Object> session = new HashMap<String, Object>();
+
+        store.put(session, "key", "value");
+        store.put(session, "key", "changed");
+        store.put(session, "other", "value");
+        store.put(session, "other", null);
+        Assert.assertEquals(0, store.getHits());
+        Assert.assertEquals(0, store.getMisses());
+
+        Assert.assertEquals("changed", store.get(session, "key"));
+        Assert.assertNull(store.get(session, "other"));
+        Assert.assertEquals(2, store.getHits());
+        Assert.assertEquals(0, store.getMisses());
+
+        // flow id of an evicted or expired flow
+        Map<String, Object> unknownSession = new HashMap<String, Object>();
+        unknownSession.put(HeapFlowScopeStore.FLOW_ID_KEY, "unknown");
+        Assert.assertNull(store.get(unknownSession, "key"));
+        Assert.assertEquals(2, store.getHits());
+        Assert.assertEquals(1, store.getMisses());
+    }
+}
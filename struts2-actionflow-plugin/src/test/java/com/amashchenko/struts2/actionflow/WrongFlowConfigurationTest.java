@@ -62,7 +62,8 @@ public class WrongFlowConfigurationTest extends StrutsJUnit4TestCase<Object> {
                 { "/prevNoSuccess/prevNoSuccess" },
                 { "/noViewResult/noViewResult" },
                 { "/wrongViewResultType/wrongViewResultType" },
-                { "/wrongViewResultParam/wrongViewResultParam" }, };
+                { "/wrongViewResultParam/wrongViewResultParam" },
+                { "/unknownScopeField/unknownScopeField" }, };
         return Arrays.asList(data);
     }
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.entities;
+
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for ActionFlowJsonFragments.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class ActionFlowJsonFragmentsTest {
+
+    /**
+     * Tests precomputed fragments of the steps.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testFragments() throws Exception {
+        TreeMap<Integer, String> steps = new TreeMap<Integer, String>();
+        steps.put(1, "saveName");
+        ActionFlowJsonFragments fragments = new ActionFlowJsonFragments(
+                new String[] { "firstFlowAction", "saveName" }, new String[] {
+                        null, "saveNameView" }, new ActionFlowStepsData(steps));
+
+        Assert.assertEquals("\"step\":1,\"action\":\"saveName\","
+                + "\"view\":\"saveNameView\",\"steps\":{\"1\":\"saveName\"}",
+                fragments.getFragment(1));
+        Assert.assertEquals("\"step\":null,\"action\":null,\"view\":null,"
+                + "\"steps\":{\"1\":\"saveName\"}", fragments.getFragment(-1));
+        Assert.assertSame(fragments.getFragment(1), fragments.getFragment(1));
+    }
+
+    /**
+     * Tests escaping of JSON strings.
+     * 
+     * @throws Exception
+     *             when something goes wrong.
+     */
+    @Test
+    public void testAppendString() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        ActionFlowJsonFragments.appendString(sb,
+                "a\"b\\c\n</script>\u0001 ");
+        Assert.assertEquals(
+                "\"a\\\"b\\\\c\\n\\u003c/script>\\u0001\\u2028\"",
+                sb.toString());
+
+        sb.setLength(0);
+        ActionFlowJsonFragments.appendString(sb, null);
+        Assert.assertEquals("null", sb.toString());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.mock;
+
+import com.amashchenko.struts2.actionflow.ActionFlowScope;
+
+/**
+ * Mock ActionFlow action with directly accessed flow scope fields.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+@ActionFlowScope(fieldAccess = true)
+public class MockFieldAccessAction extends MockActionFlowAction {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = -2384746153117036952L;
+
+    /** Email field without setter. */
+    @ActionFlowScope
+    private String email;
+
+    /** Field without getter and setter. */
+    @ActionFlowScope
+    private Integer age;
+
+    /** Not in the flow scope. */
+    private String note;
+
+    /**
+     * @return the email
+     */
+    public String getEmail() {
+        return email;
+    }
+
+    /**
+     * Fills fields without setters.
+     * 
+     * @param email
+     *            the email.
+     * @param age
+     *            the age.
+     */
+    public void fill(final String email, final Integer age) {
+        this.email = email;
+        this.age = age;
+        this.note = email;
+    }
+
+    /**
+     * @return the age
+     */
+    public Integer age() {
+        return age;
+    }
+
+    /**
+     * @return the note
+     */
+    public String note() {
+        return note;
+    }
+}
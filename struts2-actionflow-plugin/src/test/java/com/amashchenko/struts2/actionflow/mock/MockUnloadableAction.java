@@ -0,0 +1,41 @@
+/*
+ * Copyright 2013 Aleksandr Mashchenko.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.amashchenko.struts2.actionflow.mock;
+
+import com.opensymphony.xwork2.ActionSupport;
+
+/**
+ * Mock action which cannot be initialized.
+ * 
+ * @author Aleksandr Mashchenko
+ * 
+ */
+public class MockUnloadableAction extends ActionSupport {
+
+    /** Serial version uid. */
+    private static final long serialVersionUID = -2830127408463355721L;
+
+    /** Fails initialization of the class. */
+    private static final Object FAILURE = fail();
+
+    /**
+     * @return never returns.
+     */
+    private static Object fail() {
+        throw new IllegalStateException("Cannot initialize "
+                + MockUnloadableAction.class.getName() + ".");
+    }
+}